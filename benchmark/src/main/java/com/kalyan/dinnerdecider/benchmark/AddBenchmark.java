@@ -0,0 +1,78 @@
+package com.kalyan.dinnerdecider.benchmark;
+
+import com.kalyan.dinnerdecider.engine.DecisionEngine;
+import com.kalyan.dinnerdecider.engine.EventLog;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of one ADD FOOD on top of a catalog of {@code size} foods, through
+ * {@link DecisionEngine#add} on an engine over a temporary directory: cleaning and
+ * normalizing the name, the duplicate check, every engine structure, the undo step and
+ * queueing the journal record. {@code legacy} is the original {@code ArrayList} append
+ * followed by printing the list. Each iteration starts from a freshly seeded catalog so
+ * the measured size stays close to {@code size}.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@State(Scope.Thread)
+public class AddBenchmark {
+    private File dir;
+    private DecisionEngine engine;
+    private ArrayList<String> legacy;
+    private EventLog log;
+    private int next;
+    @Param({"10", "1000", "100000", "1000000"})
+    public int size;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException, InterruptedException {
+        this.dir = Files.createTempDirectory("add-bench").toFile();
+        this.log = Catalogs.quietLog();
+        this.engine = Catalogs.engine(this.dir, Catalogs.names(this.size), 7, this.log);
+        this.legacy = new ArrayList<>(Catalogs.names(this.size));
+        this.next = this.size;
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws InterruptedException {
+        this.engine.close();
+        this.engine.awaitClosed();
+        this.log.close();
+        Catalogs.deleteRecursively(this.dir);
+    }
+
+    @Benchmark
+    public int add() {
+        int i = this.next;
+        this.next = i + 1;
+        return this.engine.add(Catalogs.name(i), 1.0d);
+    }
+
+    @Benchmark
+    public int legacyAddAndPrint() {
+        int i = this.next;
+        this.next = i + 1;
+        this.legacy.add(Catalogs.name(i));
+        return this.legacy.toString().length();
+    }
+}
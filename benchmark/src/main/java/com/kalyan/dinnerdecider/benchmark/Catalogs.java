@@ -0,0 +1,55 @@
+package com.kalyan.dinnerdecider.benchmark;
+
+import com.kalyan.dinnerdecider.engine.DecisionEngine;
+import com.kalyan.dinnerdecider.engine.DecisionRandom;
+import com.kalyan.dinnerdecider.engine.EventLog;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/** Deterministic catalog fixtures shared by the benchmarks. */
+final class Catalogs {
+    private Catalogs() {
+    }
+
+    static String name(int i) {
+        return "Food " + Integer.toString(i, 36);
+    }
+
+    static List<String> names(int size) {
+        ArrayList<String> names = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            names.add(name(i));
+        }
+        return names;
+    }
+
+    /** An event log that drops its output, so engines pay for logging but not for printing. */
+    static EventLog quietLog() {
+        return new EventLog(1024, 1, batch -> {
+        });
+    }
+
+    /**
+     * Opens an engine over {@code dir} the way the app does, seeded with {@code defaults}
+     * if the directory is empty, and waits until it has loaded.
+     */
+    static DecisionEngine engine(File dir, List<String> defaults, long seed, EventLog log) throws InterruptedException {
+        DecisionEngine engine = new DecisionEngine(dir, defaults, DecisionRandom.seeded(seed), log);
+        CountDownLatch loaded = new CountDownLatch(1);
+        engine.load(Runnable::run, loaded::countDown);
+        loaded.await();
+        return engine;
+    }
+
+    static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,78 @@
+package com.kalyan.dinnerdecider.benchmark;
+
+import com.kalyan.dinnerdecider.engine.DecisionEngine;
+import com.kalyan.dinnerdecider.engine.DecisionRandom;
+import com.kalyan.dinnerdecider.engine.EventLog;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of one DECIDE press across catalog sizes, through {@link DecisionEngine#decide} on
+ * an engine over a temporary directory, history and stats included. {@code alias} is the
+ * default weighted mode, {@code shuffle} the no-repeats mode and {@code legacy} the
+ * original {@code new Random().nextInt(size)} pick, kept as the baseline. Sample-time
+ * mode reports latency percentiles next to the throughput score.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@State(Scope.Thread)
+public class DecideBenchmark {
+    private File dir;
+    private DecisionEngine engine;
+    private EventLog log;
+    @Param({"10", "1000", "100000", "1000000"})
+    public int size;
+    @Param({"legacy", "alias", "shuffle"})
+    public String strategy;
+
+    /** Weights between 1 and 10 so the alias tables have both small and large columns. */
+    @Setup
+    public void setUp() throws IOException, InterruptedException {
+        this.dir = Files.createTempDirectory("decide-bench").toFile();
+        this.log = Catalogs.quietLog();
+        this.engine = Catalogs.engine(this.dir, Collections.emptyList(), 42, this.log);
+        DecisionRandom random = DecisionRandom.seeded(7);
+        this.engine.beginEdit("Seed");
+        for (int i = 0; i < this.size; i++) {
+            this.engine.add(Catalogs.name(i), (double) (random.nextInt(10) + 1));
+        }
+        this.engine.endEdit();
+        this.engine.setNoRepeats(this.strategy.equals("shuffle"));
+        this.engine.decide();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        this.engine.close();
+        this.engine.awaitClosed();
+        this.log.close();
+        Catalogs.deleteRecursively(this.dir);
+    }
+
+    @Benchmark
+    public int decide() {
+        if (this.strategy.equals("legacy")) {
+            return new Random().nextInt(this.size);
+        }
+        return this.engine.decide();
+    }
+}
@@ -0,0 +1,114 @@
+package com.kalyan.dinnerdecider.benchmark;
+
+import com.kalyan.dinnerdecider.engine.AliasTable;
+import com.kalyan.dinnerdecider.engine.CatalogJournal;
+import com.kalyan.dinnerdecider.engine.FoodCatalog;
+import com.kalyan.dinnerdecider.engine.NameIndex;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Bulk import rate. {@code parseAndIndex} reads a one-food-per-line file from memory,
+ * normalizes and dedupes every row and inserts it into the catalog structures;
+ * {@code journalAppend} appends the same rows to a fresh journal and waits for the group
+ * commit to make them durable. Scores are per file of {@code rows} rows.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class ImportBenchmark {
+    private File dir;
+    private String file;
+    @Param({"10", "1000", "100000", "1000000"})
+    public int rows;
+
+    @Setup
+    public void setUp() throws IOException {
+        StringBuilder out = new StringBuilder(this.rows * 12);
+        for (int i = 0; i < this.rows; i++) {
+            out.append(Catalogs.name(i)).append('\n');
+        }
+        this.file = out.toString();
+        this.dir = Files.createTempDirectory("import-bench").toFile();
+    }
+
+    @TearDown
+    public void tearDown() {
+        Catalogs.deleteRecursively(this.dir);
+    }
+
+    @Benchmark
+    public int parseAndIndex() throws IOException {
+        FoodCatalog catalog = new FoodCatalog();
+        NameIndex index = new NameIndex();
+        AliasTable weights = new AliasTable();
+        BufferedReader reader = new BufferedReader(new StringReader(this.file));
+        while (true) {
+            String line = reader.readLine();
+            if (line == null) {
+                return catalog.size();
+            }
+            String name = NameIndex.clean(line);
+            String key = NameIndex.normalize(name);
+            if (key.length() > 0 && index.find(key) < 0) {
+                index.add(key);
+                weights.add(1.0d);
+                catalog.add(name);
+            }
+        }
+    }
+
+    @Benchmark
+    public long journalAppend(Journal state) throws IOException, InterruptedException {
+        CatalogJournal journal = state.journal;
+        for (int i = 0; i < this.rows; i++) {
+            journal.appendAdd(Catalogs.name(i), 1.0d);
+        }
+        journal.sync();
+        return (long) this.rows;
+    }
+
+    /**
+     * A fresh journal per iteration so compaction and replay do not leak between runs. It is
+     * closed after the iteration, which stops its writer thread and releases its file.
+     */
+    @State(Scope.Thread)
+    public static class Journal {
+        CatalogJournal journal;
+        private int run;
+
+        @Setup(Level.Iteration)
+        public void open(ImportBenchmark benchmark) {
+            int i = this.run;
+            this.run = i + 1;
+            this.journal = CatalogJournal.open(new File(benchmark.dir, "run-" + i), Collections.emptyList());
+        }
+
+        @TearDown(Level.Iteration)
+        public void close() throws InterruptedException {
+            this.journal.close();
+            this.journal.awaitClosed();
+        }
+    }
+}
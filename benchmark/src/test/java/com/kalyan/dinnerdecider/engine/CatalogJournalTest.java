@@ -0,0 +1,125 @@
+package com.kalyan.dinnerdecider.engine;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CatalogJournalTest {
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        this.dir = Files.createTempDirectory("journal-test").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        TestFiles.deleteRecursively(this.dir);
+    }
+
+    @Test
+    public void editsRoundTripThroughReload() throws Exception {
+        CatalogJournal journal = CatalogJournal.open(this.dir, Arrays.asList("A", "B"));
+        journal.appendAdd("C", 2.5d);
+        journal.appendWeight("A", 3.0d);
+        journal.appendRename("B", "Bee");
+        journal.appendTags("C", "#spicy");
+        journal.appendAdd("D", 1.0d);
+        journal.appendRemove("A");
+        close(journal);
+        // A removal moves the last food into its place, as FoodCatalog#removeSwap does.
+        assertLoads(new String[]{"D", "Bee", "C"}, new double[]{1.0d, 1.0d, 2.5d}, new String[]{"", "", "#spicy"});
+
+        // The same catalog must survive being folded into the snapshot, with later edits on top.
+        journal = CatalogJournal.open(this.dir, Collections.emptyList());
+        assertNotNull(checkpoint(journal));
+        journal.appendWeight("D", 4.0d);
+        journal.appendRename("C", "Curry");
+        close(journal);
+        assertLoads(new String[]{"D", "Bee", "Curry"}, new double[]{4.0d, 1.0d, 2.5d}, new String[]{"", "", "#spicy"});
+    }
+
+    private void assertLoads(String[] names, double[] weights, String[] tags) throws InterruptedException {
+        CatalogJournal journal = CatalogJournal.open(this.dir, Collections.emptyList());
+        AtomicReference<Object[]> result = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        journal.load((names2, weights2, tags2) -> {
+            result.set(new Object[]{new ArrayList<>(names2), weights2.clone(), tags2.clone()});
+            done.countDown();
+        });
+        done.await();
+        close(journal);
+        assertEquals(Arrays.asList(names), result.get()[0]);
+        assertArrayEquals(weights, (double[]) result.get()[1], 0.0d);
+        assertArrayEquals(tags, (String[]) result.get()[2]);
+    }
+
+    @Test
+    public void writerSurvivesScratchFailure() throws Exception {
+        // A directory where the snapshot builder wants its scratch file makes mapping it fail.
+        File trap = new File(this.dir, "catalog.snap.scratch.0");
+        assertTrue(new File(trap, "keep").mkdirs());
+        ArrayList<String> errors = new ArrayList<>();
+        CatalogJournal journal = CatalogJournal.open(this.dir, Arrays.asList("A"));
+        journal.setErrorListener((message, error) -> {
+            synchronized (errors) {
+                errors.add(message);
+            }
+        });
+        journal.appendAdd("B", 1.0d);
+        assertNull(checkpoint(journal));
+        synchronized (errors) {
+            assertEquals(Collections.singletonList("Failed to checkpoint catalog journal"), errors);
+        }
+        journal.appendAdd("C", 1.0d);
+        journal.sync();
+        TestFiles.deleteRecursively(trap);
+        assertNotNull(checkpoint(journal));
+        close(journal);
+        assertEquals(Arrays.asList("A", "B", "C"), load(CatalogJournal.open(this.dir, Collections.emptyList())));
+    }
+
+    static File checkpoint(CatalogJournal journal) throws InterruptedException {
+        AtomicReference<File> result = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        journal.checkpoint(file -> {
+            result.set(file);
+            done.countDown();
+        });
+        done.await();
+        return result.get();
+    }
+
+    /** Loads the names and closes the journal. */
+    static List<String> load(CatalogJournal journal) throws InterruptedException {
+        AtomicReference<List<String>> result = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        journal.load((names, weights, tags) -> {
+            result.set(new ArrayList<>(names));
+            done.countDown();
+        });
+        done.await();
+        close(journal);
+        return result.get();
+    }
+
+    static void close(CatalogJournal journal) throws InterruptedException {
+        journal.close();
+        journal.awaitClosed();
+    }
+}
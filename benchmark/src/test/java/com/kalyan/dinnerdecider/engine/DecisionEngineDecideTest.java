@@ -0,0 +1,89 @@
+package com.kalyan.dinnerdecider.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.CountDownLatch;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Decisions must follow the weights, or the no-repeats rounds, they are drawn with. */
+public class DecisionEngineDecideTest {
+    private File dir;
+    private EventLog log;
+
+    @Before
+    public void setUp() throws IOException {
+        this.dir = Files.createTempDirectory("decide-test").toFile();
+        this.log = new EventLog(64, 1, batch -> {
+        });
+    }
+
+    @After
+    public void tearDown() {
+        this.log.close();
+        TestFiles.deleteRecursively(this.dir);
+    }
+
+    @Test
+    public void samplerFitsWeightsAcrossBuckets() {
+        // Enough foods for several alias buckets, so both the top level and the buckets are drawn from.
+        int foods = 3000;
+        AliasTable table = new AliasTable();
+        for (int id = 0; id < foods; id++) {
+            table.add(id % 10 == 0 ? 0.0d : (double) (1 + (id % 7)));
+        }
+        DecisionRandom random = DecisionRandom.seeded(42);
+        DecisionStats stats = new DecisionStats();
+        for (int i = 0; i < 600000; i++) {
+            int id2 = table.sample(random);
+            assertTrue("drew zero-weight food " + id2, table.getWeight(id2) > 0.0d);
+            stats.record(id2, table.getWeight(id2));
+        }
+        int drawable = foods - (foods / 10);
+        double p = DecisionStats.pValue(stats.chiSquare(table.getTotalWeight()), drawable - 1);
+        assertTrue("p=" + p, p > 0.001d);
+    }
+
+    @Test
+    public void engineNeverDecidesZeroWeightFoods() throws InterruptedException {
+        DecisionEngine engine = open();
+        engine.add("Z", 0.0d);
+        int zero = engine.find("Z");
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(engine.decide() != zero);
+        }
+        assertEquals(10000L, engine.getStats().total());
+        engine.close();
+        engine.awaitClosed();
+    }
+
+    @Test
+    public void noRepeatsDecidesEveryFoodOncePerRound() throws InterruptedException {
+        DecisionEngine engine = open();
+        engine.setNoRepeats(true);
+        for (int round = 0; round < 50; round++) {
+            HashSet<Integer> seen = new HashSet<>();
+            for (int i = 0; i < engine.size(); i++) {
+                assertTrue("round " + round, seen.add(engine.decide()));
+            }
+        }
+        assertEquals(50L * engine.size(), engine.getStats().shuffledTotal());
+        engine.close();
+        engine.awaitClosed();
+    }
+
+    private DecisionEngine open() throws InterruptedException {
+        DecisionEngine engine = new DecisionEngine(this.dir, Arrays.asList("A", "B", "C", "D", "E"), DecisionRandom.seeded(7), this.log);
+        CountDownLatch loaded = new CountDownLatch(1);
+        engine.load(Runnable::run, loaded::countDown);
+        loaded.await();
+        return engine;
+    }
+}
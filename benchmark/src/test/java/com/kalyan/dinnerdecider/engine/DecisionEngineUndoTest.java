@@ -0,0 +1,118 @@
+package com.kalyan.dinnerdecider.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Undo and redo must leave a journal that reloads into exactly the catalog held in memory. */
+public class DecisionEngineUndoTest {
+    private File dir;
+    private EventLog log;
+
+    @Before
+    public void setUp() throws IOException {
+        this.dir = Files.createTempDirectory("undo-test").toFile();
+        this.log = new EventLog(64, 1, batch -> {
+        });
+    }
+
+    @After
+    public void tearDown() {
+        this.log.close();
+        TestFiles.deleteRecursively(this.dir);
+    }
+
+    @Test
+    public void undoOfRemoveAndReAddReloadsAsInMemory() throws InterruptedException {
+        DecisionEngine engine = open();
+        engine.beginEdit("Swap");
+        engine.remove(engine.find("A"));
+        engine.add("A", 2.0d);
+        engine.endEdit();
+        assertTrue(engine.undo());
+        assertEquals(new TreeSet<>(Arrays.asList("A", "B", "C")), new TreeSet<>(names(engine)));
+        assertReloadsAs(engine);
+    }
+
+    @Test
+    public void randomUndoRedoAcrossRemovalsReloadsAsInMemory() throws InterruptedException {
+        for (int seed = 0; seed < 100; seed++) {
+            File dir2 = new File(this.dir, "seed-" + seed);
+            Random random = new Random(seed);
+            DecisionEngine engine = open(dir2);
+            for (int step = 0; step < 40; step++) {
+                int op = random.nextInt(4);
+                if (op == 0) {
+                    engine.beginEdit("Group");
+                    for (int i = random.nextInt(3); i >= 0; i--) {
+                        edit(engine, random);
+                    }
+                    engine.endEdit();
+                } else if (op == 1) {
+                    engine.undo();
+                } else if (op == 2) {
+                    engine.redo();
+                } else {
+                    edit(engine, random);
+                }
+            }
+            List<String> memory = names(engine);
+            engine.close();
+            engine.awaitClosed();
+            DecisionEngine reloaded = open(dir2);
+            assertEquals("seed " + seed, memory, names(reloaded));
+            reloaded.close();
+            reloaded.awaitClosed();
+        }
+    }
+
+    private static void edit(DecisionEngine engine, Random random) {
+        if (random.nextBoolean() && engine.size() > 1) {
+            engine.remove(random.nextInt(engine.size()));
+        } else {
+            engine.add(String.valueOf((char) ('A' + random.nextInt(8))), (double) (random.nextInt(3) + 1));
+        }
+    }
+
+    private void assertReloadsAs(DecisionEngine engine) throws InterruptedException {
+        List<String> memory = names(engine);
+        engine.close();
+        engine.awaitClosed();
+        DecisionEngine reloaded = open();
+        assertEquals(memory, names(reloaded));
+        reloaded.close();
+        reloaded.awaitClosed();
+    }
+
+    private DecisionEngine open() throws InterruptedException {
+        return open(this.dir);
+    }
+
+    private DecisionEngine open(File dir2) throws InterruptedException {
+        DecisionEngine engine = new DecisionEngine(dir2, Arrays.asList("A", "B", "C"), DecisionRandom.seeded(1), this.log);
+        CountDownLatch loaded = new CountDownLatch(1);
+        engine.load(Runnable::run, loaded::countDown);
+        loaded.await();
+        return engine;
+    }
+
+    private static List<String> names(DecisionEngine engine) {
+        ArrayList<String> names = new ArrayList<>();
+        for (int id = 0; id < engine.size(); id++) {
+            names.add(engine.name(id));
+        }
+        return names;
+    }
+}
@@ -0,0 +1,130 @@
+package com.kalyan.dinnerdecider.engine;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+/** An index kept up to date edit by edit must answer like a scan of the catalog. */
+public class PrefixIndexTest {
+    private static final String[] PREFIXES = {"", "a", "b", "ba", "c", "ca", "cab", "z"};
+
+    @Test
+    public void incrementalUpdatesMatchScan() {
+        Random random = new Random(3);
+        PrefixIndex index = new PrefixIndex();
+        PersistentVector<CatalogEntry> entries = PersistentVector.empty();
+        long[] counts = new long[0];
+        int serial = 0;
+        for (int step = 0; step < 200; step++) {
+            int op = random.nextInt(10);
+            if (op < 2 || entries.size() < 2) {
+                // Bulk appends overflow the buffer and force merges with the sorted run.
+                for (int i = random.nextInt(2500); i >= 0; i--) {
+                    entries = entries.append(new CatalogEntry(randomName(random) + " " + serial, 1.0d, ""));
+                    serial++;
+                }
+            } else if (op < 5) {
+                String name = randomName(random);
+                if (indexOf(entries, name) < 0) {
+                    entries = entries.append(new CatalogEntry(name, 1.0d, ""));
+                }
+            } else if (op < 7) {
+                // Remove by moving the last food into the freed id, as the engine does.
+                for (int i2 = random.nextInt(entries.size() / 2); i2 >= 0 && entries.size() > 1; i2--) {
+                    int id = random.nextInt(entries.size());
+                    entries = entries.set(id, entries.get(entries.size() - 1)).pop();
+                }
+            } else if (op < 8) {
+                String name2 = randomName(random) + " renamed " + serial;
+                serial++;
+                entries = entries.set(random.nextInt(entries.size()), new CatalogEntry(name2, 1.0d, ""));
+            } else {
+                counts = new long[entries.size()];
+                for (int id2 = 0; id2 < counts.length; id2++) {
+                    counts[id2] = random.nextInt(4);
+                }
+            }
+            if (counts.length != entries.size()) {
+                counts = Arrays.copyOf(counts, entries.size());
+            }
+            update(index, entries, counts);
+            assertMatchesScan(index, entries, counts);
+        }
+    }
+
+    @Test
+    public void largeAppendAndSeededBuildMatchScan() {
+        Random random = new Random(5);
+        PersistentVector<CatalogEntry> entries = PersistentVector.empty();
+        NameIndex names = new NameIndex();
+        for (int i = 0; i < 20000; i++) {
+            String name = randomName(random) + " " + i;
+            entries = entries.append(new CatalogEntry(name, 1.0d, ""));
+            names.add(NameIndex.normalize(name));
+        }
+        long[] counts = new long[entries.size()];
+        for (int id = 0; id < counts.length; id += 7) {
+            counts[id] = 1 + random.nextInt(100);
+        }
+        PrefixIndex appended = new PrefixIndex();
+        update(appended, entries, counts);
+        assertMatchesScan(appended, entries, counts);
+        PrefixIndex seeded = new PrefixIndex(entries, names.copyKeys());
+        update(seeded, entries, counts);
+        assertMatchesScan(seeded, entries, counts);
+    }
+
+    private static void update(PrefixIndex index, PersistentVector<CatalogEntry> entries, long[] counts) {
+        int[] decided = new int[counts.length];
+        for (int id = 0; id < decided.length; id++) {
+            decided[id] = id;
+        }
+        index.update(entries, decided, counts, counts.length);
+    }
+
+    private static void assertMatchesScan(PrefixIndex index, PersistentVector<CatalogEntry> entries, long[] counts) {
+        assertEquals(entries.size(), index.size());
+        String[] keys = new String[entries.size()];
+        for (int id = 0; id < keys.length; id++) {
+            keys[id] = NameIndex.normalize(entries.get(id).getName());
+        }
+        for (String prefix : PREFIXES) {
+            ArrayList<Integer> matches = new ArrayList<>();
+            for (int id2 = 0; id2 < keys.length; id2++) {
+                if (keys[id2].startsWith(prefix)) {
+                    matches.add(id2);
+                }
+            }
+            matches.sort((a, b) -> counts[a] != counts[b] ? Long.compare(counts[b], counts[a]) : keys[a].compareTo(keys[b]));
+            String[] expected = new String[Math.min(6, matches.size())];
+            for (int i = 0; i < expected.length; i++) {
+                expected[i] = entries.get(matches.get(i)).getName();
+            }
+            assertArrayEquals(expected, index.top(prefix, 6));
+        }
+    }
+
+    private static int indexOf(PersistentVector<CatalogEntry> entries, String name) {
+        String key = NameIndex.normalize(name);
+        for (int id = 0; id < entries.size(); id++) {
+            if (NameIndex.normalize(entries.get(id).getName()).equals(key)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    private static String randomName(Random random) {
+        StringBuilder out = new StringBuilder();
+        int length = 1 + random.nextInt(5);
+        for (int i = 0; i < length; i++) {
+            char c = (char) ('a' + random.nextInt(3));
+            out.append(random.nextInt(4) == 0 ? Character.toUpperCase(c) : c);
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,19 @@
+package com.kalyan.dinnerdecider.engine;
+
+import java.io.File;
+
+/** Temporary directory helpers shared by the engine tests. */
+final class TestFiles {
+    private TestFiles() {
+    }
+
+    static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
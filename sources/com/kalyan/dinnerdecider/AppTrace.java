@@ -0,0 +1,67 @@
+package com.kalyan.dinnerdecider;
+
+import android.os.Process;
+import androidx.tracing.Trace;
+import com.kalyan.dinnerdecider.engine.TraceRecorder;
+import com.kalyan.dinnerdecider.engine.Tracing;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Process-wide {@link Tracing} setup: sections go both to the platform tracer, for
+ * Perfetto over adb, and to an in-memory {@link TraceRecorder} the user can export from
+ * the menu without a computer attached. Installed first thing by {@link StartupProvider}.
+ */
+final class AppTrace {
+    private static final int EVENTS_PER_THREAD = 4096;
+    private static TraceRecorder recorder;
+
+    private AppTrace() {
+    }
+
+    static synchronized void install() {
+        if (recorder == null) {
+            recorder = new TraceRecorder(EVENTS_PER_THREAD);
+            Tracing.install(new Platform());
+            Tracing.install(recorder);
+        }
+    }
+
+    /** Writes what the recorder holds as a Chrome/Perfetto JSON trace; returns the event count. */
+    static int writeJson(Writer out) throws IOException {
+        TraceRecorder current;
+        synchronized (AppTrace.class) {
+            current = recorder;
+        }
+        if (current != null) {
+            return current.writeJson(out, Process.myPid());
+        }
+        throw new IOException("Tracing is not installed");
+    }
+
+    /** Forwards to androidx.tracing, which drops everything unless a platform trace is running. */
+    private static final class Platform implements Tracing.Backend {
+        private Platform() {
+        }
+
+        public void beginSection(String label) {
+            Trace.beginSection(label);
+        }
+
+        public void endSection() {
+            Trace.endSection();
+        }
+
+        public void beginAsyncSection(String label, int cookie) {
+            Trace.beginAsyncSection(label, cookie);
+        }
+
+        public void endAsyncSection(String label, int cookie) {
+            Trace.endAsyncSection(label, cookie);
+        }
+
+        public void setCounter(String name, long value) {
+            Trace.setCounter(name, (int) Math.max(-2147483648L, Math.min(2147483647L, value)));
+        }
+    }
+}
@@ -0,0 +1,424 @@
+package com.kalyan.dinnerdecider;
+
+import android.app.Activity;
+import android.content.ComponentCallbacks2;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+import androidx.appcompat.app.AlertDialog;
+import androidx.recyclerview.widget.AsyncDifferConfig;
+import androidx.recyclerview.widget.AsyncListUtil;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ItemTouchHelper;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.RecyclerView;
+import com.google.android.material.snackbar.Snackbar;
+import com.kalyan.dinnerdecider.engine.CatalogEntry;
+import com.kalyan.dinnerdecider.engine.DecisionEngine;
+import com.kalyan.dinnerdecider.engine.FlatCatalog;
+import com.kalyan.dinnerdecider.engine.PersistentVector;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The catalog as a scrolling list in a full-screen dialog. Rows come straight from the
+ * engine's persistent snapshots, wrapped as lists without copying, and a
+ * {@link ListAdapter} diffs consecutive snapshots on a private thread. Submissions are
+ * coalesced: while a diff runs, later edits only mark the list stale and the newest
+ * snapshot is submitted when it lands, so an import costs one diff per finished diff
+ * rather than one per batch. Swiping a row removes that food, with an undo action.
+ *
+ * <p>Catalogs of {@link #PAGED_MIN_FOODS} or more are browsed read-only from the on-disk
+ * snapshot instead: an {@link AsyncListUtil} loads tiles of {@link #TILE_ROWS} rows
+ * from the memory-mapped {@link FlatCatalog} on its own thread, reaching further ahead in the scroll
+ * direction than behind, and keeps at most {@link #MAX_TILES} of them, fewer after a
+ * memory trim. The list's heap then follows the screen, not the catalog. Mapping a
+ * current snapshot may compact the journal, so the paged list is remapped only when it is
+ * opened and when the activity comes back to the foreground, after {@code onStop} has
+ * checkpointed; edits made while it is on screen only update the title until then.
+ */
+final class CatalogScreen {
+    private static final ExecutorService DIFFER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "catalog-diff");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final DiffUtil.ItemCallback<CatalogEntry> SAME_FOOD = new DiffUtil.ItemCallback<CatalogEntry>() {
+        public boolean areItemsTheSame(CatalogEntry oldItem, CatalogEntry newItem) {
+            return oldItem == newItem || oldItem.getName().equals(newItem.getName());
+        }
+
+        public boolean areContentsTheSame(CatalogEntry oldItem, CatalogEntry newItem) {
+            return oldItem == newItem || (oldItem.getWeight() == newItem.getWeight() && oldItem.getTags().equals(newItem.getTags()));
+        }
+    };
+    private static final int MAX_TILES = 12;
+    private static final int PAGED_MIN_FOODS = 20000;
+    private static final String TAG = "DinnerDecider";
+    private static final int TILE_ROWS = 64;
+    private static final int TRIMMED_TILES = 3;
+    private final Activity activity;
+    private final FoodAdapter adapter = new FoodAdapter();
+    private AlertDialog dialog;
+    private boolean diffing;
+    private final DecisionEngine engine;
+    private RecyclerView list;
+    private final Runnable onEdited;
+    private boolean opening;
+    private int pagedVersion;
+    private AsyncListUtil<CatalogEntry> pages;
+    private DiskRows rows;
+    private boolean stale;
+    private PersistentVector<CatalogEntry> submitted;
+
+    CatalogScreen(Activity activity2, DecisionEngine engine2, Runnable onEdited2) {
+        this.activity = activity2;
+        this.engine = engine2;
+        this.onEdited = onEdited2;
+    }
+
+    private static final class Holder extends RecyclerView.ViewHolder {
+        final TextView detail;
+        final TextView name;
+
+        Holder(View view) {
+            super(view);
+            this.name = (TextView) view.findViewById(android.R.id.text1);
+            this.detail = (TextView) view.findViewById(android.R.id.text2);
+        }
+
+        static Holder create(ViewGroup parent) {
+            return new Holder(LayoutInflater.from(parent.getContext()).inflate(android.R.layout.simple_list_item_2, parent, false));
+        }
+
+        /** Shows {@code entry}, or a placeholder while its tile is still loading. */
+        void bind(CatalogEntry entry) {
+            if (entry == null) {
+                this.name.setText("\u2026");
+                this.detail.setText("");
+                return;
+            }
+            this.name.setText(entry.getName());
+            String weight = entry.getWeight() == 1.0d ? "" : "\u00d7" + entry.getWeight() + " ";
+            this.detail.setText(weight + entry.getTags());
+        }
+    }
+
+    /**
+     * Tiles decoded from a mapped snapshot on the {@link AsyncListUtil} thread. A new
+     * snapshot takes effect at the next refresh, so the tiles of one generation all come
+     * from the same file.
+     */
+    private static final class DiskRows extends AsyncListUtil.DataCallback<CatalogEntry> {
+        private volatile FlatCatalog latest;
+        volatile int maxTiles = MAX_TILES;
+        private FlatCatalog reading;
+
+        void replace(FlatCatalog snapshot) {
+            this.latest = snapshot;
+        }
+
+        public int refreshData() {
+            FlatCatalog snapshot = this.latest;
+            this.reading = snapshot;
+            if (snapshot != null) {
+                return snapshot.size();
+            }
+            return 0;
+        }
+
+        public void fillData(CatalogEntry[] data, int startPosition, int itemCount) {
+            FlatCatalog snapshot = this.reading;
+            if (snapshot != null) {
+                try {
+                    snapshot.read(startPosition, itemCount, data);
+                    return;
+                } catch (RuntimeException | InternalError e) {
+                    // A damaged or truncated file, or one replaced under the mapping by a
+                    // concurrent compaction: show placeholders instead of crashing the tile thread.
+                    Log.w(TAG, "Cannot read catalog rows at " + startPosition, e);
+                }
+            }
+            Arrays.fill(data, 0, itemCount, null);
+        }
+
+        public void recycleData(CatalogEntry[] data, int itemCount) {
+            Arrays.fill(data, 0, itemCount, null);
+        }
+
+        public int getMaxCachedTiles() {
+            return this.maxTiles;
+        }
+    }
+
+    /** Rows of the paged mode; ids are catalog ids as of the mapped snapshot. */
+    private final class PagedAdapter extends RecyclerView.Adapter<Holder> {
+        PagedAdapter() {
+            setHasStableIds(true);
+        }
+
+        public long getItemId(int position) {
+            return (long) position;
+        }
+
+        public int getItemCount() {
+            AsyncListUtil<CatalogEntry> asyncListUtil = CatalogScreen.this.pages;
+            if (asyncListUtil != null) {
+                return asyncListUtil.getItemCount();
+            }
+            return 0;
+        }
+
+        public Holder onCreateViewHolder(ViewGroup parent, int viewType) {
+            return Holder.create(parent);
+        }
+
+        public void onBindViewHolder(Holder holder, int position) {
+            holder.bind(CatalogScreen.this.pages.getItem(position));
+        }
+    }
+
+    /**
+     * Rows keyed by name. A removal moves the last food into the freed position, so
+     * positions are not stable; a row's id is a 64-bit FNV-1a hash of its display name,
+     * the identity {@link #SAME_FOOD} diffs by, and names are unique in the catalog.
+     */
+    private static final class FoodAdapter extends ListAdapter<CatalogEntry, Holder> {
+        FoodAdapter() {
+            super(new AsyncDifferConfig.Builder<>(SAME_FOOD).setBackgroundThreadExecutor(DIFFER).build());
+            setHasStableIds(true);
+        }
+
+        public long getItemId(int position) {
+            String name = getItem(position).getName();
+            long hash = 0xcbf29ce484222325L;
+            int length = name.length();
+            for (int i = 0; i < length; i++) {
+                hash = (hash ^ ((long) name.charAt(i))) * 0x100000001b3L;
+            }
+            return hash;
+        }
+
+        public Holder onCreateViewHolder(ViewGroup parent, int viewType) {
+            return Holder.create(parent);
+        }
+
+        public void onBindViewHolder(Holder holder, int position) {
+            holder.bind(getItem(position));
+        }
+    }
+
+    boolean isShowing() {
+        AlertDialog alertDialog = this.dialog;
+        return alertDialog != null && alertDialog.isShowing();
+    }
+
+    void show() {
+        if (isShowing()) {
+            return;
+        }
+        RecyclerView recyclerView = new RecyclerView(this.activity);
+        LinearLayoutManager layoutManager = new LinearLayoutManager(this.activity);
+        recyclerView.setLayoutManager(layoutManager);
+        recyclerView.setHasFixedSize(true);
+        if (this.engine.size() >= PAGED_MIN_FOODS) {
+            showPaged(recyclerView, layoutManager);
+        } else {
+            recyclerView.setAdapter(this.adapter);
+            new ItemTouchHelper(new ItemTouchHelper.SimpleCallback(0, ItemTouchHelper.LEFT | ItemTouchHelper.RIGHT) {
+                public boolean onMove(RecyclerView recyclerView2, RecyclerView.ViewHolder viewHolder, RecyclerView.ViewHolder target) {
+                    return false;
+                }
+
+                public void onSwiped(RecyclerView.ViewHolder viewHolder, int direction) {
+                    CatalogScreen.this.removeAt(viewHolder.getAdapterPosition());
+                }
+            }).attachToRecyclerView(recyclerView);
+        }
+        this.list = recyclerView;
+        AlertDialog alertDialog = new AlertDialog.Builder(this.activity).setTitle((CharSequence) "Catalog").setView((View) recyclerView).setPositiveButton((CharSequence) "Done", null).setOnDismissListener(d -> {
+            this.submitted = null;
+            this.diffing = false;
+            this.stale = false;
+            this.list = null;
+            this.adapter.submitList(null);
+            closePaged();
+        }).create();
+        this.dialog = alertDialog;
+        alertDialog.show();
+        alertDialog.getWindow().setLayout(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT);
+        if (this.pages != null) {
+            refreshPaged();
+        } else {
+            refresh();
+        }
+    }
+
+    private void showPaged(RecyclerView recyclerView, LinearLayoutManager layoutManager) {
+        PagedAdapter pagedAdapter2 = new PagedAdapter();
+        DiskRows diskRows = new DiskRows();
+        this.rows = diskRows;
+        this.pagedVersion = -1;
+        this.pages = new AsyncListUtil<>(CatalogEntry.class, TILE_ROWS, diskRows, new AsyncListUtil.ViewCallback() {
+            public void getItemRangeInto(int[] outRange) {
+                outRange[0] = layoutManager.findFirstVisibleItemPosition();
+                outRange[1] = layoutManager.findLastVisibleItemPosition();
+            }
+
+            public void onDataRefresh() {
+                pagedAdapter2.notifyDataSetChanged();
+            }
+
+            public void onItemLoaded(int position) {
+                pagedAdapter2.notifyItemChanged(position);
+            }
+        });
+        recyclerView.setAdapter(pagedAdapter2);
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            public void onScrolled(RecyclerView recyclerView2, int dx, int dy) {
+                AsyncListUtil<CatalogEntry> asyncListUtil = CatalogScreen.this.pages;
+                if (asyncListUtil != null) {
+                    asyncListUtil.onRangeChanged();
+                }
+            }
+        });
+    }
+
+    private void closePaged() {
+        AsyncListUtil<CatalogEntry> asyncListUtil = this.pages;
+        if (asyncListUtil != null) {
+            this.rows.replace(null);
+            asyncListUtil.refresh();
+            this.pages = null;
+            this.rows = null;
+            this.opening = false;
+        }
+    }
+
+    /**
+     * Lets the paged list give back its tiles when the system runs low on memory; the
+     * visible rows reload at once and the cache stays small until the screen is reopened.
+     */
+    void trimMemory(int level) {
+        AsyncListUtil<CatalogEntry> asyncListUtil = this.pages;
+        if (asyncListUtil != null && level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            this.rows.maxTiles = TRIMMED_TILES;
+            asyncListUtil.refresh();
+        }
+    }
+
+    /** Brings the list up to date with the engine after an edit; cheap when nothing changed. */
+    void refresh() {
+        if (!isShowing()) {
+            return;
+        }
+        if (this.pages != null) {
+            if (this.pagedVersion >= 0 && this.engine.getVersion() != this.pagedVersion) {
+                setTitle("Catalog (" + this.engine.size() + ", updates when reopened)");
+            }
+            return;
+        }
+        PersistentVector<CatalogEntry> snapshot = this.engine.snapshot();
+        if (snapshot == this.submitted) {
+            return;
+        }
+        if (this.diffing) {
+            this.stale = true;
+            return;
+        }
+        this.submitted = snapshot;
+        this.diffing = true;
+        this.adapter.submitList(snapshot.asList(), () -> {
+            this.diffing = false;
+            setTitle("Catalog (" + snapshot.size() + ")");
+            if (this.stale) {
+                this.stale = false;
+                refresh();
+            }
+        });
+    }
+
+    /** Catches the paged list up with edits made while the activity was stopped or the list was on screen. */
+    void onStart() {
+        if (isShowing() && this.pages != null) {
+            refreshPaged();
+        }
+    }
+
+    /** Remaps the snapshot, one checkpoint at a time like the diffs above. */
+    private void refreshPaged() {
+        int version = this.engine.getVersion();
+        if (version == this.pagedVersion) {
+            return;
+        }
+        if (this.opening) {
+            this.stale = true;
+            return;
+        }
+        this.opening = true;
+        DiskRows diskRows = this.rows;
+        this.engine.openSnapshot(this.activity::runOnUiThread, snapshot -> {
+            if (this.rows != diskRows) {
+                return;
+            }
+            this.opening = false;
+            if (snapshot != null) {
+                this.pagedVersion = version;
+                diskRows.replace(snapshot);
+                this.pages.refresh();
+                setTitle("Catalog (" + snapshot.size() + ")");
+            }
+            if (this.stale) {
+                this.stale = false;
+                refreshPaged();
+            }
+        });
+    }
+
+    private void setTitle(CharSequence title) {
+        AlertDialog alertDialog = this.dialog;
+        if (alertDialog != null) {
+            alertDialog.setTitle(title);
+        }
+    }
+
+    void dismiss() {
+        AlertDialog alertDialog = this.dialog;
+        if (alertDialog != null) {
+            alertDialog.dismiss();
+            this.dialog = null;
+        }
+    }
+
+    /**
+     * Removes the food shown at {@code position}. The list may trail the engine by a diff,
+     * so the food is looked up by name rather than trusting the position as its id.
+     */
+    private void removeAt(int position) {
+        if (position == RecyclerView.NO_POSITION) {
+            return;
+        }
+        String name = this.adapter.getCurrentList().get(position).getName();
+        int id = this.engine.find(name);
+        if (id < 0) {
+            this.adapter.notifyItemChanged(position);
+            return;
+        }
+        this.engine.remove(id);
+        this.onEdited.run();
+        refresh();
+        RecyclerView recyclerView = this.list;
+        if (recyclerView != null) {
+            Snackbar.make(recyclerView, (CharSequence) "Removed " + name, 0).setAction((CharSequence) "Undo", v -> {
+                if (("Remove " + name).equals(this.engine.getUndoLabel()) && this.engine.undo()) {
+                    this.onEdited.run();
+                    refresh();
+                }
+            }).show();
+        }
+    }
+}
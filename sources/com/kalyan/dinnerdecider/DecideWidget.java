@@ -0,0 +1,45 @@
+package com.kalyan.dinnerdecider;
+
+import android.app.PendingIntent;
+import android.appwidget.AppWidgetManager;
+import android.appwidget.AppWidgetProvider;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.widget.RemoteViews;
+
+/**
+ * Home-screen widget showing the last quick decision; tapping it decides again. The tap
+ * is a broadcast back to this receiver, so it never brings up an activity. The receiver
+ * is not exported: the system delivers APPWIDGET_UPDATE to it regardless, and the tap
+ * arrives through this app's own PendingIntent.
+ */
+public final class DecideWidget extends AppWidgetProvider {
+    public void onUpdate(Context context, AppWidgetManager manager, int[] appWidgetIds) {
+        manager.updateAppWidget(appWidgetIds, views(context, "Tap to decide", true));
+    }
+
+    public void onReceive(Context context, Intent intent) {
+        if (!QuickDecide.ACTION_DECIDE.equals(intent.getAction())) {
+            super.onReceive(context, intent);
+            return;
+        }
+        String food = QuickDecide.decide(context);
+        AppWidgetManager manager = AppWidgetManager.getInstance(context);
+        int[] ids = manager.getAppWidgetIds(new ComponentName(context, DecideWidget.class));
+        manager.updateAppWidget(ids, food != null ? views(context, food, true) : views(context, "Open Dinner Decider once", false));
+    }
+
+    private static RemoteViews views(Context context, String text, boolean ready) {
+        PendingIntent click;
+        RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.widget_decide);
+        views.setTextViewText(R.id.widgetFoodText, text);
+        if (ready) {
+            click = PendingIntent.getBroadcast(context, 0, new Intent(QuickDecide.ACTION_DECIDE).setClass(context, DecideWidget.class), PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        } else {
+            click = PendingIntent.getActivity(context, 0, new Intent(context, MainActivity.class), PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        }
+        views.setOnClickPendingIntent(R.id.widgetFoodText, click);
+        return views;
+    }
+}
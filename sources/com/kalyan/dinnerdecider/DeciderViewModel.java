@@ -0,0 +1,167 @@
+package com.kalyan.dinnerdecider;
+
+import android.app.Application;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.SavedStateHandle;
+import com.kalyan.dinnerdecider.engine.DecisionEngine;
+import com.kalyan.dinnerdecider.engine.DecisionRandom;
+import com.kalyan.dinnerdecider.engine.EventLog;
+import com.kalyan.dinnerdecider.engine.Suggester;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import kotlin.collections.CollectionsKt;
+
+/**
+ * Owns the decision engine, its event log and the suggester for as long as the activity
+ * is logically alive, so configuration changes reuse the loaded catalog instead of
+ * replaying it. The catalog itself lives in the engine's journal; saved state only
+ * carries the edits the journal had not made durable yet, which stays small however big
+ * the catalog is. A running import lives here too, so its edit group stays open across a
+ * rotation and the new activity still sees it.
+ */
+public final class DeciderViewModel extends AndroidViewModel implements FoodImporter.Listener {
+    private static final List<String> DEFAULT_FOODS = CollectionsKt.listOf("Chinese", "Pizza", "Burger", "Pasta", "Tacos");
+    private static final String KEY_DELTA = "catalog_delta";
+    private static final String KEY_EDITS = "edits";
+    private static final int SUGGESTION_DEBOUNCE_MS = 60;
+    private static final String TAG = "DinnerDecider";
+    private final DecisionEngine engine;
+    private final EventLog eventLog;
+    private int imported;
+    private ImportListener importListener;
+    private FoodImporter importer;
+    private final Handler main = new Handler(Looper.getMainLooper());
+    private final MutableLiveData<Boolean> ready = new MutableLiveData<>(Boolean.FALSE);
+    private final Suggester suggester;
+
+    /** What the activity on screen hears of the import in progress, on the main thread. */
+    public interface ImportListener {
+        void onImportProgress(long bytesRead, long totalBytes, int imported);
+
+        void onImportFinished(int imported, int malformed, boolean cancelled, IOException error);
+    }
+
+    public DeciderViewModel(Application application, SavedStateHandle handle) {
+        super(application);
+        this.eventLog = new EventLog(1024, 20, batch -> Log.i(TAG, batch));
+        this.engine = new DecisionEngine(application.getFilesDir(), DEFAULT_FOODS, DecisionRandom.create(), this.eventLog);
+        this.engine.setErrorListener((message, error) -> Log.e(TAG, message, error));
+        this.suggester = new Suggester(this.main::post, SUGGESTION_DEBOUNCE_MS);
+        Bundle saved = (Bundle) handle.get(KEY_DELTA);
+        byte[] delta = saved != null ? saved.getByteArray(KEY_EDITS) : null;
+        if (delta != null) {
+            this.engine.restoreDelta(delta);
+        }
+        handle.setSavedStateProvider(KEY_DELTA, () -> {
+            Bundle out = new Bundle();
+            out.putByteArray(KEY_EDITS, this.engine.saveDelta());
+            return out;
+        });
+        this.engine.load(this.main::post, () -> this.ready.setValue(Boolean.TRUE));
+    }
+
+    public DecisionEngine getEngine() {
+        return this.engine;
+    }
+
+    public Suggester getSuggester() {
+        return this.suggester;
+    }
+
+    /** Turns true once the catalog is loaded, and stays true across configuration changes. */
+    public LiveData<Boolean> getReady() {
+        return this.ready;
+    }
+
+    public boolean isImporting() {
+        return this.importer != null;
+    }
+
+    /** Set by the activity when it is created and cleared when it is destroyed. */
+    public void setImportListener(ImportListener listener) {
+        this.importListener = listener;
+    }
+
+    /** Adds the foods read from {@code input} as one undoable edit group. */
+    public void startImport(InputStream input, long size, FoodImporter.Format format) {
+        // Not this.main, whose messages onCleared drops: the importer waits for its batches to be applied.
+        FoodImporter foodImporter = new FoodImporter(input, size, format, new Handler(Looper.getMainLooper()), this);
+        this.imported = 0;
+        this.importer = foodImporter;
+        this.engine.beginEdit("Import");
+        try {
+            foodImporter.start();
+        } catch (RuntimeException | Error e) {
+            // No onFinished will come to close the group.
+            this.importer = null;
+            this.engine.endEdit();
+            throw e;
+        }
+    }
+
+    public void cancelImport() {
+        FoodImporter foodImporter = this.importer;
+        if (foodImporter != null) {
+            foodImporter.cancel();
+        }
+    }
+
+    public void onBatch(FoodImporter.Batch batch) {
+        if (this.importer == null) {
+            return;
+        }
+        int count = batch.count;
+        for (int i = 0; i < count; i++) {
+            if (this.engine.addNormalized(batch.names[i], batch.keys[i], batch.weights[i], batch.specs[i]) >= 0) {
+                this.imported++;
+            }
+        }
+    }
+
+    public void onProgress(long bytesRead, long totalBytes) {
+        ImportListener listener = this.importListener;
+        if (this.importer != null && listener != null) {
+            listener.onImportProgress(bytesRead, totalBytes, this.imported);
+        }
+    }
+
+    public void onFinished(boolean cancelled, int malformed, IOException error) {
+        if (this.importer == null) {
+            return;
+        }
+        this.importer = null;
+        this.engine.endEdit();
+        if (this.imported > 0) {
+            this.engine.publishChange(this.imported);
+        }
+        ImportListener listener = this.importListener;
+        if (listener != null) {
+            listener.onImportFinished(this.imported, malformed, cancelled, error);
+        }
+    }
+
+    /* access modifiers changed from: protected */
+    public void onCleared() {
+        FoodImporter foodImporter = this.importer;
+        if (foodImporter != null) {
+            // Keep what was applied so far; the importer's late callbacks find no import and are ignored.
+            foodImporter.cancel();
+            this.importer = null;
+            this.engine.endEdit();
+        }
+        this.suggester.close();
+        this.engine.saveDecisionState();
+        // Leave an up-to-date snapshot behind for the widget and the Decide shortcut.
+        this.engine.checkpoint();
+        this.engine.close();
+        this.eventLog.close();
+        this.main.removeCallbacksAndMessages((Object) null);
+    }
+}
@@ -0,0 +1,209 @@
+package com.kalyan.dinnerdecider;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.util.AttributeSet;
+import android.view.View;
+import android.view.animation.DecelerateInterpolator;
+import com.kalyan.dinnerdecider.engine.CatalogVersion;
+
+/**
+ * The catalog as a wheel of fortune, one sector per food sized by its weight, that spins
+ * to each decision. Sectors, colours and ellipsized labels are laid out once per catalog
+ * version and view size, so {@link #onDraw} only walks preallocated arrays. A spin does
+ * not call it at all: it animates the view's rotation, which the render thread applies
+ * to a hardware layer holding the drawn wheel, so the frame cost does not depend on the
+ * number of sectors.
+ *
+ * <p>Labels are drawn only on sectors wide enough to hold them. Catalogs of more than
+ * {@link #MAX_SECTORS} foods are drawn as that many equal bands instead of slivers too
+ * thin to see; the wheel then still lands on the exact angle of the chosen food, it just
+ * has no sector of its own.
+ */
+public final class DecisionWheelView extends View {
+    private static final float HUB_FRACTION = 0.38f;
+    private static final float LABEL_MIN_SWEEP = 9.0f;
+    private static final int MAX_SECTORS = 720;
+    private static final int[] PALETTE = {0xFF5A7E8C, 0xFF018786, 0xFF37474F, 0xFF008577};
+    private static final DecelerateInterpolator SPIN_EASING = new DecelerateInterpolator(2.0f);
+    private static final long SPIN_MS = 2600;
+    private static final int SPIN_TURNS = 4;
+    private static final float TOP = -90.0f;
+    private final Paint fill = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private int labelCount;
+    private float[] labelAngles = new float[0];
+    private float labelX;
+    private float labelY;
+    private String[] labels = new String[0];
+    private final RectF oval = new RectF();
+    private Runnable pendingStop;
+    private final Paint rim = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private int sectorCount;
+    private int[] sectorColors = new int[0];
+    private float[] sectorStarts = new float[0];
+    private float[] sectorSweeps = new float[0];
+    private final TextPaint text = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private CatalogVersion version;
+
+    public DecisionWheelView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        float density = getResources().getDisplayMetrics().density;
+        this.text.setColor(Color.WHITE);
+        this.text.setTextSize(12.0f * density);
+        this.rim.setStyle(Paint.Style.STROKE);
+        this.rim.setStrokeWidth(2.0f * density);
+        this.rim.setColor(Color.WHITE);
+    }
+
+    /** Shows {@code version}; cheap when it is the one already shown. */
+    public void setCatalog(CatalogVersion version2) {
+        if (version2 != this.version) {
+            this.version = version2;
+            layoutSectors();
+        }
+    }
+
+    /**
+     * Spins to row {@code row} of the shown version and runs {@code onStop} when the
+     * wheel settles. A spin still under way is cut short and its own callback run first.
+     * An out-of-range row runs {@code onStop} straight away.
+     */
+    public void spinTo(int row, Runnable onStop) {
+        Runnable previous = this.pendingStop;
+        if (previous != null) {
+            this.pendingStop = null;
+            animate().cancel();
+            previous.run();
+        }
+        CatalogVersion version2 = this.version;
+        if (version2 == null || row < 0 || row >= version2.size()) {
+            onStop.run();
+            return;
+        }
+        float current = getRotation() % 360.0f;
+        setRotation(current);
+        float delta = ((((TOP - rowAngle(version2, row, 0.5d)) - current) % 360.0f) + 360.0f) % 360.0f;
+        this.pendingStop = onStop;
+        animate().rotation(((float) (SPIN_TURNS * 360)) + current + delta).setDuration(SPIN_MS).setInterpolator(SPIN_EASING).withLayer().withEndAction(() -> {
+            Runnable stop = this.pendingStop;
+            this.pendingStop = null;
+            if (stop != null) {
+                stop.run();
+            }
+        });
+    }
+
+    /* access modifiers changed from: protected */
+    public void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        float inset = this.rim.getStrokeWidth();
+        float radius = (((float) Math.min(w, h)) / 2.0f) - inset;
+        float cx = ((float) w) / 2.0f;
+        float cy = ((float) h) / 2.0f;
+        this.oval.set(cx - radius, cy - radius, cx + radius, cy + radius);
+        layoutSectors();
+    }
+
+    /* access modifiers changed from: protected */
+    public void onDetachedFromWindow() {
+        animate().cancel();
+        this.pendingStop = null;
+        super.onDetachedFromWindow();
+    }
+
+    /* access modifiers changed from: protected */
+    public void onDraw(Canvas canvas) {
+        int n = this.sectorCount;
+        for (int i = 0; i < n; i++) {
+            this.fill.setColor(this.sectorColors[i]);
+            canvas.drawArc(this.oval, this.sectorStarts[i], this.sectorSweeps[i], true, this.fill);
+        }
+        float cx = this.oval.centerX();
+        float cy = this.oval.centerY();
+        int labels2 = this.labelCount;
+        for (int i2 = 0; i2 < labels2; i2++) {
+            canvas.save();
+            canvas.rotate(this.labelAngles[i2], cx, cy);
+            canvas.drawText(this.labels[i2], this.labelX, this.labelY, this.text);
+            canvas.restore();
+        }
+        canvas.drawOval(this.oval, this.rim);
+    }
+
+    /** Rebuilds the sector and label arrays; the only place the wheel allocates. */
+    private void layoutSectors() {
+        CatalogVersion version2 = this.version;
+        int size = version2 != null ? version2.size() : 0;
+        float radius = this.oval.width() / 2.0f;
+        this.sectorCount = 0;
+        this.labelCount = 0;
+        if (size == 0 || radius <= 0.0f) {
+            invalidate();
+            return;
+        }
+        boolean banded = size > MAX_SECTORS;
+        int n = banded ? MAX_SECTORS : size;
+        if (this.sectorStarts.length < n) {
+            this.sectorStarts = new float[n];
+            this.sectorSweeps = new float[n];
+            this.sectorColors = new int[n];
+        }
+        int colors = banded ? 2 : PALETTE.length;
+        for (int i = 0; i < n; i++) {
+            float start = banded ? TOP + ((((float) i) * 360.0f) / ((float) n)) : rowAngle(version2, i, 0.0d);
+            float end = banded ? TOP + ((((float) (i + 1)) * 360.0f) / ((float) n)) : rowAngle(version2, i, 1.0d);
+            this.sectorStarts[i] = start;
+            this.sectorSweeps[i] = end - start;
+            this.sectorColors[i] = PALETTE[i % colors];
+        }
+        if (n > 1 && n % colors == 1) {
+            // Keep the last sector from matching the first one it touches.
+            this.sectorColors[n - 1] = PALETTE[1];
+        }
+        this.sectorCount = n;
+        if (!banded) {
+            // Labels start clear of the logo that sits over the hub.
+            float pad = radius * HUB_FRACTION;
+            float width = (radius - pad) - (radius * 0.06f);
+            this.labelX = this.oval.centerX() + pad;
+            this.labelY = this.oval.centerY() - ((this.text.ascent() + this.text.descent()) / 2.0f);
+            int count = 0;
+            for (int i2 = 0; i2 < n; i2++) {
+                if (this.sectorSweeps[i2] >= LABEL_MIN_SWEEP) {
+                    count++;
+                }
+            }
+            if (this.labels.length < count) {
+                this.labels = new String[count];
+                this.labelAngles = new float[count];
+            }
+            int count2 = 0;
+            for (int i3 = 0; i3 < n; i3++) {
+                if (this.sectorSweeps[i3] >= LABEL_MIN_SWEEP) {
+                    this.labels[count2] = TextUtils.ellipsize(version2.getEntries().get(i3).getName(), this.text, width, TextUtils.TruncateAt.END).toString();
+                    this.labelAngles[count2] = this.sectorStarts[i3] + (this.sectorSweeps[i3] / 2.0f);
+                    count2++;
+                }
+            }
+            this.labelCount = count2;
+        }
+        invalidate();
+    }
+
+    /** The angle at {@code fraction} of the way through row {@code row}, clockwise from 3 o'clock. */
+    private static float rowAngle(CatalogVersion version2, int row, double fraction) {
+        double total = version2.totalWeight();
+        double position;
+        if (total > 0.0d) {
+            position = (version2.weightBefore(row) + (version2.getEntries().get(row).getWeight() * fraction)) / total;
+        } else {
+            position = (((double) row) + fraction) / ((double) version2.size());
+        }
+        return TOP + ((float) (360.0d * position));
+    }
+}
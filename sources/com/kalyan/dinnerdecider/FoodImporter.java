@@ -0,0 +1,514 @@
+package com.kalyan.dinnerdecider;
+
+import android.os.Handler;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import com.kalyan.dinnerdecider.engine.FlatCatalog;
+import com.kalyan.dinnerdecider.engine.NameIndex;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Streams foods out of a plain-text, CSV or JSON file on a background thread. Names are
+ * cleaned and normalized while parsing and handed to the {@link Listener} on the main
+ * thread in batches of {@link #BATCH_SIZE}. Only two batches exist at a time: the parser
+ * fills one while the main thread applies the other, so memory stays bounded no matter
+ * how large the file is.
+ *
+ * <p>Text files hold one food per line. CSV files hold a name and an optional weight per
+ * row, with an optional {@code name} header. JSON files hold an array, or an object with
+ * a {@code foods} array, of strings or of {@code {"name": ..., "weight": ...}} objects.
+ * Catalog files are {@link FlatCatalog} exports and keep tags; a file-backed stream is
+ * mapped rather than read, other streams are read into memory first.
+ *
+ * <p>The listener always gets {@link Listener#onFinished} once, whether the import ran
+ * through, was cancelled or failed, malformed input included. Text lines and CSV rows
+ * longer than {@link #MAX_ROW_CHARS}, and CSV fields longer than {@link #MAX_FIELD_CHARS},
+ * are skipped without being held in memory and counted as malformed; an unclosed CSV
+ * quote ends at the cap too, and parsing resumes at the next line.
+ */
+public final class FoodImporter {
+    public static final int BATCH_SIZE = 4096;
+    public static final String CATALOG_EXTENSION = ".ddc";
+    public static final int MAX_FIELD_CHARS = 1024;
+    public static final int MAX_ROW_CHARS = 4096;
+    private static final int ROW_END = 0;
+    private static final int ROW_INPUT_END = -1;
+    private static final int ROW_MALFORMED = 1;
+    private volatile boolean cancelled;
+    private final Format format;
+    private final Handler handler;
+    private final InputStream input;
+    private final Listener listener;
+    private final long totalBytes;
+
+    public enum Format {
+        TEXT,
+        CSV,
+        JSON,
+        CATALOG;
+
+        public static Format guess(String fileName, String mimeType) {
+            String mime = mimeType != null ? mimeType.toLowerCase(Locale.ROOT) : "";
+            String name = fileName != null ? fileName.toLowerCase(Locale.ROOT) : "";
+            if (name.endsWith(CATALOG_EXTENSION)) {
+                return CATALOG;
+            }
+            if (mime.contains("json") || name.endsWith(".json")) {
+                return JSON;
+            }
+            if (mime.contains("csv") || mime.contains("comma-separated") || name.endsWith(".csv")) {
+                return CSV;
+            }
+            return TEXT;
+        }
+    }
+
+    /** Callbacks, all delivered on the handler's thread. */
+    public interface Listener {
+        void onBatch(Batch batch);
+
+        void onProgress(long bytesRead, long totalBytes);
+
+        /** {@code malformed} counts the rows skipped as too long. */
+        void onFinished(boolean cancelled, int malformed, IOException error);
+    }
+
+    public static final class Batch {
+        public int count;
+        public final String[] keys = new String[FoodImporter.BATCH_SIZE];
+        public final String[] names = new String[FoodImporter.BATCH_SIZE];
+        public final String[] specs = new String[FoodImporter.BATCH_SIZE];
+        public final double[] weights = new double[FoodImporter.BATCH_SIZE];
+
+        /* access modifiers changed from: package-private */
+        public boolean add(String rawName, double weight, String spec) {
+            String name = NameIndex.clean(rawName);
+            String key = NameIndex.normalize(name);
+            if (key.length() == 0) {
+                return false;
+            }
+            int i = this.count;
+            this.names[i] = name;
+            this.keys[i] = key;
+            this.specs[i] = spec;
+            this.weights[i] = weight;
+            this.count = i + 1;
+            return this.count == FoodImporter.BATCH_SIZE;
+        }
+
+        /* access modifiers changed from: package-private */
+        public void clear() {
+            for (int i = 0; i < this.count; i++) {
+                this.names[i] = null;
+                this.keys[i] = null;
+                this.specs[i] = null;
+            }
+            this.count = 0;
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                this.count++;
+            }
+            return b;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                this.count += (long) n;
+            }
+            return n;
+        }
+    }
+
+    public FoodImporter(InputStream input2, long totalBytes2, Format format2, Handler handler2, Listener listener2) {
+        this.input = input2;
+        this.totalBytes = totalBytes2;
+        this.format = format2;
+        this.handler = handler2;
+        this.listener = listener2;
+    }
+
+    public void start() {
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                FoodImporter.this.runImport();
+            }
+        }, "food-import");
+        thread.setPriority(4);
+        thread.start();
+    }
+
+    /** Stops parsing at the next row. Batches already handed over are kept. */
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    /* access modifiers changed from: private */
+    public void runImport() {
+        CountingInputStream counter = new CountingInputStream(this.input);
+        Sink sink = new Sink(counter);
+        IOException failure = null;
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(counter, StandardCharsets.UTF_8), 65536);
+            sink.begin();
+            switch (this.format) {
+                case CSV:
+                    parseCsv(reader, sink);
+                    break;
+                case JSON:
+                    parseJson(reader, sink);
+                    break;
+                case CATALOG:
+                    parseCatalog(counter, sink);
+                    break;
+                default:
+                    parseText(reader, sink);
+                    break;
+            }
+            sink.flush();
+            sink.awaitApplied();
+        } catch (IOException e) {
+            failure = e;
+        } catch (RuntimeException e) {
+            // Parsers reject some malformed input this way, such as a JSON root that is a
+            // number; report it like any other unreadable file instead of dying with it.
+            failure = new IOException("Malformed " + this.format.name().toLowerCase(Locale.ROOT) + " file", e);
+        } catch (InterruptedException e2) {
+            this.cancelled = true;
+        } finally {
+            try {
+                this.input.close();
+            } catch (IOException e3) {
+            }
+        }
+        final boolean wasCancelled = this.cancelled;
+        final int malformed = sink.malformed;
+        final IOException error = failure;
+        this.handler.post(new Runnable() {
+            public void run() {
+                FoodImporter.this.listener.onFinished(wasCancelled, malformed, error);
+            }
+        });
+    }
+
+    /**
+     * Double-buffers batches between the parser and the main thread. The parser owns the
+     * current batch; the other one is either free or waiting to be applied.
+     */
+    private final class Sink {
+        private final Batch[] batches = {new Batch(), new Batch()};
+        private final CountingInputStream counter;
+        private int current;
+        int malformed;
+        private final Semaphore[] free = {new Semaphore(1), new Semaphore(1)};
+
+        Sink(CountingInputStream counter2) {
+            this.counter = counter2;
+        }
+
+        void begin() throws InterruptedException {
+            this.free[0].acquire();
+        }
+
+        boolean accept(String name, double weight) throws InterruptedException {
+            return accept(name, weight, "");
+        }
+
+        boolean accept(String name, double weight, String spec) throws InterruptedException {
+            if (FoodImporter.this.cancelled) {
+                return false;
+            }
+            if (this.batches[this.current].add(name, weight, spec)) {
+                flush();
+            }
+            return true;
+        }
+
+        void flush() throws InterruptedException {
+            final Batch batch = this.batches[this.current];
+            if (batch.count != 0) {
+                final Semaphore released = this.free[this.current];
+                final long read = this.counter.count;
+                FoodImporter.this.handler.post(new Runnable() {
+                    public void run() {
+                        try {
+                            FoodImporter.this.listener.onBatch(batch);
+                            FoodImporter.this.listener.onProgress(read, FoodImporter.this.totalBytes);
+                        } finally {
+                            batch.clear();
+                            released.release();
+                        }
+                    }
+                });
+                int next = this.current ^ 1;
+                this.current = next;
+                this.free[next].acquire();
+            }
+        }
+
+        void awaitApplied() throws InterruptedException {
+            this.free[this.current ^ 1].acquire();
+        }
+    }
+
+    private void parseCatalog(CountingInputStream counter, Sink sink) throws IOException, InterruptedException {
+        ByteBuffer bytes;
+        if (this.input instanceof FileInputStream) {
+            FileChannel channel = ((FileInputStream) this.input).getChannel();
+            bytes = channel.map(FileChannel.MapMode.READ_ONLY, channel.position(), channel.size() - channel.position());
+        } else {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(this.totalBytes > 0 ? (int) Math.min(this.totalBytes, 2147483639L) : 65536);
+            byte[] buffer = new byte[65536];
+            while (true) {
+                int n = counter.read(buffer);
+                if (n < 0) {
+                    break;
+                }
+                out.write(buffer, 0, n);
+            }
+            bytes = ByteBuffer.wrap(out.toByteArray());
+        }
+        FlatCatalog catalog = FlatCatalog.wrap(bytes);
+        int size = catalog.size();
+        try {
+            for (int i = 0; i < size; i++) {
+                if (!sink.accept(catalog.name(i), validWeight(catalog.weight(i)), catalog.tags(i))) {
+                    return;
+                }
+                counter.count = (((long) i + 1) * ((long) bytes.capacity())) / ((long) size);
+            }
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Corrupt catalog file", e);
+        }
+    }
+
+    private static void parseText(BufferedReader reader, Sink sink) throws IOException, InterruptedException {
+        StringBuilder line = new StringBuilder(64);
+        while (true) {
+            line.setLength(0);
+            int end = readLine(reader, line);
+            if (end == ROW_MALFORMED) {
+                sink.malformed++;
+            } else if (end == ROW_INPUT_END && line.length() == 0) {
+                return;
+            } else if (!sink.accept(line.toString(), 1.0d)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads a line ended by {@code \n}, {@code \r} or {@code \r\n} into {@code line}.
+     * Returns {@link #ROW_END}, {@link #ROW_INPUT_END} if the input ended first, or
+     * {@link #ROW_MALFORMED} after skipping the rest of a line past {@link #MAX_ROW_CHARS}.
+     */
+    private static int readLine(BufferedReader reader, StringBuilder line) throws IOException {
+        boolean overlong = false;
+        while (true) {
+            int c = reader.read();
+            if (c < 0) {
+                return overlong ? ROW_MALFORMED : ROW_INPUT_END;
+            }
+            if (c == 10 || c == 13) {
+                if (c == 13) {
+                    reader.mark(1);
+                    if (reader.read() != 10) {
+                        reader.reset();
+                    }
+                }
+                return overlong ? ROW_MALFORMED : ROW_END;
+            }
+            if (overlong) {
+                continue;
+            }
+            if (line.length() == MAX_ROW_CHARS) {
+                overlong = true;
+                line.setLength(0);
+            } else {
+                line.append((char) c);
+            }
+        }
+    }
+
+    private static void parseCsv(BufferedReader reader, Sink sink) throws IOException, InterruptedException {
+        StringBuilder name = new StringBuilder(64);
+        StringBuilder weight = new StringBuilder(16);
+        boolean first = true;
+        while (true) {
+            name.setLength(0);
+            weight.setLength(0);
+            int end = readCsvRecord(reader, name, weight);
+            if (end == ROW_MALFORMED) {
+                sink.malformed++;
+                first = false;
+                continue;
+            }
+            if (end < 0 && name.length() == 0 && weight.length() == 0) {
+                return;
+            }
+            if (!first || !NameIndex.normalize(name).equals("name")) {
+                if (!sink.accept(name.toString(), parseWeight(weight))) {
+                    return;
+                }
+            }
+            first = false;
+            if (end < 0) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads one CSV record, keeping the first field in {@code name} and the second in
+     * {@code weight}. Returns {@link #ROW_INPUT_END} at end of input, {@link #ROW_END}
+     * otherwise, or {@link #ROW_MALFORMED} once the record or one of its fields grows past
+     * its cap; the rest of that line is then skipped, quoted or not.
+     */
+    private static int readCsvRecord(BufferedReader reader, StringBuilder name, StringBuilder weight) throws IOException {
+        int field = 0;
+        int fieldChars = 0;
+        int rowChars = 0;
+        boolean quoted = false;
+        boolean fieldStart = true;
+        while (true) {
+            if (rowChars > MAX_ROW_CHARS || fieldChars > MAX_FIELD_CHARS) {
+                name.setLength(0);
+                weight.setLength(0);
+                int skipped = reader.read();
+                while (skipped >= 0 && skipped != 10) {
+                    skipped = reader.read();
+                }
+                return ROW_MALFORMED;
+            }
+            int c = reader.read();
+            if (c < 0) {
+                return ROW_INPUT_END;
+            }
+            rowChars++;
+            if (quoted) {
+                if (c == 34) {
+                    reader.mark(1);
+                    if (reader.read() == 34) {
+                        append(field, name, weight, '\"');
+                        fieldChars++;
+                    } else {
+                        reader.reset();
+                        quoted = false;
+                    }
+                } else {
+                    append(field, name, weight, (char) c);
+                    fieldChars++;
+                }
+            } else if (c == 34 && fieldStart) {
+                quoted = true;
+                fieldStart = false;
+            } else if (c == 44) {
+                field++;
+                fieldChars = 0;
+                fieldStart = true;
+            } else if (c == 10) {
+                return ROW_END;
+            } else if (c != 13) {
+                append(field, name, weight, (char) c);
+                fieldChars++;
+                fieldStart = false;
+            }
+        }
+    }
+
+    private static void append(int field, StringBuilder name, StringBuilder weight, char c) {
+        if (field == 0) {
+            name.append(c);
+        } else if (field == 1) {
+            weight.append(c);
+        }
+    }
+
+    private static void parseJson(BufferedReader reader, Sink sink) throws IOException, InterruptedException {
+        JsonReader json = new JsonReader(reader);
+        json.setLenient(true);
+        if (json.peek() == JsonToken.BEGIN_OBJECT) {
+            json.beginObject();
+            while (json.hasNext()) {
+                if (!json.nextName().equals("foods") || json.peek() != JsonToken.BEGIN_ARRAY) {
+                    json.skipValue();
+                } else {
+                    parseJsonArray(json, sink);
+                    return;
+                }
+            }
+            return;
+        }
+        parseJsonArray(json, sink);
+    }
+
+    private static void parseJsonArray(JsonReader json, Sink sink) throws IOException, InterruptedException {
+        json.beginArray();
+        while (json.hasNext()) {
+            if (json.peek() == JsonToken.BEGIN_OBJECT) {
+                String name = null;
+                double weight = 1.0d;
+                json.beginObject();
+                while (json.hasNext()) {
+                    String field = json.nextName();
+                    if (field.equals("name") && json.peek() == JsonToken.STRING) {
+                        name = json.nextString();
+                    } else if (!field.equals("weight") || json.peek() != JsonToken.NUMBER) {
+                        json.skipValue();
+                    } else {
+                        weight = json.nextDouble();
+                    }
+                }
+                json.endObject();
+                if (name != null && !sink.accept(name, validWeight(weight))) {
+                    return;
+                }
+            } else if (json.peek() != JsonToken.STRING) {
+                json.skipValue();
+            } else if (!sink.accept(json.nextString(), 1.0d)) {
+                return;
+            }
+        }
+    }
+
+    private static double parseWeight(CharSequence text) {
+        String trimmed = text.toString().trim();
+        if (trimmed.length() == 0) {
+            return 1.0d;
+        }
+        try {
+            return validWeight(Double.parseDouble(trimmed));
+        } catch (NumberFormatException e) {
+            return 1.0d;
+        }
+    }
+
+    private static double validWeight(double weight) {
+        if (weight < 0.0d || Double.isNaN(weight) || Double.isInfinite(weight)) {
+            return 1.0d;
+        }
+        return weight;
+    }
+}
@@ -1,24 +1,86 @@
 package com.kalyan.dinnerdecider;
 
+import android.database.Cursor;
+import android.net.Uri;
 import android.os.Bundle;
+import android.provider.OpenableColumns;
+import android.text.Editable;
+import android.text.TextUtils;
+import android.text.TextWatcher;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
+import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.TextView;
+import android.widget.Toast;
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
+import androidx.appcompat.app.ActionBar;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
-import java.util.ArrayList;
+import androidx.appcompat.widget.ListPopupWindow;
+import androidx.lifecycle.ViewModelProvider;
+import com.kalyan.dinnerdecider.engine.CatalogVersion;
+import com.kalyan.dinnerdecider.engine.DecisionEngine;
+import com.kalyan.dinnerdecider.engine.NameIndex;
+import com.kalyan.dinnerdecider.engine.Suggester;
+import com.kalyan.dinnerdecider.engine.TagIndex;
+import com.kalyan.dinnerdecider.engine.Tracing;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Random;
 import kotlin.Metadata;
-import kotlin.collections.CollectionsKt;
 import kotlin.jvm.internal.Intrinsics;
 
 @Metadata(d1 = {"\u0000(\n\u0002\u0018\u0002\n\u0002\u0018\u0002\n\u0002\b\u0002\n\u0002\u0018\u0002\n\u0002\u0010\u000e\n\u0002\u0018\u0002\n\u0002\b\u0003\n\u0002\u0010\u0002\n\u0000\n\u0002\u0018\u0002\n\u0000\u0018\u00002\u00020\u0001B\u0005¢\u0006\u0002\u0010\u0002J\u0012\u0010\t\u001a\u00020\n2\b\u0010\u000b\u001a\u0004\u0018\u00010\fH\u0014R!\u0010\u0003\u001a\u0012\u0012\u0004\u0012\u00020\u00050\u0004j\b\u0012\u0004\u0012\u00020\u0005`\u0006¢\u0006\b\n\u0000\u001a\u0004\b\u0007\u0010\b¨\u0006\r"}, d2 = {"Lcom/kalyan/dinnerdecider/MainActivity;", "Landroidx/appcompat/app/AppCompatActivity;", "()V", "foodList", "Ljava/util/ArrayList;", "", "Lkotlin/collections/ArrayList;", "getFoodList", "()Ljava/util/ArrayList;", "onCreate", "", "savedInstanceState", "Landroid/os/Bundle;", "app_debug"}, k = 1, mv = {1, 6, 0}, xi = 48)
 /* compiled from: MainActivity.kt */
-public final class MainActivity extends AppCompatActivity {
+public final class MainActivity extends AppCompatActivity implements DeciderViewModel.ImportListener {
+    private static final int MENU_CANCEL_IMPORT = 2;
+    private static final int MENU_CATALOG = 9;
+    private static final int MENU_EXPORT = 10;
+    private static final int MENU_EXPORT_TRACE = 11;
+    private static final int MENU_FILTER = 4;
+    private static final int MENU_FIND_DUPLICATES = 5;
+    private static final int MENU_IMPORT = 1;
+    private static final int MENU_NO_REPEATS = 3;
+    private static final int MENU_REDO = 8;
+    private static final int MENU_STATS = 6;
+    private static final int MENU_UNDO = 7;
+    private static final int SUGGESTION_LIMIT = 6;
+    private static final int AUDIT_DRAWS = 1000000;
+    private static final String TAG = "DinnerDecider";
     public Map<Integer, View> _$_findViewCache = new LinkedHashMap();
-    private final ArrayList<String> foodList = CollectionsKt.arrayListOf("Chinese", "Pizza", "Burger", "Pasta", "Tacos");
+    private CatalogScreen catalogScreen;
+    private DecisionEngine engine;
+    private final ActivityResultLauncher<String> exportLauncher = registerForActivityResult(new ActivityResultContracts.CreateDocument(), uri -> {
+        if (uri != null) {
+            startExport(uri);
+        }
+    });
+    private final ActivityResultLauncher<String[]> importLauncher = registerForActivityResult(new ActivityResultContracts.OpenDocument(), uri -> {
+        if (uri != null) {
+            startImport(uri);
+        }
+    });
+    private ArrayAdapter<String> suggestionAdapter;
+    private ListPopupWindow suggestionPopup;
+    private DeciderViewModel model;
+    private Suggester suggester;
+    private final ActivityResultLauncher<String> traceLauncher = registerForActivityResult(new ActivityResultContracts.CreateDocument(), uri -> {
+        if (uri != null) {
+            startTraceExport(uri);
+        }
+    });
 
     public void _$_clearFindViewByIdCache() {
         this._$_findViewCache.clear();
@@ -38,31 +100,421 @@ public final class MainActivity extends AppCompatActivity {
         return findViewById;
     }
 
-    public final ArrayList<String> getFoodList() {
-        return this.foodList;
+    public final DecisionEngine getEngine() {
+        return this.engine;
     }
 
     /* access modifiers changed from: protected */
     public void onCreate(Bundle savedInstanceState) {
-        super.onCreate(savedInstanceState);
-        setContentView((int) R.layout.activity_main);
-        ((Button) _$_findCachedViewById(R.id.decideBtn)).setOnClickListener(new MainActivity$$ExternalSyntheticLambda0(this));
-        ((Button) _$_findCachedViewById(R.id.addFoodBtn)).setOnClickListener(new MainActivity$$ExternalSyntheticLambda1(this));
+        Tracing.beginSection("MainActivity.onCreate");
+        try {
+            super.onCreate(savedInstanceState);
+            Tracing.beginSection("setContentView");
+            try {
+                setContentView((int) R.layout.activity_main);
+            } finally {
+                Tracing.endSection();
+            }
+            ((Button) _$_findCachedViewById(R.id.decideBtn)).setOnClickListener(new MainActivity$$ExternalSyntheticLambda0(this));
+            ((Button) _$_findCachedViewById(R.id.addFoodBtn)).setOnClickListener(new MainActivity$$ExternalSyntheticLambda1(this));
+            DeciderViewModel deciderViewModel = (DeciderViewModel) new ViewModelProvider(this).get(DeciderViewModel.class);
+            this.model = deciderViewModel;
+            this.engine = deciderViewModel.getEngine();
+            deciderViewModel.setImportListener(this);
+            if (deciderViewModel.isImporting()) {
+                setStatus("Importing\u2026");
+            }
+            this.suggester = deciderViewModel.getSuggester();
+            this.catalogScreen = new CatalogScreen(this, this.engine, () -> {
+                showFilterStatus();
+                invalidateOptionsMenu();
+            });
+            setUpSuggestions();
+            QuickDecide.publishShortcut(this);
+            deciderViewModel.getReady().observe(this, ready -> {
+                setCatalogReady(ready.booleanValue());
+                if (ready.booleanValue()) {
+                    ((DecisionWheelView) _$_findCachedViewById(R.id.decisionWheel)).setCatalog(this.engine.current());
+                    invalidateOptionsMenu();
+                    showFilterStatus();
+                }
+            });
+        } finally {
+            Tracing.endSection();
+        }
+    }
+
+    private void setUpSuggestions() {
+        EditText addFoodTxt = (EditText) _$_findCachedViewById(R.id.addFoodTxt);
+        this.suggestionAdapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1);
+        ListPopupWindow popup = new ListPopupWindow(this);
+        popup.setAnchorView(addFoodTxt);
+        popup.setAdapter(this.suggestionAdapter);
+        popup.setInputMethodMode(ListPopupWindow.INPUT_METHOD_NEEDED);
+        popup.setOnItemClickListener((parent, view, position, id) -> {
+            String name = this.suggestionAdapter.getItem(position);
+            this.suggester.cancel();
+            popup.dismiss();
+            addFoodTxt.setText(name);
+            addFoodTxt.setSelection(addFoodTxt.length());
+        });
+        this.suggestionPopup = popup;
+        addFoodTxt.addTextChangedListener(new TextWatcher() {
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            public void afterTextChanged(Editable s) {
+                MainActivity.this.suggest(s);
+            }
+        });
+    }
+
+    private void suggest(CharSequence text) {
+        if (!this.engine.isLoaded()) {
+            return;
+        }
+        this.engine.refresh(this.suggester);
+        String name = TagIndex.split(text)[0];
+        if (NameIndex.normalize(name).length() == 0) {
+            this.suggester.cancel();
+            this.suggestionPopup.dismiss();
+            return;
+        }
+        this.suggester.query(name, SUGGESTION_LIMIT, this::showSuggestions);
+    }
+
+    private void showSuggestions(CharSequence query, String[] names) {
+        String typed = NameIndex.normalize(query);
+        if (names.length == 0 || (names.length == 1 && NameIndex.normalize(names[0]).equals(typed))) {
+            this.suggestionPopup.dismiss();
+            return;
+        }
+        this.suggestionAdapter.clear();
+        this.suggestionAdapter.addAll(names);
+        if (!this.suggestionPopup.isShowing()) {
+            this.suggestionPopup.show();
+        }
+    }
+
+    /* access modifiers changed from: protected */
+    public void onStart() {
+        super.onStart();
+        this.catalogScreen.onStart();
+    }
+
+    /* access modifiers changed from: protected */
+    public void onStop() {
+        super.onStop();
+        this.engine.saveDecisionState();
+        // The widget and the Decide shortcut read the snapshot; bring it up to date while
+        // the app is in the background rather than only when the view model is cleared.
+        // Without edits since the last compaction this does no disk work.
+        this.engine.checkpoint();
+    }
+
+    public boolean onCreateOptionsMenu(Menu menu) {
+        menu.add(0, MENU_UNDO, 0, "Undo");
+        menu.add(0, MENU_REDO, 0, "Redo");
+        menu.add(0, MENU_CATALOG, 0, "Catalog");
+        menu.add(0, MENU_IMPORT, 0, "Import foods");
+        menu.add(0, MENU_EXPORT, 0, "Export catalog");
+        menu.add(0, MENU_CANCEL_IMPORT, 0, "Cancel import");
+        menu.add(0, MENU_NO_REPEATS, 0, "No repeats").setCheckable(true);
+        menu.add(0, MENU_FILTER, 0, "Filter\u2026");
+        menu.add(0, MENU_FIND_DUPLICATES, 0, "Find duplicates");
+        menu.add(0, MENU_STATS, 0, "Statistics");
+        menu.add(0, MENU_EXPORT_TRACE, 0, "Export trace");
+        return super.onCreateOptionsMenu(menu);
+    }
+
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        boolean importing = this.model.isImporting();
+        menu.findItem(MENU_IMPORT).setVisible(!importing);
+        menu.findItem(MENU_CANCEL_IMPORT).setVisible(importing);
+        menu.findItem(MENU_NO_REPEATS).setChecked(this.engine.isNoRepeats());
+        menu.findItem(MENU_CATALOG).setEnabled(this.engine.isLoaded() && !importing);
+        menu.findItem(MENU_EXPORT).setEnabled(this.engine.isLoaded() && !importing);
+        String undoLabel = importing ? null : this.engine.getUndoLabel();
+        String redoLabel = importing ? null : this.engine.getRedoLabel();
+        menu.findItem(MENU_UNDO).setVisible(undoLabel != null).setTitle("Undo " + undoLabel);
+        menu.findItem(MENU_REDO).setVisible(redoLabel != null).setTitle("Redo " + redoLabel);
+        return super.onPrepareOptionsMenu(menu);
+    }
+
+    public boolean onOptionsItemSelected(MenuItem item) {
+        int itemId = item.getItemId();
+        if (itemId == MENU_IMPORT) {
+            this.importLauncher.launch(new String[]{"text/*", "application/json", "application/octet-stream"});
+            return true;
+        } else if (itemId == MENU_EXPORT) {
+            this.exportLauncher.launch("foods" + FoodImporter.CATALOG_EXTENSION);
+            return true;
+        } else if (itemId == MENU_EXPORT_TRACE) {
+            this.traceLauncher.launch("dinner-decider-trace.json");
+            return true;
+        } else if (itemId == MENU_NO_REPEATS) {
+            this.engine.setNoRepeats(!this.engine.isNoRepeats());
+            item.setChecked(this.engine.isNoRepeats());
+            return true;
+        } else if (itemId == MENU_FILTER) {
+            showFilterDialog();
+            return true;
+        } else if (itemId == MENU_STATS) {
+            showStats();
+            return true;
+        } else if (itemId == MENU_CATALOG) {
+            this.catalogScreen.show();
+            return true;
+        } else if (itemId == MENU_UNDO || itemId == MENU_REDO) {
+            if (itemId == MENU_UNDO ? this.engine.undo() : this.engine.redo()) {
+                showFilterStatus();
+                invalidateOptionsMenu();
+                this.catalogScreen.refresh();
+            }
+            return true;
+        } else if (itemId == MENU_FIND_DUPLICATES) {
+            this.engine.findDuplicates(this::runOnUiThread, this::showDuplicates);
+            return true;
+        } else if (itemId != MENU_CANCEL_IMPORT) {
+            return super.onOptionsItemSelected(item);
+        } else {
+            this.model.cancelImport();
+            return true;
+        }
+    }
+
+    private void showFilterDialog() {
+        EditText input = new EditText(this);
+        input.setSingleLine(true);
+        input.setHint("vegetarian price<15 !spicy");
+        String current = this.engine.getFilter();
+        if (current != null) {
+            input.setText(current);
+            input.setSelection(current.length());
+        }
+        new AlertDialog.Builder(this).setTitle((CharSequence) "Filter").setView((View) input).setPositiveButton((CharSequence) "Apply", (dialog, which) -> applyFilter(input.getText().toString())).setNeutralButton((CharSequence) "Clear", (dialog2, which2) -> applyFilter((String) null)).setNegativeButton((CharSequence) "Cancel", null).show();
+    }
+
+    private void applyFilter(String expression) {
+        try {
+            this.engine.setFilter(expression);
+        } catch (IllegalArgumentException e) {
+            Toast.makeText(this, e.getMessage(), 1).show();
+        }
+        showFilterStatus();
+    }
+
+    private void showFilterStatus() {
+        if (!this.model.isImporting()) {
+            String filter = this.engine.getFilter();
+            setStatus(filter != null ? "Filter: " + filter + " (" + this.engine.matchCount() + ")" : null);
+        }
+    }
+
+    private void showStats() {
+        StringBuilder report = new StringBuilder();
+        this.engine.dumpStats(report);
+        Log.i(TAG, report.toString());
+        new AlertDialog.Builder(this).setTitle((CharSequence) "Statistics").setMessage((CharSequence) report).setPositiveButton((CharSequence) "OK", null).setNeutralButton((CharSequence) "Audit sampler", (dialog, which) -> {
+            Toast.makeText(this, "Drawing " + AUDIT_DRAWS + " times\u2026", 0).show();
+            this.engine.auditSampler(AUDIT_DRAWS, this::runOnUiThread, this::showAudit);
+        }).show();
+    }
+
+    private void showAudit(String report) {
+        Log.i(TAG, report);
+        new AlertDialog.Builder(this).setTitle((CharSequence) "Sampler audit").setMessage((CharSequence) report).setPositiveButton((CharSequence) "OK", null).show();
+    }
+
+    private void showDuplicates(List<String[]> groups) {
+        if (groups.isEmpty()) {
+            Toast.makeText(this, "No likely duplicates", 0).show();
+            return;
+        }
+        StringBuilder message = new StringBuilder();
+        for (String[] group : groups) {
+            if (message.length() > 0) {
+                message.append('\n');
+            }
+            message.append(TextUtils.join(" \u2248 ", group));
+        }
+        new AlertDialog.Builder(this).setTitle((CharSequence) "Likely duplicates (" + groups.size() + ")").setMessage((CharSequence) message).setPositiveButton((CharSequence) "OK", null).show();
+    }
+
+    private void startImport(Uri uri) {
+        String fileName = null;
+        long size = -1;
+        Cursor cursor = getContentResolver().query(uri, new String[]{OpenableColumns.DISPLAY_NAME, OpenableColumns.SIZE}, (String) null, (String[]) null, (String) null);
+        if (cursor != null) {
+            try {
+                if (cursor.moveToFirst()) {
+                    fileName = cursor.getString(cursor.getColumnIndexOrThrow(OpenableColumns.DISPLAY_NAME));
+                    int sizeColumn = cursor.getColumnIndexOrThrow(OpenableColumns.SIZE);
+                    if (!cursor.isNull(sizeColumn)) {
+                        size = cursor.getLong(sizeColumn);
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        try {
+            InputStream input = getContentResolver().openInputStream(uri);
+            if (input != null) {
+                FoodImporter.Format format = FoodImporter.Format.guess(fileName, getContentResolver().getType(uri));
+                this.model.startImport(input, size, format);
+                setStatus("Importing\u2026");
+                invalidateOptionsMenu();
+            }
+        } catch (IOException e) {
+            Toast.makeText(this, "Cannot open " + uri, 0).show();
+        }
+    }
+
+    private void startExport(Uri uri) {
+        try {
+            OutputStream output = getContentResolver().openOutputStream(uri);
+            if (output != null) {
+                setStatus("Exporting\u2026");
+                this.engine.exportCatalog(output, this::runOnUiThread, (count, error) -> {
+                    showFilterStatus();
+                    if (error != null) {
+                        Log.e(TAG, "Export failed", error);
+                        Toast.makeText(this, "Export failed", 1).show();
+                        return;
+                    }
+                    Toast.makeText(this, "Exported " + count + " foods", 0).show();
+                });
+            }
+        } catch (IOException e) {
+            Toast.makeText(this, "Cannot open " + uri, 0).show();
+        }
+    }
+
+    private void startTraceExport(Uri uri) {
+        try {
+            OutputStream output = getContentResolver().openOutputStream(uri);
+            if (output != null) {
+                new Thread(() -> {
+                    int events = -1;
+                    try {
+                        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+                        try {
+                            events = AppTrace.writeJson(writer);
+                        } finally {
+                            writer.close();
+                        }
+                    } catch (IOException e) {
+                        Log.e(TAG, "Trace export failed", e);
+                    }
+                    int count = events;
+                    runOnUiThread(() -> Toast.makeText(this, count >= 0 ? "Exported " + count + " trace events" : "Trace export failed", 0).show());
+                }, "trace-export").start();
+            }
+        } catch (IOException e) {
+            Toast.makeText(this, "Cannot open " + uri, 0).show();
+        }
+    }
+
+    public void onImportProgress(long bytesRead, long totalBytes, int imported) {
+        if (totalBytes > 0) {
+            setStatus("Importing\u2026 " + ((100 * bytesRead) / totalBytes) + "%");
+        } else {
+            setStatus("Importing\u2026 " + imported + " foods");
+        }
+    }
+
+    public void onImportFinished(int imported, int malformed, boolean cancelled, IOException error) {
+        this.catalogScreen.refresh();
+        showFilterStatus();
+        invalidateOptionsMenu();
+        String skipped = malformed > 0 ? " (" + malformed + " malformed rows skipped)" : "";
+        if (error != null) {
+            Log.e(TAG, "Import failed", error);
+            Toast.makeText(this, "Import failed after " + imported + " foods" + skipped, 1).show();
+        } else if (cancelled) {
+            Toast.makeText(this, "Import cancelled after " + imported + " foods" + skipped, 0).show();
+        } else {
+            Toast.makeText(this, "Imported " + imported + " foods" + skipped, malformed > 0 ? 1 : 0).show();
+        }
+    }
+
+    private void setStatus(CharSequence status) {
+        ActionBar actionBar = getSupportActionBar();
+        if (actionBar != null) {
+            actionBar.setSubtitle(status);
+        }
+    }
+
+    /* access modifiers changed from: protected */
+    public void onDestroy() {
+        // The import belongs to the view model: a rotation keeps it running, and finishing
+        // for good cancels it when the view model is cleared.
+        this.model.setImportListener(null);
+        this.suggester.cancel();
+        this.suggestionPopup.dismiss();
+        this.catalogScreen.dismiss();
+        super.onDestroy();
+    }
+
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        this.catalogScreen.trimMemory(level);
+    }
+
+    private void setCatalogReady(boolean ready) {
+        ((Button) _$_findCachedViewById(R.id.decideBtn)).setEnabled(ready);
+        ((Button) _$_findCachedViewById(R.id.addFoodBtn)).setEnabled(ready);
     }
 
     /* access modifiers changed from: private */
     /* renamed from: onCreate$lambda-0  reason: not valid java name */
     public static final void m1onCreate$lambda0(MainActivity this$0, View it) {
         Intrinsics.checkNotNullParameter(this$0, "this$0");
-        ((TextView) this$0._$_findCachedViewById(R.id.selectedFoodText)).setText(this$0.foodList.get(new Random().nextInt(this$0.foodList.size())));
+        Tracing.beginSection("MainActivity.decide");
+        try {
+            int id = this$0.engine.size() > 0 ? this$0.engine.decide() : DecisionEngine.BLANK;
+            TextView selectedFoodText = (TextView) this$0._$_findCachedViewById(R.id.selectedFoodText);
+            if (id == DecisionEngine.BLANK) {
+                selectedFoodText.setText("Nothing matches");
+                return;
+            }
+            String name = this$0.engine.name(id);
+            // During an import the pick comes from the published version, whose rows are
+            // the ids of the foods it already had; anything else lands without a spin.
+            CatalogVersion version = this$0.engine.current();
+            DecisionWheelView wheel = (DecisionWheelView) this$0._$_findCachedViewById(R.id.decisionWheel);
+            wheel.setCatalog(version);
+            wheel.spinTo((id >= version.size() || !version.getEntries().get(id).getName().equals(name)) ? -1 : id, () -> selectedFoodText.setText(name));
+        } finally {
+            Tracing.endSection();
+        }
     }
 
     /* access modifiers changed from: private */
     /* renamed from: onCreate$lambda-1  reason: not valid java name */
     public static final void m2onCreate$lambda1(MainActivity this$0, View it) {
         Intrinsics.checkNotNullParameter(this$0, "this$0");
-        this$0.foodList.add(((EditText) this$0._$_findCachedViewById(R.id.addFoodTxt)).getText().toString());
-        ((EditText) this$0._$_findCachedViewById(R.id.addFoodTxt)).getText().clear();
-        System.out.println(this$0.foodList);
+        Editable text = ((EditText) this$0._$_findCachedViewById(R.id.addFoodTxt)).getText();
+        String[] similar = this$0.engine.find(text) < 0 ? this$0.engine.nearDuplicates(text, 3) : new String[0];
+        if (similar.length > 0) {
+            new AlertDialog.Builder(this$0).setTitle((CharSequence) "Possible duplicate").setMessage((CharSequence) "Looks like " + TextUtils.join(", ", similar) + ".").setPositiveButton((CharSequence) "Add anyway", (dialog, which) -> this$0.addFood()).setNegativeButton((CharSequence) "Cancel", null).show();
+        } else {
+            this$0.addFood();
+        }
+    }
+
+    private void addFood() {
+        int result = this.engine.add(((EditText) _$_findCachedViewById(R.id.addFoodTxt)).getText(), 1.0d);
+        if (DecisionEngine.isDuplicate(result)) {
+            Toast.makeText(this, this.engine.name(DecisionEngine.existingId(result)) + " is already on the list", 0).show();
+        } else if (result != DecisionEngine.BLANK) {
+            ((EditText) _$_findCachedViewById(R.id.addFoodTxt)).getText().clear();
+            showFilterStatus();
+            this.catalogScreen.refresh();
+        }
     }
 }
@@ -0,0 +1,66 @@
+package com.kalyan.dinnerdecider;
+
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+import androidx.core.content.pm.ShortcutInfoCompat;
+import androidx.core.content.pm.ShortcutManagerCompat;
+import androidx.core.graphics.drawable.IconCompat;
+import com.kalyan.dinnerdecider.engine.DecisionEngine;
+import com.kalyan.dinnerdecider.engine.DecisionRandom;
+import com.kalyan.dinnerdecider.engine.FlatCatalog;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Decides for the home-screen widget and the launcher shortcut straight from the
+ * engine's on-disk snapshot, without starting the engine or an activity. Mapping the
+ * snapshot reads only its header and the pick is a binary search over running weight
+ * totals, so a cold process answers in a few milliseconds at any catalog size. Filters,
+ * the no-repeat bag and recency are the engine's and do not apply here, and a quick
+ * decision is not recorded in the history.
+ */
+final class QuickDecide {
+    static final String ACTION_DECIDE = "com.kalyan.dinnerdecider.action.DECIDE";
+    private static final String SHORTCUT_ID = "decide";
+    private static final String TAG = "DinnerDecider";
+    private static FlatCatalog catalog;
+    private static long catalogLength;
+    private static long catalogModified;
+    private static final DecisionRandom random = DecisionRandom.create();
+
+    private QuickDecide() {
+    }
+
+    /** Returns a weighted pick, or null if the app has not written a snapshot yet. */
+    static synchronized String decide(Context context) {
+        File file = DecisionEngine.snapshotFile(context.getFilesDir());
+        long modified = file.lastModified();
+        long length = file.length();
+        if (modified == 0) {
+            return null;
+        }
+        if (catalog == null || modified != catalogModified || length != catalogLength) {
+            try {
+                catalog = FlatCatalog.map(file);
+            } catch (IOException e) {
+                Log.e(TAG, "Cannot map " + file, e);
+                catalog = null;
+                return null;
+            }
+            catalogModified = modified;
+            catalogLength = length;
+        }
+        int id = catalog.sample(random.nextDouble());
+        if (id < 0) {
+            return null;
+        }
+        return catalog.name(id);
+    }
+
+    /** Adds or refreshes the launcher's "Decide" shortcut. */
+    static void publishShortcut(Context context) {
+        Intent intent = new Intent(ACTION_DECIDE).setClass(context, QuickDecideActivity.class);
+        ShortcutManagerCompat.pushDynamicShortcut(context, new ShortcutInfoCompat.Builder(context, SHORTCUT_ID).setShortLabel("Decide").setLongLabel("Decide dinner").setIcon(IconCompat.createWithResource(context, R.mipmap.ic_launcher)).setIntent(intent).build());
+    }
+}
@@ -0,0 +1,24 @@
+package com.kalyan.dinnerdecider;
+
+import android.app.Activity;
+import android.content.Intent;
+import android.os.Bundle;
+import android.widget.Toast;
+
+/**
+ * Target of the launcher shortcut. It has no window: it toasts a quick decision and
+ * finishes in the same frame, falling back to the full app until a snapshot exists.
+ */
+public final class QuickDecideActivity extends Activity {
+    /* access modifiers changed from: protected */
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        String food = QuickDecide.decide(this);
+        if (food != null) {
+            Toast.makeText(getApplicationContext(), "You should eat " + food, 0).show();
+        } else {
+            startActivity(new Intent(this, MainActivity.class));
+        }
+        finish();
+    }
+}
@@ -2388,6 +2388,9 @@ public final class R {
         public static final int x_left = 2131362266;
         public static final int x_right = 2131362267;
         public static final int zero_corner_chip = 2131362268;
+        public static final int widgetFoodText = 2131362269;
+        public static final int decisionWheel = 2131362270;
+        public static final int wheelPointer = 2131362271;
 
         private id() {
         }
@@ -2558,6 +2561,7 @@ public final class R {
         public static final int text_view_with_line_height_from_style = 2131558510;
         public static final int text_view_with_theme_line_height = 2131558511;
         public static final int text_view_without_line_height = 2131558512;
+        public static final int widget_decide = 2131558513;
 
         private layout() {
         }
@@ -5337,6 +5341,7 @@ public final class R {
         public static final int standalone_badge_gravity_bottom_start = 2132017154;
         public static final int standalone_badge_gravity_top_start = 2132017155;
         public static final int standalone_badge_offset = 2132017156;
+        public static final int decide_widget = 2132017157;
 
         private xml() {
         }
@@ -0,0 +1,44 @@
+package com.kalyan.dinnerdecider;
+
+import android.content.Context;
+import android.util.Log;
+import androidx.startup.Initializer;
+import com.kalyan.dinnerdecider.engine.DecisionEngine;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Pulls the catalog snapshot into the page cache while the main thread is still starting
+ * the process, so the engine's load and the quick-decide paths find it resident instead
+ * of faulting it in page by page. Returns whether there was a snapshot to read.
+ */
+public final class SnapshotPrefetchInitializer implements Initializer<Boolean> {
+    private static final String TAG = "DinnerDecider";
+
+    public Boolean create(Context context) {
+        File file = DecisionEngine.snapshotFile(context.getFilesDir());
+        if (!file.isFile()) {
+            return false;
+        }
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length()).load();
+            } finally {
+                raf.close();
+            }
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot prefetch " + file, e);
+            return false;
+        }
+    }
+
+    public List<Class<? extends Initializer<?>>> dependencies() {
+        return Collections.emptyList();
+    }
+}
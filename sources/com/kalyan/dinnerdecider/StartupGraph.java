@@ -0,0 +1,266 @@
+package com.kalyan.dinnerdecider;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import androidx.startup.AppInitializer;
+import androidx.startup.Initializer;
+import androidx.startup.StartupException;
+import com.kalyan.dinnerdecider.engine.Tracing;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs the app's initializers as a dependency graph instead of the serial main-thread
+ * pass {@link AppInitializer} makes. Each initializer has a mode:
+ *
+ * <ul>
+ *   <li>{@code main}: on the main thread before {@link StartupProvider} returns, as before;
+ *   <li>{@code background}: on a small pool, each as soon as its dependencies are done, so
+ *       independent ones overlap with each other and with the main ones;
+ *   <li>{@code deferred}: on the main thread after the first activity draws its first frame.
+ * </ul>
+ *
+ * Main-thread initializers still run through {@link AppInitializer}, so library code that
+ * looks one up there (EmojiCompat asks it for the process lifecycle) gets the same
+ * instance. Background ones are created here and never registered with it, which is why
+ * an initializer may depend only on main ones or on ones of its own mode. A dependency
+ * that is not listed takes its dependent's mode, or main if dependents disagree. The
+ * start and duration of every initializer are logged.
+ */
+final class StartupGraph {
+    static final int MODE_BACKGROUND = 1;
+    static final int MODE_DEFERRED = 2;
+    static final int MODE_MAIN = 0;
+    private static final String[] MODE_NAMES = {"main", "background", "deferred"};
+    private static final String TAG = "DinnerDecider";
+    private int backgroundLeft;
+    private final Context context;
+    private final Handler main = new Handler(Looper.getMainLooper());
+    private final Map<Class<?>, Node> nodes = new LinkedHashMap();
+    private ExecutorService pool;
+    private final long startNanos = System.nanoTime();
+
+    StartupGraph(Context context2) {
+        this.context = context2.getApplicationContext();
+    }
+
+    /** Parses a meta-data value; the stock {@code androidx.startup} value means main. */
+    static int mode(String value) {
+        if ("androidx.startup".equals(value)) {
+            return MODE_MAIN;
+        }
+        for (int i = 0; i < MODE_NAMES.length; i++) {
+            if (MODE_NAMES[i].equals(value)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Adds {@code component} in {@code mode}, and transitively its dependencies. */
+    void add(Class<?> component, int mode) {
+        Node node = node(component, new HashSet());
+        node.listed = true;
+        node.mode = mode;
+    }
+
+    /** Runs the main initializers, and schedules the others; call once, on the main thread. */
+    void start() {
+        resolve();
+        List<Node> deferred = new ArrayList<>();
+        List<Node> ready = new ArrayList<>();
+        for (Node node : this.nodes.values()) {
+            if (node.mode == MODE_DEFERRED) {
+                deferred.add(node);
+            } else if (node.mode == MODE_BACKGROUND) {
+                this.backgroundLeft++;
+                node.pending = node.dependencies.size();
+                for (Node dependency : node.dependencies) {
+                    dependency.dependents.add(node);
+                }
+                if (node.pending == 0) {
+                    ready.add(node);
+                }
+            }
+        }
+        if (this.backgroundLeft > 0) {
+            this.pool = Executors.newFixedThreadPool(Math.min(this.backgroundLeft, Math.max(1, Runtime.getRuntime().availableProcessors() - 1)), runnable -> {
+                Thread thread = new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }, "Startup");
+                thread.setDaemon(true);
+                return thread;
+            });
+            for (Node node2 : ready) {
+                this.pool.execute(() -> runInBackground(node2));
+            }
+        }
+        for (Node node3 : this.nodes.values()) {
+            if (node3.mode == MODE_MAIN) {
+                run(node3);
+                finished(node3);
+            }
+        }
+        if (!deferred.isEmpty()) {
+            runAfterFirstFrame(deferred);
+        }
+    }
+
+    private Node node(Class<?> component, Set<Class<?>> initializing) {
+        Node node = this.nodes.get(component);
+        if (node != null) {
+            return node;
+        }
+        if (initializing.add(component)) {
+            try {
+                Node node2 = new Node(component, (Initializer) component.getDeclaredConstructor(new Class[0]).newInstance(new Object[0]));
+                for (Class<? extends Initializer<?>> dependency : node2.initializer.dependencies()) {
+                    node2.dependencies.add(node(dependency, initializing));
+                }
+                initializing.remove(component);
+                // Dependencies are put first, so iteration order is a valid run order.
+                this.nodes.put(component, node2);
+                return node2;
+            } catch (ReflectiveOperationException e) {
+                throw new StartupException((Throwable) e);
+            }
+        }
+        throw new StartupException(String.format("Cannot initialize %s. Cycle detected.", new Object[]{component.getName()}));
+    }
+
+    private void resolve() {
+        boolean changed;
+        do {
+            changed = false;
+            for (Node node : this.nodes.values()) {
+                if (node.mode >= 0) {
+                    for (Node dependency : node.dependencies) {
+                        if (dependency.mode != MODE_MAIN && dependency.mode != node.mode) {
+                            if (dependency.listed) {
+                                throw new StartupException(node + " (" + MODE_NAMES[node.mode] + ") cannot depend on " + dependency + " (" + MODE_NAMES[dependency.mode] + ")");
+                            }
+                            dependency.mode = dependency.mode < 0 ? node.mode : MODE_MAIN;
+                            changed = true;
+                        }
+                    }
+                }
+            }
+        } while (changed);
+    }
+
+    private void run(Node node) {
+        long start = System.nanoTime();
+        Tracing.beginSection(node.toString());
+        try {
+            if (node.mode == MODE_BACKGROUND) {
+                node.initializer.create(this.context);
+            } else {
+                AppInitializer.getInstance(this.context).initializeComponent((Class) node.component);
+            }
+        } finally {
+            Tracing.endSection();
+        }
+        long end = System.nanoTime();
+        Log.i(TAG, String.format("Startup: %s (%s) on %s at %.1f ms took %.1f ms", new Object[]{node, MODE_NAMES[node.mode], Thread.currentThread().getName(), Double.valueOf(((double) (start - this.startNanos)) / 1000000.0d), Double.valueOf(((double) (end - start)) / 1000000.0d)}));
+    }
+
+    private void runInBackground(Node node) {
+        try {
+            run(node);
+            finished(node);
+        } catch (Throwable t) {
+            // Fail the app as a main-thread initializer would, instead of losing it in the pool.
+            this.main.post(() -> {
+                throw new StartupException(node + " failed", t);
+            });
+        }
+    }
+
+    private void finished(Node node) {
+        List<Node> ready = new ArrayList<>();
+        synchronized (this) {
+            for (Node dependent : node.dependents) {
+                int i = dependent.pending - 1;
+                dependent.pending = i;
+                if (i == 0) {
+                    ready.add(dependent);
+                }
+            }
+            if (node.mode == MODE_BACKGROUND) {
+                int i2 = this.backgroundLeft - 1;
+                this.backgroundLeft = i2;
+                if (i2 == 0) {
+                    this.pool.shutdown();
+                }
+            }
+        }
+        for (Node dependent2 : ready) {
+            this.pool.execute(() -> runInBackground(dependent2));
+        }
+    }
+
+    private void runAfterFirstFrame(List<Node> deferred) {
+        Application application = (Application) this.context;
+        application.registerActivityLifecycleCallbacks(new Application.ActivityLifecycleCallbacks() {
+            public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+            }
+
+            public void onActivityStarted(Activity activity) {
+            }
+
+            public void onActivityResumed(Activity activity) {
+                application.unregisterActivityLifecycleCallbacks(this);
+                // A post from onResume runs after the traversal that draws the first frame.
+                activity.getWindow().getDecorView().post(() -> {
+                    for (Node node : deferred) {
+                        StartupGraph.this.main.post(() -> StartupGraph.this.run(node));
+                    }
+                });
+            }
+
+            public void onActivityPaused(Activity activity) {
+            }
+
+            public void onActivityStopped(Activity activity) {
+            }
+
+            public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+            }
+
+            public void onActivityDestroyed(Activity activity) {
+            }
+        });
+    }
+
+    private static final class Node {
+        final Class<?> component;
+        final List<Node> dependencies = new ArrayList();
+        final List<Node> dependents = new ArrayList();
+        final Initializer<?> initializer;
+        boolean listed;
+        int mode = -1;
+        int pending;
+
+        Node(Class<?> component2, Initializer<?> initializer2) {
+            this.component = component2;
+            this.initializer = initializer2;
+        }
+
+        public String toString() {
+            return this.component.getSimpleName();
+        }
+    }
+}
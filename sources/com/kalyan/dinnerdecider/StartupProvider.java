@@ -0,0 +1,66 @@
+package com.kalyan.dinnerdecider;
+
+import android.content.ComponentName;
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import androidx.startup.Initializer;
+import androidx.startup.StartupException;
+
+/**
+ * Takes the place of {@code androidx.startup.InitializationProvider}. Its meta-data lists
+ * initializers by class name with a {@link StartupGraph} mode as the value, and
+ * {@link #onCreate} hands them to the graph.
+ */
+public final class StartupProvider extends ContentProvider {
+    public boolean onCreate() {
+        Context context = getContext();
+        if (context != null) {
+            AppTrace.install();
+            StartupGraph graph = new StartupGraph(context);
+            try {
+                Bundle metadata = context.getPackageManager().getProviderInfo(new ComponentName(context, StartupProvider.class), PackageManager.GET_META_DATA).metaData;
+                if (metadata != null) {
+                    for (String key : metadata.keySet()) {
+                        int mode = StartupGraph.mode(metadata.getString(key, (String) null));
+                        if (mode >= 0) {
+                            Class<?> clazz = Class.forName(key);
+                            if (Initializer.class.isAssignableFrom(clazz)) {
+                                graph.add(clazz, mode);
+                            }
+                        }
+                    }
+                }
+            } catch (PackageManager.NameNotFoundException | ClassNotFoundException exception) {
+                throw new StartupException((Throwable) exception);
+            }
+            graph.start();
+            return true;
+        }
+        throw new StartupException("Context cannot be null");
+    }
+
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        throw new IllegalStateException("Not allowed.");
+    }
+
+    public String getType(Uri uri) {
+        throw new IllegalStateException("Not allowed.");
+    }
+
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new IllegalStateException("Not allowed.");
+    }
+
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new IllegalStateException("Not allowed.");
+    }
+
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new IllegalStateException("Not allowed.");
+    }
+}
@@ -0,0 +1,291 @@
+package com.kalyan.dinnerdecider.engine;
+
+import java.util.Arrays;
+
+/**
+ * Walker/Vose alias table over per-item weights, split into buckets of {@value #BUCKET_SIZE}
+ * consecutive items. Each bucket has its own alias table and a small top-level table picks a
+ * bucket in proportion to its total weight, so a draw costs two random doubles and two table
+ * lookups regardless of the number of items; a table that fits in one bucket skips the top
+ * level and draws exactly as a flat table would.
+ *
+ * <p>Appends, weight changes and removals only mark the touched buckets dirty. The next draw
+ * rebuilds those buckets and the top level, so an edit followed by a draw costs
+ * O({@value #BUCKET_SIZE} + n / {@value #BUCKET_SIZE}) rather than O(n), a burst of edits is
+ * still paid for once, and draws never allocate.
+ */
+public final class AliasTable {
+    private static final int BUCKET_SHIFT = 10;
+    private static final int BUCKET_SIZE = 1 << BUCKET_SHIFT;
+    private static final int MIN_CAPACITY = 16;
+    private int[] alias;
+    private boolean[] bucketDirty;
+    private double[] bucketMax;
+    private double[] bucketTotal;
+    private boolean dirty;
+    private int dirtyCount;
+    private int[] dirtyList;
+    private double maxWeight;
+    private double[] prob;
+    private int size;
+    private int[] topAlias;
+    private double[] topProb;
+    private int[] topWork;
+    private double totalWeight;
+    private double[] weights;
+    private int[] work;
+
+    public AliasTable() {
+        this(MIN_CAPACITY);
+    }
+
+    public AliasTable(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, MIN_CAPACITY);
+        this.weights = new double[capacity];
+        this.prob = new double[capacity];
+        this.alias = new int[capacity];
+        this.work = new int[Math.min(capacity, BUCKET_SIZE)];
+        allocateBuckets(bucketsFor(capacity));
+    }
+
+    public static AliasTable uniform(int count) {
+        AliasTable table = new AliasTable(count);
+        for (int i = 0; i < count; i++) {
+            table.add(1.0d);
+        }
+        return table;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public double getTotalWeight() {
+        return this.totalWeight;
+    }
+
+    /** An upper bound on every weight, exact after the next rebuild; for rejection sampling. */
+    public double getMaxWeight() {
+        return this.maxWeight;
+    }
+
+    public double getWeight(int index) {
+        checkIndex(index);
+        return this.weights[index];
+    }
+
+    public int add(double weight) {
+        checkWeight(weight);
+        if (this.size == this.weights.length) {
+            grow();
+        }
+        int index = this.size;
+        this.weights[index] = weight;
+        this.size = index + 1;
+        this.totalWeight += weight;
+        this.maxWeight = Math.max(this.maxWeight, weight);
+        markDirty(index);
+        return index;
+    }
+
+    public void setWeight(int index, double weight) {
+        checkIndex(index);
+        checkWeight(weight);
+        this.totalWeight += weight - this.weights[index];
+        this.weights[index] = weight;
+        this.maxWeight = Math.max(this.maxWeight, weight);
+        markDirty(index);
+    }
+
+    /** Removes {@code index} by moving the last weight into its place, like {@link FoodCatalog#removeSwap}. */
+    public void removeSwap(int index) {
+        checkIndex(index);
+        int last = this.size - 1;
+        this.totalWeight -= this.weights[index];
+        this.weights[index] = this.weights[last];
+        this.size = last;
+        markDirty(index);
+        markDirty(last);
+    }
+
+    public int sample(DecisionRandom random) {
+        int n = this.size;
+        if (n == 0) {
+            throw new IllegalStateException("Cannot sample from an empty table.");
+        }
+        int buckets = bucketsFor(n);
+        if (this.dirty) {
+            rebuild(buckets);
+        }
+        int bucket = 0;
+        if (buckets > 1) {
+            double u = random.nextDouble() * ((double) buckets);
+            int column = (int) u;
+            if (column >= buckets) {
+                column = buckets - 1;
+            }
+            bucket = u - ((double) column) < this.topProb[column] ? column : this.topAlias[column];
+        }
+        int start = bucket << BUCKET_SHIFT;
+        int width = Math.min(n - start, BUCKET_SIZE);
+        double u2 = random.nextDouble() * ((double) width);
+        int column2 = (int) u2;
+        if (column2 >= width) {
+            column2 = width - 1;
+        }
+        int i = start + column2;
+        return u2 - ((double) column2) < this.prob[i] ? i : this.alias[i];
+    }
+
+    private void markDirty(int index) {
+        int bucket = index >>> BUCKET_SHIFT;
+        if (!this.bucketDirty[bucket]) {
+            this.bucketDirty[bucket] = true;
+            this.dirtyList[this.dirtyCount] = bucket;
+            this.dirtyCount++;
+        }
+        this.dirty = true;
+    }
+
+    private void rebuild(int buckets) {
+        for (int i = 0; i < this.dirtyCount; i++) {
+            int bucket = this.dirtyList[i];
+            this.bucketDirty[bucket] = false;
+            if (bucket < buckets) {
+                rebuildBucket(bucket);
+            }
+        }
+        this.dirtyCount = 0;
+        double total = 0.0d;
+        double max = 0.0d;
+        for (int b = 0; b < buckets; b++) {
+            total += this.bucketTotal[b];
+            max = Math.max(max, this.bucketMax[b]);
+        }
+        this.maxWeight = max;
+        if (total <= 0.0d) {
+            throw new IllegalStateException("At least one item must have a positive weight.");
+        }
+        this.totalWeight = total;
+        if (buckets > 1) {
+            build(this.bucketTotal, 0, buckets, total, this.topProb, this.topAlias, this.topWork);
+        }
+        this.dirty = false;
+    }
+
+    private void rebuildBucket(int bucket) {
+        int start = bucket << BUCKET_SHIFT;
+        int end = Math.min(this.size, start + BUCKET_SIZE);
+        double total = 0.0d;
+        double max = 0.0d;
+        for (int i = start; i < end; i++) {
+            total += this.weights[i];
+            max = Math.max(max, this.weights[i]);
+        }
+        this.bucketTotal[bucket] = total;
+        this.bucketMax[bucket] = max;
+        if (total > 0.0d) {
+            build(this.weights, start, end, total, this.prob, this.alias, this.work);
+            return;
+        }
+        for (int i2 = start; i2 < end; i2++) {
+            this.prob[i2] = 1.0d;
+            this.alias[i2] = i2;
+        }
+    }
+
+    /** Vose's method over {@code w[from, to)}, writing absolute indices into {@code a}. */
+    private static void build(double[] w, int from, int to, double total, double[] p, int[] a, int[] stack) {
+        int n = to - from;
+        int small = 0;
+        int large = n;
+        double scale = ((double) n) / total;
+        for (int i = from; i < to; i++) {
+            p[i] = w[i] * scale;
+            if (p[i] < 1.0d) {
+                stack[small] = i;
+                small++;
+            } else {
+                large--;
+                stack[large] = i;
+            }
+        }
+        while (small > 0 && large < n) {
+            small--;
+            int less = stack[small];
+            int more = stack[large];
+            large++;
+            a[less] = more;
+            p[more] = (p[more] + p[less]) - 1.0d;
+            if (p[more] < 1.0d) {
+                stack[small] = more;
+                small++;
+            } else {
+                large--;
+                stack[large] = more;
+            }
+        }
+        while (large < n) {
+            int i2 = stack[large];
+            p[i2] = 1.0d;
+            a[i2] = i2;
+            large++;
+        }
+        while (small > 0) {
+            small--;
+            int i3 = stack[small];
+            p[i3] = 1.0d;
+            a[i3] = i3;
+        }
+    }
+
+    private void grow() {
+        int capacity = this.weights.length << 1;
+        if (capacity >= 0) {
+            this.weights = Arrays.copyOf(this.weights, capacity);
+            this.prob = Arrays.copyOf(this.prob, capacity);
+            this.alias = Arrays.copyOf(this.alias, capacity);
+            if (this.work.length < BUCKET_SIZE) {
+                this.work = new int[Math.min(capacity, BUCKET_SIZE)];
+            }
+            int buckets = bucketsFor(capacity);
+            if (buckets > this.bucketTotal.length) {
+                this.bucketTotal = Arrays.copyOf(this.bucketTotal, buckets);
+                this.bucketMax = Arrays.copyOf(this.bucketMax, buckets);
+                this.bucketDirty = Arrays.copyOf(this.bucketDirty, buckets);
+                this.dirtyList = Arrays.copyOf(this.dirtyList, buckets);
+                this.topProb = new double[buckets];
+                this.topAlias = new int[buckets];
+                this.topWork = new int[buckets];
+            }
+            return;
+        }
+        throw new IllegalStateException("Max table capacity exceeded");
+    }
+
+    private void allocateBuckets(int buckets) {
+        this.bucketTotal = new double[buckets];
+        this.bucketMax = new double[buckets];
+        this.bucketDirty = new boolean[buckets];
+        this.dirtyList = new int[buckets];
+        this.topProb = new double[buckets];
+        this.topAlias = new int[buckets];
+        this.topWork = new int[buckets];
+    }
+
+    private static int bucketsFor(int count) {
+        return (int) ((((long) count) + BUCKET_SIZE - 1) >>> BUCKET_SHIFT);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= this.size) {
+            throw new IndexOutOfBoundsException("index=" + index + ", size=" + this.size);
+        }
+    }
+
+    private static void checkWeight(double weight) {
+        if (!(weight >= 0.0d) || Double.isInfinite(weight)) {
+            throw new IllegalArgumentException("Weight must be finite and non-negative: " + weight);
+        }
+    }
+}
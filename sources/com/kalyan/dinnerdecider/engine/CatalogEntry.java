@@ -0,0 +1,53 @@
+package com.kalyan.dinnerdecider.engine;
+
+/**
+ * One food as kept in the engine's {@link PersistentVector} of catalog versions. Entries
+ * are immutable; an edit replaces the entry, so versions can be compared by identity.
+ *
+ * <p>This gives up part of the single-arena layout of {@link FoodCatalog}: every food
+ * costs an entry, a display {@link String} and its backing array, about 70 bytes of
+ * headers, fields and references on top of its characters, where the arena cost two
+ * ints. The arena still holds the normalized keys of {@link NameIndex} and
+ * {@link NearDuplicates}. Display names moved out of it because a version must stay
+ * readable after later edits: undo restores
+ * old versions, and readers on other threads hold a {@link CatalogVersion} while the owner
+ * keeps editing. An arena that is appended to and compacted in place cannot be shared
+ * that way without being copied per version, and copying it would cost O(n) per edit
+ * instead of the vector's O(log n).
+ */
+public final class CatalogEntry {
+    private final String name;
+    private final String tags;
+    private final double weight;
+
+    public CatalogEntry(String name2, double weight2, String tags2) {
+        this.name = name2;
+        this.weight = weight2;
+        this.tags = tags2;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public double getWeight() {
+        return this.weight;
+    }
+
+    /** The inline tag spec (see {@link TagIndex}), or an empty string. */
+    public String getTags() {
+        return this.tags;
+    }
+
+    public CatalogEntry withTags(String tags2) {
+        return new CatalogEntry(this.name, this.weight, tags2);
+    }
+
+    public CatalogEntry withWeight(double weight2) {
+        return new CatalogEntry(this.name, weight2, this.tags);
+    }
+
+    public String toString() {
+        return this.tags.length() > 0 ? this.name + " " + this.tags : this.name;
+    }
+}
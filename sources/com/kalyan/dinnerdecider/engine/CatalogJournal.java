@@ -0,0 +1,885 @@
+package com.kalyan.dinnerdecider.engine;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Crash-safe persistent food catalog. Edits are appended to a binary journal by a single
+ * writer thread which batches everything queued since its last write into one fsync, so
+ * callers never block on disk. Once the journal outgrows the last snapshot it is folded
+ * into a new snapshot and restarted under the next generation number.
+ *
+ * <p>Journal: header {@code magic, version, generation}, then records framed as
+ * {@code length, body, crc32(body)}. A torn or corrupt tail is truncated on replay.
+ * Replay keeps names in the order the engine numbers them: an add appends, a removal
+ * moves the last name into the freed position and a rename keeps its position, so the
+ * n-th replayed name is food id n again.
+ *
+ * <p>The journal keeps no copy of the catalog between batches: the engine owns the names.
+ * A batch that delivers a load, and a compaction, replay the files into a transient
+ * catalog that is dropped once the batch is done.
+ *
+ * <p>Snapshot: a {@link FlatCatalog} holding the generation and every food in id order,
+ * which readers can map and use in place. Stream snapshots from before it, header
+ * {@code magic, version, generation, count} then the entries, are still read. A journal
+ * whose generation is older than the snapshot's has already been folded in and is
+ * ignored.
+ *
+ * <p>If the catalog cannot be opened or a batch cannot be written, nothing is delivered
+ * and nothing is counted as synced: the batch's edits and load requests are kept and
+ * retried with the next batch, each attempt replaying from scratch, and {@link #sync}
+ * throws instead of returning.
+ *
+ * <p>Edits still waiting for their fsync can be taken out as a delta of record bodies,
+ * {@code count} then {@code op, name, weight or tags} each, for callers that need to
+ * carry them across a process death the journal itself may not survive.
+ */
+public final class CatalogJournal {
+    private static final long COMPACT_MIN_BYTES = 262144;
+    private static final int JOURNAL_HEADER_BYTES = 16;
+    private static final int JOURNAL_MAGIC = 0x44444A31;
+    private static final String JOURNAL_NAME = "catalog.journal";
+    private static final int MAX_RECORD_BYTES = 131075;
+    static final byte OP_ADD = 1;
+    static final byte OP_REMOVE = 2;
+    static final byte OP_WEIGHT = 3;
+    static final byte OP_TAGS = 4;
+    static final byte OP_RENAME = 5;
+    private static final int SNAPSHOT_END_MAGIC = 0x44445345;
+    private static final int SNAPSHOT_MAGIC = 0x44445331;
+    private static final String SNAPSHOT_NAME = "catalog.snap";
+    private static final int SNAPSHOT_VERSION = 3;
+    private static final int VERSION = 1;
+    private static final Map<String, CatalogJournal> instances = new LinkedHashMap<>();
+    private final ExposedOutput batch = new ExposedOutput(4096);
+    private final ExposedOutput body = new ExposedOutput(256);
+    private final DataOutputStream bodyOut = new DataOutputStream(this.body);
+    private boolean closed;
+    private final CRC32 crc = new CRC32();
+    private final List<String> defaults;
+    private final File dir;
+    private volatile ErrorListener errorListener;
+    private long enqueued;
+    private IOException failure;
+    private long failedUpTo;
+    private long generation;
+    private FileChannel journal;
+    private long committed;
+    private int openCount;
+    private boolean opened;
+    private final ArrayList<Object> pending = new ArrayList<>();
+    private Replay replayed;
+    private final ArrayList<Object> retry = new ArrayList<>();
+    private long snapshotBytes;
+    private int snapshotVersion;
+    private boolean stopped;
+    private final ArrayDeque<Record> unsynced = new ArrayDeque<>();
+    private final Thread writer;
+
+    public interface Callback {
+        void onLoaded(List<String> names, double[] weights, String[] tags);
+    }
+
+    /** Receives the edits of a delta from {@link #readEdits}; {@code text} holds the tags of a tag record or the new name of a rename. */
+    public interface EditVisitor {
+        void onEdit(byte op, String name, double weight, String text);
+    }
+
+    /** Receives the snapshot written by {@link #checkpoint}, or null if it could not be written. */
+    public interface CheckpointCallback {
+        void onCheckpoint(File snapshot);
+    }
+
+    /** Receives I/O failures from the writer thread; {@code error} is null for recoverable damage. */
+    public interface ErrorListener {
+        void onError(String message, Throwable error);
+    }
+
+    private static final class Entry {
+        int count;
+        int position;
+        String tags = "";
+        double weight;
+
+        Entry(double weight2) {
+            this.weight = weight2;
+        }
+    }
+
+    /** The catalog replayed from the files, kept only for the batch that needed it. */
+    private static final class Replay {
+        final HashMap<String, Entry> entries = new HashMap<>();
+        final ArrayList<String> order = new ArrayList<>();
+
+        void apply(byte op, String name, double weight, String tags) {
+            Entry entry = this.entries.get(name);
+            if (op == OP_ADD) {
+                if (entry == null) {
+                    entry = new Entry(weight);
+                    entry.position = this.order.size();
+                    this.entries.put(name, entry);
+                    this.order.add(name);
+                }
+                entry.count++;
+                entry.weight = weight;
+            } else if (entry == null) {
+                return;
+            } else if (op == OP_REMOVE) {
+                int i = entry.count - 1;
+                entry.count = i;
+                if (i == 0) {
+                    this.entries.remove(name);
+                    String moved = this.order.remove(this.order.size() - 1);
+                    if (entry.position < this.order.size()) {
+                        this.order.set(entry.position, moved);
+                        this.entries.get(moved).position = entry.position;
+                    }
+                }
+            } else if (op == OP_WEIGHT) {
+                entry.weight = weight;
+            } else if (op == OP_TAGS) {
+                entry.tags = tags;
+            } else if (op == OP_RENAME && !this.entries.containsKey(tags)) {
+                this.entries.remove(name);
+                this.entries.put(tags, entry);
+                this.order.set(entry.position, tags);
+            }
+        }
+    }
+
+    private static final class Record {
+        final String name;
+        final byte op;
+        final String tags;
+        final double weight;
+
+        Record(byte op2, String name2, double weight2, String tags2) {
+            this.op = op2;
+            this.name = name2;
+            this.weight = weight2;
+            this.tags = tags2;
+        }
+    }
+
+    private static final class ExposedOutput extends ByteArrayOutputStream {
+        ExposedOutput(int size) {
+            super(size);
+        }
+
+        byte[] array() {
+            return this.buf;
+        }
+    }
+
+    private CatalogJournal(File dir2, List<String> defaults2) {
+        this.dir = dir2;
+        this.defaults = defaults2;
+        Thread writer2 = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    CatalogJournal.this.writerLoop();
+                } finally {
+                    CatalogJournal.this.release();
+                }
+            }
+        }, "catalog-journal");
+        this.writer = writer2;
+        writer2.setDaemon(true);
+        writer2.start();
+    }
+
+    /**
+     * Returns the journal for {@code dir}, starting its writer thread on first use. When
+     * the directory holds no catalog yet, it is seeded with {@code defaults}. Every call
+     * must be paired with a {@link #close}; a journal whose last owner closed it is
+     * waited for, so two writers never share a directory.
+     */
+    public static CatalogJournal open(File dir2, List<String> defaults2) {
+        CatalogJournal journal2;
+        String key = dir2.getAbsolutePath();
+        boolean interrupted = false;
+        synchronized (instances) {
+            while (true) {
+                journal2 = instances.get(key);
+                if (journal2 == null || journal2.openCount > 0) {
+                    break;
+                }
+                try {
+                    instances.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (journal2 == null) {
+                journal2 = new CatalogJournal(dir2, new ArrayList<>(defaults2));
+                instances.put(key, journal2);
+            }
+            journal2.openCount++;
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return journal2;
+    }
+
+    /**
+     * Releases this owner's hold on the journal. Once the last owner has closed it, the
+     * writer thread writes what is still queued, closes the journal file and exits, and
+     * the directory can be opened again. Appending after that throws; does not block.
+     */
+    public void close() {
+        synchronized (instances) {
+            if (this.openCount == 0) {
+                return;
+            }
+            this.openCount--;
+            if (this.openCount > 0) {
+                return;
+            }
+        }
+        synchronized (this) {
+            this.closed = true;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Blocks until the writer thread has exited after the last {@link #close}, for callers
+     * that delete the directory next.
+     */
+    public void awaitClosed() throws InterruptedException {
+        this.writer.join();
+    }
+
+    /** The snapshot file of the journal in {@code dir}, which may not exist yet. */
+    public static File snapshotFile(File dir2) {
+        return new File(dir2, SNAPSHOT_NAME);
+    }
+
+    public void setErrorListener(ErrorListener listener) {
+        this.errorListener = listener;
+    }
+
+    /** Delivers the replayed catalog to {@code callback} on the writer thread. */
+    public void load(Callback callback) {
+        enqueue(callback);
+    }
+
+    public void appendAdd(String name, double weight) {
+        enqueue(new Record(OP_ADD, name, weight, null));
+    }
+
+    public void appendRemove(String name) {
+        enqueue(new Record(OP_REMOVE, name, 0.0d, null));
+    }
+
+    public void appendWeight(String name, double weight) {
+        enqueue(new Record(OP_WEIGHT, name, weight, null));
+    }
+
+    /** Renames {@code name} to {@code newName} in place, keeping its weight, tags and position. */
+    public void appendRename(String name, String newName) {
+        enqueue(new Record(OP_RENAME, name, 0.0d, newName));
+    }
+
+    /** Replaces the tag and attribute spec of {@code name}, as parsed by {@link TagIndex}. */
+    public void appendTags(String name, String tags) {
+        enqueue(new Record(OP_TAGS, name, 0.0d, tags));
+    }
+
+    /**
+     * Folds every edit appended before this call into the snapshot and hands the snapshot
+     * file to {@code callback} on the writer thread, for readers that page through it with
+     * {@link FlatCatalog#map}. Compacts only if the journal holds edits since the last one.
+     */
+    public void checkpoint(CheckpointCallback callback) {
+        enqueue(callback);
+    }
+
+    /**
+     * Blocks until every edit appended before this call is on disk, or throws if the
+     * attempt to write them failed. Failed edits stay queued for the next batch.
+     */
+    public void sync() throws InterruptedException, IOException {
+        synchronized (this) {
+            long target = this.enqueued;
+            while (this.committed < target) {
+                if (this.failure != null && this.failedUpTo >= target) {
+                    throw new IOException("Catalog journal is not writable", this.failure);
+                }
+                if (this.stopped) {
+                    throw new IOException("Catalog journal is closed");
+                }
+                wait();
+            }
+        }
+    }
+
+    /**
+     * Encodes the edits appended but not yet on disk, oldest first, or returns null if
+     * they take more than {@code maxBytes}.
+     */
+    public byte[] unsyncedEdits(int maxBytes) {
+        ExposedOutput bodies = new ExposedOutput(256);
+        ExposedOutput one = new ExposedOutput(256);
+        DataOutputStream oneOut = new DataOutputStream(one);
+        int count = 0;
+        synchronized (this) {
+            for (Record record : this.unsynced) {
+                one.reset();
+                if (encode(oneOut, record)) {
+                    bodies.write(one.array(), 0, one.size());
+                    count++;
+                    if (bodies.size() + 4 > maxBytes) {
+                        return null;
+                    }
+                }
+            }
+        }
+        ByteBuffer out = ByteBuffer.allocate(bodies.size() + 4);
+        out.putInt(count).put(bodies.array(), 0, bodies.size());
+        return out.array();
+    }
+
+    /** Decodes a delta written by {@link #unsyncedEdits}. */
+    public static void readEdits(byte[] edits, EditVisitor visitor) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(edits));
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            Record record = readBody(in);
+            visitor.onEdit(record.op, record.name, record.weight, record.tags);
+        }
+    }
+
+    private void enqueue(Object item) {
+        synchronized (this) {
+            if (this.closed) {
+                throw new IllegalStateException("Catalog journal is closed");
+            }
+            this.pending.add(item);
+            if (item instanceof Record) {
+                this.enqueued++;
+                this.unsynced.add((Record) item);
+            }
+            notifyAll();
+        }
+    }
+
+    /* access modifiers changed from: private */
+    public void writerLoop() {
+        ArrayList<Object> work = new ArrayList<>();
+        while (true) {
+            long batchEnd;
+            synchronized (this) {
+                while (this.pending.isEmpty() && !this.closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (this.pending.isEmpty()) {
+                    break;
+                }
+                work.addAll(this.retry);
+                work.addAll(this.pending);
+                this.retry.clear();
+                this.pending.clear();
+                batchEnd = this.enqueued;
+            }
+            IOException error = null;
+            try {
+                if (!this.opened || (this.replayed == null && hasLoad(work))) {
+                    Tracing.beginSection("CatalogJournal.openAndReplay");
+                    try {
+                        openAndReplay();
+                    } finally {
+                        Tracing.endSection();
+                    }
+                }
+                commit(work);
+            } catch (IOException e2) {
+                error = e2;
+            } catch (RuntimeException e4) {
+                // Whatever went wrong, the writer must outlive it; the batch is retried like a failed write.
+                error = new IOException("Unexpected catalog journal failure", e4);
+            }
+            if (error != null) {
+                report(this.opened ? "Failed to write catalog journal" : "Failed to open catalog journal; edits are kept until it opens", error);
+            }
+            synchronized (this) {
+                if (error == null) {
+                    for (long i = this.committed; i < batchEnd; i++) {
+                        this.unsynced.poll();
+                    }
+                    this.committed = batchEnd;
+                    this.failure = null;
+                } else {
+                    // Keep what was not written, and any load that would see a partial catalog.
+                    for (Object item : work) {
+                        if (item instanceof Record || (item instanceof Callback && !this.opened)) {
+                            this.retry.add(item);
+                        }
+                    }
+                    this.failure = error;
+                    this.failedUpTo = batchEnd;
+                }
+                notifyAll();
+            }
+            for (Object item : work) {
+                if (error != null && (item instanceof Record || (item instanceof Callback && !this.opened))) {
+                    continue;
+                }
+                if (item instanceof Callback) {
+                    deliver((Callback) item);
+                } else if (item instanceof CheckpointCallback) {
+                    ((CheckpointCallback) item).onCheckpoint(checkpoint());
+                }
+            }
+            work.clear();
+            if (this.opened && shouldCompact()) {
+                try {
+                    compact();
+                } catch (IOException e3) {
+                    report("Failed to compact catalog journal", e3);
+                }
+            }
+            this.replayed = null;
+        }
+    }
+
+    /* access modifiers changed from: private */
+    public void release() {
+        if (!this.retry.isEmpty()) {
+            report("Catalog journal closed with edits that could not be written", this.failure);
+        }
+        resetState();
+        this.opened = false;
+        synchronized (this) {
+            // Also reached if the writer died, so later appends fail instead of queuing forever.
+            this.closed = true;
+            this.stopped = true;
+            notifyAll();
+        }
+        synchronized (instances) {
+            String key = this.dir.getAbsolutePath();
+            if (instances.get(key) == this) {
+                instances.remove(key);
+            }
+            instances.notifyAll();
+        }
+    }
+
+    private static boolean hasLoad(List<Object> work) {
+        for (Object item : work) {
+            if (item instanceof Callback) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void commit(List<Object> work) throws IOException {
+        this.batch.reset();
+        DataOutputStream out = new DataOutputStream(this.batch);
+        ArrayList<Record> written = new ArrayList<>();
+        for (Object item : work) {
+            if (item instanceof Record) {
+                Record record = (Record) item;
+                this.body.reset();
+                // Each record is encoded on its own, so one that cannot be costs only itself.
+                if (!encode(this.bodyOut, record)) {
+                    continue;
+                }
+                written.add(record);
+                this.crc.reset();
+                this.crc.update(this.body.array(), 0, this.body.size());
+                out.writeInt(this.body.size());
+                out.write(this.body.array(), 0, this.body.size());
+                out.writeInt((int) this.crc.getValue());
+            }
+        }
+        if (this.batch.size() > 0) {
+            Tracing.beginSection("CatalogJournal.write");
+            long start = this.journal.position();
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(this.batch.array(), 0, this.batch.size());
+                while (buffer.hasRemaining()) {
+                    this.journal.write(buffer);
+                }
+                this.journal.force(false);
+            } catch (IOException e) {
+                // Drop the partial batch, so the retry appends right after the last good record.
+                try {
+                    this.journal.truncate(start);
+                    this.journal.position(start);
+                } catch (IOException e2) {
+                    this.opened = false;
+                }
+                throw e;
+            } finally {
+                Tracing.endSection();
+            }
+            Tracing.setCounter("journal bytes", this.journal.size());
+        }
+        // Only now is the batch durable, so a failed batch never reaches the replayed catalog twice.
+        Replay replay = this.replayed;
+        if (replay != null) {
+            for (Record record2 : written) {
+                replay.apply(record2.op, record2.name, record2.weight, record2.tags);
+            }
+        }
+    }
+
+    private void deliver(Callback callback) {
+        Replay replay = this.replayed;
+        int size = 0;
+        for (Entry entry : replay.entries.values()) {
+            size += entry.count;
+        }
+        ArrayList<String> names = new ArrayList<>(size);
+        double[] weights = new double[size];
+        String[] tags = new String[size];
+        for (String name : replay.order) {
+            Entry entry2 = replay.entries.get(name);
+            for (int i = 0; i < entry2.count; i++) {
+                weights[names.size()] = entry2.weight;
+                tags[names.size()] = entry2.tags;
+                names.add(name);
+            }
+        }
+        callback.onLoaded(names, weights, tags);
+    }
+
+    /**
+     * Opens the journal, or reopens it, replaying the snapshot and the journal into
+     * {@link #replayed}. On failure nothing is kept and the files are left as they were,
+     * for the next attempt.
+     */
+    private void openAndReplay() throws IOException {
+        this.opened = false;
+        if (this.dir.isDirectory() || this.dir.mkdirs()) {
+            File snapshot = new File(this.dir, SNAPSHOT_NAME);
+            File journalFile = new File(this.dir, JOURNAL_NAME);
+            boolean fresh = !snapshot.exists() && !journalFile.exists();
+            resetState();
+            Replay replay = new Replay();
+            try {
+                if (snapshot.exists()) {
+                    readSnapshot(snapshot, replay);
+                }
+                RandomAccessFile raf = new RandomAccessFile(journalFile, "rw");
+                this.journal = raf.getChannel();
+                long end = replayJournal(journalFile, replay);
+                if (end < 0) {
+                    writeJournalHeader(this.journal, this.generation);
+                } else {
+                    this.journal.truncate(end);
+                    this.journal.position(end);
+                }
+                this.replayed = replay;
+                if (fresh) {
+                    ArrayList<Object> seed = new ArrayList<>();
+                    for (String name : this.defaults) {
+                        seed.add(new Record(OP_ADD, name, 1.0d, null));
+                    }
+                    commit(seed);
+                }
+                this.opened = true;
+            } catch (IOException e) {
+                resetState();
+                if (fresh) {
+                    // Let the next attempt seed the catalog again.
+                    journalFile.delete();
+                }
+                throw e;
+            }
+            return;
+        }
+        throw new IOException("Cannot create catalog directory " + this.dir);
+    }
+
+    private void resetState() {
+        this.replayed = null;
+        this.generation = 0;
+        this.snapshotBytes = 0;
+        this.snapshotVersion = 0;
+        FileChannel channel = this.journal;
+        if (channel != null) {
+            this.journal = null;
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing was written through it that is not already on disk.
+            }
+        }
+    }
+
+    private void readSnapshot(File file, Replay replay) throws IOException {
+        long length = file.length();
+        FlatCatalog flat = null;
+        try {
+            flat = FlatCatalog.map(file);
+        } catch (IOException e) {
+            // Not a FlatBuffer: an older snapshot, read below.
+        }
+        if (flat != null) {
+            this.generation = flat.generation();
+            int count = flat.size();
+            try {
+                for (int i = 0; i < count; i++) {
+                    String name = flat.name(i);
+                    replay.apply(OP_ADD, name, flat.weight(i), null);
+                    replay.apply(OP_TAGS, name, 0.0d, flat.tags(i));
+                }
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                throw new IOException("Corrupt snapshot " + file, e);
+            }
+            this.snapshotBytes = length;
+            this.snapshotVersion = SNAPSHOT_VERSION;
+            return;
+        }
+        readLegacySnapshot(file, length, replay);
+    }
+
+    /** Reads the stream snapshots of versions 1 and 2, which the next compaction replaces. */
+    private void readLegacySnapshot(File file, long length, Replay replay) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            if (length < 32) {
+                report("Ignoring truncated snapshot " + file, (Throwable) null);
+                return;
+            }
+            raf.seek(length - 4);
+            if (raf.readInt() != SNAPSHOT_END_MAGIC) {
+                report("Ignoring incomplete snapshot " + file, (Throwable) null);
+                return;
+            }
+            raf.close();
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536));
+            try {
+                int version = in.readInt() == SNAPSHOT_MAGIC ? in.readInt() : -1;
+                if (version == 1 || version == 2) {
+                    this.generation = in.readLong();
+                    int count = in.readInt();
+                    for (int i = 0; i < count; i++) {
+                        String name = in.readUTF();
+                        replay.apply(OP_ADD, name, in.readDouble(), null);
+                        if (version == 2) {
+                            replay.apply(OP_TAGS, name, 0.0d, in.readUTF());
+                        }
+                    }
+                    this.snapshotBytes = length;
+                    this.snapshotVersion = version;
+                    return;
+                }
+                report("Ignoring snapshot with unknown header " + file, (Throwable) null);
+            } finally {
+                in.close();
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    /** Replays the journal into {@code replay} and returns the end of its last intact record, or -1 if it must be restarted. */
+    private long replayJournal(File file, Replay replay) throws IOException {
+        if (file.length() < ((long) JOURNAL_HEADER_BYTES)) {
+            return -1;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536));
+        try {
+            if (in.readInt() != JOURNAL_MAGIC || in.readInt() != VERSION || in.readLong() != this.generation) {
+                return -1;
+            }
+            long position = JOURNAL_HEADER_BYTES;
+            byte[] buffer = new byte[256];
+            while (true) {
+                try {
+                    int length = in.readInt();
+                    if (length <= 0 || length > MAX_RECORD_BYTES) {
+                        return position;
+                    }
+                    if (buffer.length < length) {
+                        buffer = new byte[Math.max(length, buffer.length << 1)];
+                    }
+                    in.readFully(buffer, 0, length);
+                    int expected = in.readInt();
+                    this.crc.reset();
+                    this.crc.update(buffer, 0, length);
+                    if (((int) this.crc.getValue()) != expected) {
+                        return position;
+                    }
+                    Record record = readBody(new DataInputStream(new ByteArrayInputStream(buffer, 0, length)));
+                    replay.apply(record.op, record.name, record.weight, record.tags);
+                    position += (long) (length + 8);
+                } catch (EOFException e) {
+                    return position;
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private boolean shouldCompact() {
+        try {
+            long size = this.journal.size();
+            return size > COMPACT_MIN_BYTES && size > this.snapshotBytes;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+    private File checkpoint() {
+        if (!this.opened) {
+            return null;
+        }
+        try {
+            if (this.snapshotVersion != SNAPSHOT_VERSION || this.journal.size() > ((long) JOURNAL_HEADER_BYTES)) {
+                compact();
+            }
+            return new File(this.dir, SNAPSHOT_NAME);
+        } catch (IOException e) {
+            report("Failed to checkpoint catalog journal", e);
+            return null;
+        }
+    }
+
+    /** Writes the committed catalog as the next snapshot, replaying the files first unless this batch already did. */
+    private void compact() throws IOException {
+        Tracing.beginSection("CatalogJournal.compact");
+        try {
+            if (this.replayed == null) {
+                openAndReplay();
+            }
+            writeSnapshot(this.replayed);
+        } catch (RuntimeException e) {
+            throw new IOException("Unexpected failure while compacting", e);
+        } finally {
+            Tracing.endSection();
+        }
+    }
+
+    private void writeSnapshot(Replay replay) throws IOException {
+        long next = this.generation + 1;
+        File tmp = new File(this.dir, SNAPSHOT_NAME + ".tmp");
+        FlatCatalog.Builder builder = new FlatCatalog.Builder(new File(this.dir, SNAPSHOT_NAME + ".scratch"));
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            for (String name : replay.order) {
+                Entry entry = replay.entries.get(name);
+                for (int i = 0; i < entry.count; i++) {
+                    builder.add(name, entry.weight, entry.tags);
+                }
+            }
+            builder.writeTo(out.getChannel(), next);
+            out.getFD().sync();
+        } finally {
+            out.close();
+            builder.close();
+        }
+        if (tmp.renameTo(new File(this.dir, SNAPSHOT_NAME))) {
+            // The rename must be durable before the journal restarts under the new generation,
+            // or a power loss could bring back the old snapshot next to an emptied journal.
+            syncDirectory(this.dir);
+            this.snapshotBytes = new File(this.dir, SNAPSHOT_NAME).length();
+            this.snapshotVersion = SNAPSHOT_VERSION;
+            this.generation = next;
+            this.journal.truncate(0);
+            this.journal.position(0);
+            writeJournalHeader(this.journal, next);
+            return;
+        }
+        throw new IOException("Cannot publish snapshot " + tmp);
+    }
+
+    /** Hands a failure to the listener; with none set it is dropped, as nothing here prints. */
+    private void report(String message, Throwable error) {
+        ErrorListener listener = this.errorListener;
+        if (listener != null) {
+            listener.onError(message, error);
+        }
+    }
+
+    /**
+     * Writes the body of {@code record}, or reports it and returns false if a string in it
+     * is too long for {@code writeUTF}. The engine caps names and specs well below that.
+     */
+    private boolean encode(DataOutputStream out, Record record) {
+        try {
+            writeBody(out, record);
+            return true;
+        } catch (IOException e) {
+            report("Dropping an edit too long to journal: " + record.name.substring(0, Math.min(record.name.length(), 40)), e);
+            return false;
+        }
+    }
+
+    private static void writeBody(DataOutputStream out, Record record) throws IOException {
+        out.writeByte(record.op);
+        out.writeUTF(record.name);
+        if (record.op == OP_TAGS || record.op == OP_RENAME) {
+            out.writeUTF(record.tags);
+        } else if (record.op != OP_REMOVE) {
+            out.writeDouble(record.weight);
+        }
+    }
+
+    private static Record readBody(DataInputStream in) throws IOException {
+        byte op = in.readByte();
+        String name = in.readUTF();
+        if (op == OP_TAGS || op == OP_RENAME) {
+            return new Record(op, name, 0.0d, in.readUTF());
+        }
+        return new Record(op, name, op != OP_REMOVE ? in.readDouble() : 0.0d, null);
+    }
+
+    /**
+     * Flushes {@code dir}'s entries, such as a rename into it, to disk. Android before
+     * API 26 has no way to open a directory from Java; there the rename is left to the
+     * file system's own ordering of replace-by-rename.
+     */
+    private static void syncDirectory(File dir2) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(dir2.toPath(), StandardOpenOption.READ);
+        } catch (LinkageError e) {
+            return;
+        }
+        try {
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static void writeJournalHeader(FileChannel channel, long generation2) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(JOURNAL_HEADER_BYTES);
+        header.putInt(JOURNAL_MAGIC).putInt(VERSION).putLong(generation2).flip();
+        channel.truncate(0);
+        channel.position(0);
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        channel.force(true);
+    }
+}
@@ -0,0 +1,92 @@
+package com.kalyan.dinnerdecider.engine;
+
+/**
+ * One published state of the catalog: its entries and the version number they were
+ * published under, neither of which ever changes. {@link DecisionEngine} swaps the
+ * current version through a single atomic reference, so any thread can read a
+ * consistent catalog without taking a lock, and an edit group such as an import becomes
+ * visible all at once when it closes.
+ */
+public final class CatalogVersion {
+    static final CatalogVersion EMPTY = new CatalogVersion(0, PersistentVector.empty());
+    private volatile double[] cumulative;
+    private final PersistentVector<CatalogEntry> entries;
+    private final int version;
+
+    CatalogVersion(int version2, PersistentVector<CatalogEntry> entries2) {
+        this.version = version2;
+        this.entries = entries2;
+    }
+
+    public int getVersion() {
+        return this.version;
+    }
+
+    public PersistentVector<CatalogEntry> getEntries() {
+        return this.entries;
+    }
+
+    public int size() {
+        return this.entries.size();
+    }
+
+    /** The sum of all weights. */
+    public double totalWeight() {
+        double[] sums = sums();
+        if (sums.length == 0) {
+            return 0.0d;
+        }
+        return sums[sums.length - 1];
+    }
+
+    /** The sum of the weights of rows {@code 0} to {@code row - 1}. */
+    public double weightBefore(int row) {
+        if (row == 0) {
+            return 0.0d;
+        }
+        return sums()[row - 1];
+    }
+
+    /**
+     * Picks a row with probability proportional to its weight, given {@code u} uniform in
+     * [0, 1), or returns -1 if the catalog is empty or weighs nothing.
+     */
+    public int sample(double u) {
+        double[] sums = sums();
+        int n = sums.length;
+        if (n == 0 || sums[n - 1] <= 0.0d) {
+            return -1;
+        }
+        double target = sums[n - 1] * u;
+        int low = 0;
+        int high = n - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sums[mid] > target) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Running weight totals, built on first use. Threads racing to build them compute the
+     * same array, so whichever copy wins is fine.
+     */
+    private double[] sums() {
+        double[] sums = this.cumulative;
+        if (sums == null) {
+            int size = this.entries.size();
+            sums = new double[size];
+            double sum = 0.0d;
+            for (int i = 0; i < size; i++) {
+                sum += this.entries.get(i).getWeight();
+                sums[i] = sum;
+            }
+            this.cumulative = sums;
+        }
+        return sums;
+    }
+}
@@ -0,0 +1,1029 @@
+package com.kalyan.dinnerdecider.engine;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Headless decision engine: the catalog, its name index, the samplers and their
+ * persistence behind one small API that touches no Android APIs. Besides the JDK it needs
+ * the Kotlin stdlib, for {@link DecisionRandom}, and the pure-Java FlatBuffers runtime
+ * that androidx.emoji2 bundles, for {@link FlatCatalog}. It is not thread-safe;
+ * every call except {@link #load} belongs on a single owner thread, which on Android is
+ * the main thread. Disk work happens on the journal's writer thread and on a private
+ * I/O executor. Display names are held once, by the persistent vector of entries that
+ * versions publish, at the per-food cost {@link CatalogEntry} describes; the per-id
+ * structures hold weights, tags and normalized keys.
+ */
+public final class DecisionEngine {
+    public static final int BLANK = -1;
+    private static final String CATALOG_DIR = "catalog";
+    private static final String DECISION_STATE_NAME = "decision.state";
+    private static final int DELTA_MAGIC = 0x44444431;
+    private static final int DUPLICATE_BASE = -2;
+    private static final int DUPLICATE_SCAN_BUDGET = 1 << 21;
+    private static final String EXPORT_SCRATCH_NAME = "export.scratch";
+    private static final int HISTORY_CAPACITY = 64;
+    private static final double HISTORY_HALF_LIFE = 5.0d;
+    private static final int MAX_DELTA_BYTES = 32768;
+    private static final int MAX_REJECTIONS = 64;
+    private static final int UNDO_CAPACITY = 32;
+    private ShuffleBag bag = new ShuffleBag(0);
+    private final File dir;
+    private PersistentVector<CatalogEntry> editBase;
+    private int editDepth;
+    private String editLabel;
+    private PersistentVector<CatalogEntry> entries = PersistentVector.empty();
+    private volatile CatalogJournal.ErrorListener errorListener;
+    private final EventLog eventLog;
+    private TagIndex.Filter filter;
+    private final NearDuplicates fuzzy = new NearDuplicates();
+    private int fuzzyVersion = -1;
+    private final DecisionHistory history = new DecisionHistory(HISTORY_CAPACITY, HISTORY_HALF_LIFE);
+    private final ExecutorService io = Executors.newSingleThreadExecutor();
+    private final CatalogJournal journal;
+    private boolean loaded;
+    private final NameIndex nameIndex = new NameIndex();
+    private boolean noRepeats;
+    private byte[] pendingDelta;
+    private final AtomicReference<CatalogVersion> published = new AtomicReference<>(CatalogVersion.EMPTY);
+    private final DecisionRandom random;
+    private final DecisionStats stats = new DecisionStats();
+    private int version;
+    private final TagIndex tags = new TagIndex();
+    private final UndoHistory undo = new UndoHistory(UNDO_CAPACITY);
+    private final AliasTable weights = new AliasTable();
+
+    public DecisionEngine(File dir2, List<String> defaults, DecisionRandom random2, EventLog eventLog2) {
+        this.dir = dir2;
+        this.random = random2;
+        this.eventLog = eventLog2;
+        this.journal = CatalogJournal.open(new File(dir2, CATALOG_DIR), defaults);
+        this.journal.setErrorListener(this::reportError);
+    }
+
+    /** Receives the report of an {@link #auditSampler} run. */
+    public interface AuditCallback {
+        void onAudit(String report);
+    }
+
+    /** Receives the outcome of {@link #exportCatalog}: the number of foods written, or the failure. */
+    public interface ExportCallback {
+        void onExported(int count, IOException error);
+    }
+
+    /** Receives the mapped snapshot from {@link #openSnapshot}, or null if it could not be written or read. */
+    public interface SnapshotCallback {
+        void onSnapshot(FlatCatalog snapshot);
+    }
+
+    /** Receives groups of near-duplicate display names found by {@link #findDuplicates}. */
+    public interface DuplicatesCallback {
+        void onDuplicates(List<String[]> groups);
+    }
+
+    public static boolean isDuplicate(int result) {
+        return result <= DUPLICATE_BASE;
+    }
+
+    /** Decodes the id of the existing food from a duplicate {@link #add} result. */
+    public static int existingId(int result) {
+        return DUPLICATE_BASE - result;
+    }
+
+    /**
+     * The snapshot an engine over {@code dir} keeps, for readers in the same app that map
+     * it with {@link FlatCatalog#map} instead of loading an engine. It holds the catalog
+     * as of the last compaction or {@link #checkpoint}.
+     */
+    public static File snapshotFile(File dir2) {
+        return CatalogJournal.snapshotFile(new File(dir2, CATALOG_DIR));
+    }
+
+    /** Journal failures always go to the event log; {@code listener} additionally sees them on the writer thread. */
+    public void setErrorListener(CatalogJournal.ErrorListener listener) {
+        this.errorListener = listener;
+    }
+
+    private void reportError(String message, Throwable error) {
+        this.eventLog.error(message, error);
+        CatalogJournal.ErrorListener listener = this.errorListener;
+        if (listener != null) {
+            listener.onError(message, error);
+        }
+    }
+
+    /**
+     * Replays the catalog and decision state off the owner thread, then applies them and
+     * runs {@code onReady} through {@code ownerExecutor}.
+     */
+    public void load(Executor ownerExecutor, Runnable onReady) {
+        File stateFile = new File(this.dir, DECISION_STATE_NAME);
+        int cookie = Tracing.newCookie();
+        Tracing.beginAsyncSection("DecisionEngine.load", cookie);
+        this.journal.load((names, weights2, tags2) -> {
+            byte[] state = readFile(stateFile);
+            ownerExecutor.execute(() -> {
+                Tracing.beginSection("DecisionEngine.applyLoaded");
+                try {
+                    applyLoaded(names, weights2, tags2, state);
+                } finally {
+                    Tracing.endSection();
+                }
+                Tracing.endAsyncSection("DecisionEngine.load", cookie);
+                Tracing.setCounter("foods", (long) this.entries.size());
+                onReady.run();
+            });
+        });
+    }
+
+    public boolean isLoaded() {
+        return this.loaded;
+    }
+
+    /**
+     * Encodes the catalog edits the journal has not made durable yet, for a saved-state
+     * bundle: a tag, the catalog version and the edits, independent of the catalog's size.
+     * Returns null when there are more than {@link #MAX_DELTA_BYTES} of them, which only
+     * happens while the writer is flushing a bulk import that the journal will hold anyway.
+     */
+    public byte[] saveDelta() {
+        byte[] edits = this.journal.unsyncedEdits(MAX_DELTA_BYTES);
+        if (edits == null) {
+            return null;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(edits.length + 8);
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(DELTA_MAGIC);
+            out.writeInt(this.version);
+            out.write(edits);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Reapplies a delta from {@link #saveDelta} once the catalog is loaded. Each edit is
+     * applied only if the loaded catalog does not already reflect it, so edits that did
+     * reach the journal before the process died are not doubled.
+     */
+    public void restoreDelta(byte[] delta) {
+        if (this.loaded) {
+            applyDelta(delta);
+        } else {
+            this.pendingDelta = delta;
+        }
+    }
+
+    public int size() {
+        return this.entries.size();
+    }
+
+    public String name(int id) {
+        return this.entries.get(id).getName();
+    }
+
+    /** Counts published changes to names and weights, so readers of snapshots can tell when theirs is stale. */
+    public int getVersion() {
+        return current().getVersion();
+    }
+
+    /**
+     * Returns the latest published catalog. Safe to call from any thread and never
+     * blocks: edits are applied to a working copy on the owner thread and published with
+     * one atomic store after each edit, or when the outermost {@link #endEdit} closes a
+     * group, so readers never see part of an import.
+     */
+    public CatalogVersion current() {
+        return this.published.get();
+    }
+
+    /** The entries of {@link #current}, in O(1). */
+    public PersistentVector<CatalogEntry> snapshot() {
+        return current().getEntries();
+    }
+
+    /** Hands {@code suggester} a snapshot and the decision counts if it is behind either. */
+    public void refresh(Suggester suggester) {
+        CatalogVersion current = current();
+        long decisions = this.stats.total();
+        if (this.loaded && (suggester.getVersion() != current.getVersion() || suggester.getDecisions() != decisions)) {
+            int distinct = this.stats.distinct();
+            int[] decided = new int[distinct];
+            long[] counts = new long[distinct];
+            this.stats.copyCounts(decided, counts);
+            // Outside an edit group the name index holds the published foods' keys under the same ids.
+            FoodCatalog keys = (suggester.getVersion() < 0 && current.getEntries() == this.entries) ? this.nameIndex.copyKeys() : null;
+            suggester.update(current.getEntries(), current.getVersion(), keys, decided, counts, decisions);
+        }
+    }
+
+    public TagIndex getTags() {
+        return this.tags;
+    }
+
+    /** Returns the active filter expression, or null when decisions range over everything. */
+    public String getFilter() {
+        TagIndex.Filter filter2 = this.filter;
+        if (filter2 != null) {
+            return filter2.getExpression();
+        }
+        return null;
+    }
+
+    /**
+     * Restricts {@link #decide} to foods matching {@code expression}; null or blank clears
+     * it. Throws {@link IllegalArgumentException} if the expression does not parse.
+     */
+    public void setFilter(String expression) {
+        this.filter = (expression == null || expression.trim().length() == 0) ? null : TagIndex.compile(expression.trim());
+    }
+
+    /** Returns how many foods the active filter admits. */
+    public int matchCount() {
+        TagIndex.Filter filter2 = this.filter;
+        return filter2 != null ? filter2.count(this.tags) : this.entries.size();
+    }
+
+    public DecisionHistory getHistory() {
+        return this.history;
+    }
+
+    public DecisionStats getStats() {
+        return this.stats;
+    }
+
+    /**
+     * Appends a report on every decision made so far. Filters, no-repeats and the recency
+     * penalty all steer real decisions away from the raw weights, so its chi-square
+     * measures how far they do; {@link #auditSampler} tests the sampler itself.
+     */
+    public void dumpStats(StringBuilder out) {
+        this.stats.dump(this.entries, this.weights, 10, out);
+    }
+
+    /**
+     * Draws {@code draws} times from a snapshot's weights in the background, with a split
+     * of the engine's random source and none of the decision rules, and reports how well
+     * the counts fit the weights.
+     */
+    public void auditSampler(int draws, Executor ownerExecutor, AuditCallback callback) {
+        PersistentVector<CatalogEntry> entries2 = snapshot();
+        DecisionRandom random2 = this.random.split();
+        this.io.execute(() -> {
+            int size = entries2.size();
+            AliasTable table = new AliasTable(size);
+            for (int id = 0; id < size; id++) {
+                table.add(entries2.get(id).getWeight());
+            }
+            DecisionStats audit = new DecisionStats();
+            for (int i = 0; i < draws; i++) {
+                int id2 = table.sample(random2);
+                audit.record(id2, table.getWeight(id2));
+            }
+            StringBuilder out = new StringBuilder();
+            audit.dump(entries2, table, 10, out);
+            ownerExecutor.execute(() -> callback.onAudit(out.toString()));
+        });
+    }
+
+    public boolean isNoRepeats() {
+        return this.noRepeats;
+    }
+
+    public void setNoRepeats(boolean noRepeats2) {
+        this.noRepeats = noRepeats2;
+    }
+
+    /** Returns the id of the food listed under a variant of {@code rawName}, or -1. */
+    public int find(CharSequence rawName) {
+        String key = NameIndex.normalize(TagIndex.split(rawName)[0]);
+        if (key.length() == 0) {
+            return -1;
+        }
+        return this.nameIndex.find(key);
+    }
+
+    /**
+     * Adds a food typed by the user and journals it, along with any inline tags and
+     * attributes (see {@link TagIndex}). Returns its new id, {@link #BLANK} if the name is
+     * empty after cleaning, or a value for which {@link #isDuplicate} holds if a variant of
+     * it is already listed. Tags given for a listed food replace its current ones, and its
+     * id is returned instead. Either change can be undone.
+     */
+    public int add(CharSequence rawName, double weight) {
+        String[] parts = TagIndex.split(rawName);
+        String name = NameIndex.clean(parts[0]);
+        String spec = parts[1];
+        String key = NameIndex.normalize(name);
+        if (key.length() == 0) {
+            return BLANK;
+        }
+        int existing = this.nameIndex.find(key);
+        if (existing >= 0) {
+            if (spec.length() == 0) {
+                return DUPLICATE_BASE - existing;
+            }
+            PersistentVector<CatalogEntry> before = this.entries;
+            setTags(existing, spec);
+            commit("Tag " + name(existing), before);
+            return existing;
+        }
+        PersistentVector<CatalogEntry> before2 = this.entries;
+        int id = insert(name, key, weight);
+        this.journal.appendAdd(name, weight);
+        if (spec.length() > 0) {
+            setTags(id, spec);
+        }
+        commit("Add " + name, before2);
+        this.eventLog.log(EventLog.CATALOG_CHANGED, this.entries.size(), 1);
+        return id;
+    }
+
+    /**
+     * Removes food {@code id} and journals it. The last food takes over its id, so ids
+     * above it stay put. The removal can be undone.
+     */
+    public void remove(int id) {
+        PersistentVector<CatalogEntry> before = this.entries;
+        String name = name(id);
+        removeAt(id);
+        this.stats.rebase(this.weights);
+        commit("Remove " + name, before);
+        this.eventLog.log(EventLog.CATALOG_CHANGED, this.entries.size(), -1);
+    }
+
+    /**
+     * Returns listed names that look like typos or plurals of {@code rawName}, closest
+     * first. The lookup uses an index updated in the background after the catalog
+     * changes, so foods added in the last moments may be missed.
+     */
+    public String[] nearDuplicates(CharSequence rawName, int limit) {
+        refreshNearDuplicates();
+        return this.fuzzy.find(NameIndex.clean(TagIndex.split(rawName)[0]), limit);
+    }
+
+    private void refreshNearDuplicates() {
+        CatalogVersion current = current();
+        if (this.loaded && this.fuzzyVersion != current.getVersion()) {
+            this.fuzzyVersion = current.getVersion();
+            PersistentVector<CatalogEntry> entries2 = current.getEntries();
+            this.io.execute(() -> this.fuzzy.update(entries2));
+        }
+    }
+
+    /** Scans a snapshot of the whole catalog for near duplicates in the background. */
+    public void findDuplicates(Executor ownerExecutor, DuplicatesCallback callback) {
+        PersistentVector<CatalogEntry> entries2 = snapshot();
+        this.io.execute(() -> {
+            int[][] groups = NearDuplicates.scan(entries2, DUPLICATE_SCAN_BUDGET);
+            ArrayList<String[]> out = new ArrayList<>(groups.length);
+            for (int[] group : groups) {
+                String[] members = new String[group.length];
+                for (int i = 0; i < group.length; i++) {
+                    members[i] = entries2.get(group[i]).getName();
+                }
+                out.add(members);
+            }
+            ownerExecutor.execute(() -> callback.onDuplicates(out));
+        });
+    }
+
+    /**
+     * Maps the on-disk snapshot of the catalog as it stands now, for readers that want
+     * rows without holding them, such as a paged list. The journal folds its pending
+     * edits into the snapshot first; edits made afterwards need a new one.
+     */
+    public void openSnapshot(Executor ownerExecutor, SnapshotCallback callback) {
+        this.journal.checkpoint(file -> {
+            FlatCatalog snapshot = null;
+            if (file != null) {
+                try {
+                    snapshot = FlatCatalog.map(file);
+                } catch (IOException e) {
+                    snapshot = null;
+                }
+            }
+            FlatCatalog mapped = snapshot;
+            ownerExecutor.execute(() -> callback.onSnapshot(mapped));
+        });
+    }
+
+    /** Folds pending edits into the snapshot in the background, so {@link #snapshotFile} is current. */
+    public void checkpoint() {
+        this.journal.checkpoint(file -> {
+        });
+    }
+
+    /**
+     * Writes the catalog to {@code out} as a {@link FlatCatalog} in the background and
+     * closes it. The file can be imported again, or mapped and read in place.
+     */
+    public void exportCatalog(OutputStream out, Executor ownerExecutor, ExportCallback callback) {
+        PersistentVector<CatalogEntry> entries2 = snapshot();
+        File scratch = new File(this.dir, EXPORT_SCRATCH_NAME);
+        this.io.execute(() -> {
+            IOException failure = null;
+            Tracing.beginSection("DecisionEngine.exportCatalog");
+            FlatCatalog.Builder builder = null;
+            try {
+                builder = new FlatCatalog.Builder(scratch);
+                int size = entries2.size();
+                for (int i = 0; i < size; i++) {
+                    CatalogEntry entry = entries2.get(i);
+                    builder.add(entry.getName(), entry.getWeight(), entry.getTags());
+                }
+                builder.writeTo(Channels.newChannel(out), 0);
+                out.close();
+            } catch (IOException | RuntimeException e) {
+                failure = e instanceof IOException ? (IOException) e : new IOException("Export failed", e);
+                try {
+                    out.close();
+                } catch (IOException e2) {
+                    // Already failed; report the first error.
+                }
+            } finally {
+                if (builder != null) {
+                    builder.close();
+                }
+                Tracing.endSection();
+            }
+            IOException error = failure;
+            ownerExecutor.execute(() -> callback.onExported(entries2.size(), error));
+        });
+    }
+
+    private void setTags(int id, String spec) {
+        this.tags.set(id, spec);
+        this.journal.appendTags(name(id), spec);
+        this.entries = this.entries.set(id, this.entries.get(id).withTags(spec));
+    }
+
+    /**
+     * Groups the edits up to the matching {@link #endEdit} into one undoable step, such as
+     * an import. Nested calls join the outermost group.
+     */
+    public void beginEdit(String label) {
+        int i = this.editDepth;
+        this.editDepth = i + 1;
+        if (i == 0) {
+            this.editLabel = label;
+            this.editBase = this.entries;
+        }
+    }
+
+    public void endEdit() {
+        int i = this.editDepth - 1;
+        this.editDepth = i;
+        if (i == 0) {
+            PersistentVector<CatalogEntry> before = this.editBase;
+            this.editBase = null;
+            commit(this.editLabel, before);
+        }
+    }
+
+    /** The label of the edit {@link #undo} would revert, such as "Add Tacos", or null. */
+    public String getUndoLabel() {
+        return this.undo.undoLabel();
+    }
+
+    public String getRedoLabel() {
+        return this.undo.redoLabel();
+    }
+
+    /** Reverts the latest edit or edit group; returns false if there is none. */
+    public boolean undo() {
+        UndoHistory.Revision revision = this.editDepth == 0 ? this.undo.undo() : null;
+        if (revision == null) {
+            return false;
+        }
+        restore(revision.before);
+        return true;
+    }
+
+    /** Reapplies the latest undone edit; returns false if there is none. */
+    public boolean redo() {
+        UndoHistory.Revision revision = this.editDepth == 0 ? this.undo.redo() : null;
+        if (revision == null) {
+            return false;
+        }
+        restore(revision.after);
+        return true;
+    }
+
+    private void commit(String label, PersistentVector<CatalogEntry> before) {
+        if (this.editDepth == 0 && before != this.entries) {
+            this.undo.record(label, before, this.entries);
+        }
+        publish();
+    }
+
+    /** Publishes the working catalog to {@link #current} readers, unless an edit group is open. */
+    private void publish() {
+        if (this.editDepth == 0 && this.published.get().getEntries() != this.entries) {
+            this.published.set(new CatalogVersion(this.version, this.entries));
+        }
+    }
+
+    /**
+     * Brings the catalog and every per-id structure to the foods of {@code target},
+     * journaling each change. Slots that differ between the two versions are compared by
+     * name: foods only the current version lists are removed, foods only the target lists
+     * are added, and foods both list take the target's weight and tags wherever they now
+     * sit. Every change is a plain remove or add, which the journal replays in the same
+     * order, so a reload always matches memory; an in-place rename could collide with a
+     * name still listed elsewhere and be dropped on replay. Foods may end up in other
+     * slots than in {@code target}. The work follows the size of the diff, not the catalog.
+     */
+    private void restore(PersistentVector<CatalogEntry> target) {
+        PersistentVector<CatalogEntry> current = this.entries;
+        int before = current.size();
+        ArrayList<CatalogEntry> gone = new ArrayList<>();
+        LinkedHashMap<String, CatalogEntry> wanted = new LinkedHashMap<>();
+        PersistentVector.diff(current, target, (id, from, to) -> {
+            gone.add(from);
+            wanted.put(NameIndex.normalize(to.getName()), to);
+        });
+        for (int i = target.size(); i < current.size(); i++) {
+            gone.add(current.get(i));
+        }
+        for (int i2 = current.size(); i2 < target.size(); i2++) {
+            CatalogEntry entry = target.get(i2);
+            wanted.put(NameIndex.normalize(entry.getName()), entry);
+        }
+        for (CatalogEntry entry2 : gone) {
+            String key = NameIndex.normalize(entry2.getName());
+            if (!wanted.containsKey(key)) {
+                removeAt(this.nameIndex.find(key));
+            }
+        }
+        for (Map.Entry<String, CatalogEntry> item : wanted.entrySet()) {
+            CatalogEntry to2 = item.getValue();
+            int id2 = this.nameIndex.find(item.getKey());
+            if (id2 < 0) {
+                id2 = insert(to2.getName(), item.getKey(), to2.getWeight());
+                this.journal.appendAdd(to2.getName(), to2.getWeight());
+            }
+            CatalogEntry from2 = this.entries.get(id2);
+            if (from2.getWeight() != to2.getWeight()) {
+                this.weights.setWeight(id2, to2.getWeight());
+                this.journal.appendWeight(to2.getName(), to2.getWeight());
+            }
+            if (!from2.getTags().equals(to2.getTags())) {
+                this.tags.set(id2, to2.getTags());
+                this.journal.appendTags(to2.getName(), to2.getTags());
+            }
+            this.entries = this.entries.set(id2, to2);
+        }
+        this.stats.rebase(this.weights);
+        this.version++;
+        publish();
+        this.eventLog.log(EventLog.CATALOG_CHANGED, this.entries.size(), this.entries.size() - before);
+    }
+
+    /** Removes {@code id} from every per-id structure by moving the last food into it; callers rebase the stats. */
+    private void removeAt(int id) {
+        int last = this.entries.size() - 1;
+        String name = name(id);
+        this.nameIndex.removeSwap(id);
+        this.weights.removeSwap(id);
+        this.bag.removeSwap(id);
+        this.tags.removeSwap(id);
+        if (this.history.contains(id) || this.history.contains(last)) {
+            this.history.removeSwap(id, last);
+        }
+        this.stats.removeSwap(id, last);
+        this.journal.appendRemove(name);
+        PersistentVector<CatalogEntry> entries2 = this.entries;
+        if (id != last) {
+            entries2 = entries2.set(id, entries2.get(last));
+        }
+        this.entries = entries2.pop();
+        this.version++;
+    }
+
+    private void applyDelta(byte[] delta) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(delta));
+            if (in.readInt() == DELTA_MAGIC) {
+                in.readInt();
+                byte[] edits = new byte[in.available()];
+                in.readFully(edits);
+                CatalogJournal.readEdits(edits, this::replayEdit);
+                this.stats.rebase(this.weights);
+                publish();
+            }
+        } catch (IOException e) {
+            // A damaged delta only loses edits the journal is likely to hold anyway.
+        }
+    }
+
+    private void replayEdit(byte op, String name, double weight, String text) {
+        String key = NameIndex.normalize(name);
+        int id = this.nameIndex.find(key);
+        if (op == CatalogJournal.OP_ADD) {
+            if (id < 0 && key.length() > 0) {
+                insert(name, key, weight);
+                this.journal.appendAdd(name, weight);
+            }
+        } else if (id < 0) {
+            return;
+        } else if (op == CatalogJournal.OP_REMOVE) {
+            removeAt(id);
+        } else if (op == CatalogJournal.OP_RENAME) {
+            if (this.nameIndex.find(NameIndex.normalize(text)) < 0) {
+                renameAt(id, text);
+                this.entries = this.entries.set(id, new CatalogEntry(text, this.weights.getWeight(id), this.tags.spec(id)));
+            }
+        } else if (op == CatalogJournal.OP_WEIGHT) {
+            if (this.weights.getWeight(id) != weight) {
+                this.weights.setWeight(id, weight);
+                this.journal.appendWeight(name(id), weight);
+                this.entries = this.entries.set(id, this.entries.get(id).withWeight(weight));
+                this.version++;
+            }
+        } else if (op == CatalogJournal.OP_TAGS && !this.tags.spec(id).equals(text)) {
+            setTags(id, text);
+        }
+    }
+
+    /** Gives slot {@code id} another food's name in place; the new food starts its history afresh. */
+    private void renameAt(int id, String name) {
+        this.journal.appendRename(name(id), name);
+        this.nameIndex.rename(id, NameIndex.normalize(name));
+        if (this.history.contains(id)) {
+            this.history.removeSwap(id, id);
+        }
+        this.stats.removeSwap(id, id);
+        this.version++;
+    }
+
+    /**
+     * Adds an already cleaned and normalized food with its tag spec, which may be empty,
+     * without publishing a change event, for bulk loads that publish once via
+     * {@link #publishChange} and undo as one step inside {@link #beginEdit}. A spec longer
+     * than {@link TagIndex#MAX_SPEC_LENGTH} is clipped. Returns the new id or -1 for a
+     * duplicate.
+     */
+    public int addNormalized(String name, String key, double weight, String spec) {
+        if (this.nameIndex.find(key) >= 0) {
+            return -1;
+        }
+        PersistentVector<CatalogEntry> before = this.entries;
+        int id = insert(name, key, weight);
+        this.journal.appendAdd(name, weight);
+        String spec2 = TagIndex.clip(spec);
+        if (spec2.length() > 0) {
+            setTags(id, spec2);
+        }
+        commit("Add " + name, before);
+        return id;
+    }
+
+    public void publishChange(int delta) {
+        this.eventLog.log(EventLog.CATALOG_CHANGED, this.entries.size(), delta);
+    }
+
+    /**
+     * Picks a food id with the current mode. The catalog must not be empty. Under a filter
+     * the pick is weighted among the matches and no-repeats does not apply; returns
+     * {@link #BLANK} if nothing matches. Outside no-repeats mode, recent picks are made
+     * less likely by {@link DecisionHistory#acceptance}.
+     */
+    public int decide() {
+        int id;
+        boolean shuffled = false;
+        Tracing.beginSection("DecisionEngine.decide");
+        try {
+            TagIndex.Filter filter2 = this.filter;
+            if (this.editDepth > 0) {
+                id = decidePublished(filter2);
+                if (id < 0) {
+                    return BLANK;
+                }
+            } else if (filter2 != null) {
+                id = decideAmong(filter2, filter2.count(this.tags));
+                if (id < 0) {
+                    return BLANK;
+                }
+            } else if (this.noRepeats) {
+                id = this.bag.draw(this.random);
+                shuffled = true;
+            } else {
+                id = sampleAvoidingRecent();
+            }
+            this.history.record(id);
+            if (shuffled) {
+                this.stats.recordShuffled(id);
+            } else {
+                this.stats.record(id, this.weights.getWeight(id));
+            }
+            this.eventLog.log(EventLog.DECISION_MADE, id, this.entries.size());
+            return id;
+        } finally {
+            Tracing.endSection();
+        }
+    }
+
+    /**
+     * Decides while an edit group is open, among the foods of the last published version
+     * only, so an import in progress never shows up in a pick. Proposals come from the
+     * version's running totals and are mapped back to their current ids by name; the
+     * filter and the recency penalty thin them by rejection, and no-repeats waits for the
+     * group to close. After {@link #MAX_REJECTIONS} misses it makes one exact pass over
+     * the version. Returns -1 if no published food is eligible.
+     */
+    private int decidePublished(TagIndex.Filter filter2) {
+        CatalogVersion current = current();
+        for (int i = 0; i < MAX_REJECTIONS; i++) {
+            int row = current.sample(this.random.nextDouble());
+            if (row < 0) {
+                break;
+            }
+            int id = publishedId(current, row, filter2);
+            if (id >= 0 && this.random.nextDouble() < this.history.acceptance(id)) {
+                return id;
+            }
+        }
+        int size = current.size();
+        int[] ids = new int[size];
+        double total = 0.0d;
+        int eligible = 0;
+        for (int row2 = 0; row2 < size; row2++) {
+            int id2 = publishedId(current, row2, filter2);
+            ids[row2] = id2;
+            if (id2 >= 0) {
+                eligible++;
+                total += current.getEntries().get(row2).getWeight() * this.history.acceptance(id2);
+            }
+        }
+        if (eligible == 0) {
+            return -1;
+        }
+        if (total <= 0.0d) {
+            int rank = this.random.nextInt(eligible);
+            for (int id3 : ids) {
+                if (id3 >= 0) {
+                    if (rank == 0) {
+                        return id3;
+                    }
+                    rank--;
+                }
+            }
+        }
+        double target = this.random.nextDouble() * total;
+        int last = -1;
+        for (int row3 = 0; row3 < size; row3++) {
+            int id4 = ids[row3];
+            if (id4 >= 0) {
+                last = id4;
+                target -= current.getEntries().get(row3).getWeight() * this.history.acceptance(id4);
+                if (target < 0.0d) {
+                    return id4;
+                }
+            }
+        }
+        return last;
+    }
+
+    /** The current id of published row {@code row}, or -1 if it is gone or filtered out. */
+    private int publishedId(CatalogVersion version2, int row, TagIndex.Filter filter2) {
+        int id = this.nameIndex.find(NameIndex.normalize(version2.getEntries().get(row).getName()));
+        if (id < 0 || (filter2 != null && !filter2.contains(this.tags, id))) {
+            return -1;
+        }
+        return id;
+    }
+
+    /** Alias-table proposals thinned by the history, with the same exact fallback as {@link #decideAmong}. */
+    private int sampleAvoidingRecent() {
+        for (int i = 0; i < MAX_REJECTIONS; i++) {
+            int id = this.weights.sample(this.random);
+            if (this.random.nextDouble() < this.history.acceptance(id)) {
+                return id;
+            }
+        }
+        return pickExactly(null, this.entries.size());
+    }
+
+    /**
+     * Weighted pick among a filter's matches: a uniform rank/select proposal accepted with probability
+     * weight * acceptance / maxWeight. If the matches are much lighter than the heaviest
+     * food, or all recently picked, this can keep rejecting, so after
+     * {@link #MAX_REJECTIONS} tries it falls back to one exact pass over the matches.
+     */
+    private int decideAmong(TagIndex.Filter filter2, int count) {
+        if (count == 0) {
+            return -1;
+        }
+        double max = this.weights.getMaxWeight();
+        for (int i = 0; i < MAX_REJECTIONS; i++) {
+            int id = filter2.select(this.tags, this.random.nextInt(count));
+            if (this.random.nextDouble() * max < this.weights.getWeight(id) * this.history.acceptance(id)) {
+                return id;
+            }
+        }
+        return pickExactly(filter2, count);
+    }
+
+    /** One exact weighted pass over the matches of {@code filter2}, or over every food if it is null. */
+    private int pickExactly(TagIndex.Filter filter2, int count) {
+        double[] total = new double[1];
+        forEachMatch(filter2, id2 -> total[0] += this.weights.getWeight(id2) * this.history.acceptance(id2));
+        if (total[0] <= 0.0d) {
+            return selectMatch(filter2, this.random.nextInt(count));
+        }
+        double[] target = {this.random.nextDouble() * total[0]};
+        int[] picked = {-1};
+        forEachMatch(filter2, id3 -> {
+            if (picked[0] < 0) {
+                target[0] -= this.weights.getWeight(id3) * this.history.acceptance(id3);
+                if (target[0] < 0.0d) {
+                    picked[0] = id3;
+                }
+            }
+        });
+        return picked[0] >= 0 ? picked[0] : selectMatch(filter2, count - 1);
+    }
+
+    private void forEachMatch(TagIndex.Filter filter2, IdBitmap.IntVisitor visitor) {
+        if (filter2 != null) {
+            filter2.forEach(this.tags, visitor);
+            return;
+        }
+        int size = this.entries.size();
+        for (int id = 0; id < size; id++) {
+            visitor.visit(id);
+        }
+    }
+
+    private int selectMatch(TagIndex.Filter filter2, int rank) {
+        return filter2 != null ? filter2.select(this.tags, rank) : rank;
+    }
+
+    /** Persists the decision mode, shuffle bag, filter, history and stats in the background. */
+    public void saveDecisionState() {
+        if (this.loaded) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try {
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeBoolean(this.noRepeats);
+                this.bag.writeTo(out);
+                String filter2 = getFilter();
+                out.writeUTF(filter2 != null ? filter2 : "");
+                this.history.writeTo(out);
+                this.stats.writeTo(out);
+                out.flush();
+                byte[] state = bytes.toByteArray();
+                File target = new File(this.dir, DECISION_STATE_NAME);
+                this.io.execute(() -> writeFileAtomically(target, state));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /** Stops background work and releases the journal once what it has queued is written. */
+    public void close() {
+        this.io.shutdown();
+        this.journal.close();
+    }
+
+    /** Blocks until the work {@link #close} left running has finished, e.g. before deleting the directory. */
+    public void awaitClosed() throws InterruptedException {
+        this.io.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        this.journal.awaitClosed();
+    }
+
+    private int insert(String name, String key, double weight) {
+        int id = this.entries.size();
+        this.nameIndex.add(key);
+        this.weights.add(weight);
+        this.bag.add();
+        this.tags.add();
+        this.entries = this.entries.append(new CatalogEntry(name, weight, ""));
+        this.version++;
+        return id;
+    }
+
+    private void applyLoaded(List<String> names, double[] weights2, String[] tags2, byte[] state) {
+        int size = names.size();
+        for (int i = 0; i < size; i++) {
+            String name = NameIndex.clean(names.get(i));
+            String key = NameIndex.normalize(name);
+            if (key.length() > 0 && this.nameIndex.find(key) < 0) {
+                int id = insert(name, key, weights2[i]);
+                if (tags2[i].length() > 0) {
+                    this.tags.set(id, tags2[i]);
+                    this.entries = this.entries.set(id, this.entries.get(id).withTags(tags2[i]));
+                }
+            }
+        }
+        byte[] delta = this.pendingDelta;
+        if (delta != null) {
+            this.pendingDelta = null;
+            applyDelta(delta);
+        }
+        if (state != null) {
+            try {
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(state));
+                this.noRepeats = in.readBoolean();
+                this.bag = ShuffleBag.readFrom(in, this.entries.size());
+                if (in.available() > 0) {
+                    restoreFilter(in.readUTF());
+                }
+                if (in.available() > 0) {
+                    restoreHistory(in);
+                }
+                if (in.available() > 0) {
+                    restoreStats(in);
+                }
+            } catch (IOException e) {
+                this.bag = new ShuffleBag(this.entries.size());
+            }
+        }
+        publish();
+        this.loaded = true;
+        refreshNearDuplicates();
+        this.eventLog.log(EventLog.CATALOG_CHANGED, this.entries.size(), this.entries.size());
+    }
+
+    private void restoreFilter(String expression) {
+        try {
+            setFilter(expression);
+        } catch (IllegalArgumentException e) {
+            this.filter = null;
+        }
+    }
+
+    private void restoreHistory(DataInputStream in) {
+        try {
+            this.history.readFrom(in, this.entries.size());
+        } catch (IOException e) {
+            // An unreadable history only costs the recency penalties; start afresh.
+        }
+    }
+
+    private void restoreStats(DataInputStream in) {
+        try {
+            this.stats.readFrom(in, this.weights);
+        } catch (IOException e) {
+            // Counts are informational; losing them only restarts the statistics.
+        }
+    }
+
+    private static byte[] readFile(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new FileInputStream(file));
+            try {
+                byte[] bytes = new byte[((int) file.length())];
+                in.readFully(bytes);
+                return bytes;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void writeFileAtomically(File target, byte[] bytes) {
+        File tmp = new File(target.getPath() + ".tmp");
+        try {
+            FileOutputStream out = new FileOutputStream(tmp);
+            try {
+                out.write(bytes);
+                out.getFD().sync();
+                out.close();
+                tmp.renameTo(target);
+            } catch (IOException e) {
+                out.close();
+                throw e;
+            }
+        } catch (IOException e2) {
+            tmp.delete();
+        }
+    }
+}
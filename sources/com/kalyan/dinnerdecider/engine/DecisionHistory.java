@@ -0,0 +1,193 @@
+package com.kalyan.dinnerdecider.engine;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * The last {@code capacity} decisions, oldest first, with an exponentially decaying
+ * penalty per food. Each decision contributes {@code 0.5^(age / halfLife)} to its food's
+ * penalty, where age counts the decisions made since. Penalties are kept per food as a
+ * value and the clock it was last brought up to date at, so recording a decision touches
+ * only the new food and the one falling out of the window, and reading a penalty decays
+ * its stored value on the fly.
+ *
+ * <p>The sampler applies penalties by rejection ({@link #acceptance}) instead of writing
+ * them into the weights, so no decision rebuilds the alias table.
+ */
+public final class DecisionHistory {
+    private static final int MAGIC = 0x44444831;
+    /** ln 10: a food decided just now is kept one time in ten. */
+    private static final double STRENGTH = 2.302585092994046d;
+    private final int capacity;
+    private long clock;
+    private final double decay;
+    private final IntIntMap idToSlot = new IntIntMap(-1);
+    private final int[] freeSlots;
+    private int freeCount;
+    private final int[] occurrences;
+    private final double[] penalties;
+    /** The window as a circular buffer of {@code size} ids starting at {@code head}. */
+    private final int[] ring;
+    private int head;
+    private int size;
+    private final long[] stamps;
+
+    public DecisionHistory(int capacity2, double halfLife) {
+        if (capacity2 <= 0 || !(halfLife > 0.0d)) {
+            throw new IllegalArgumentException("capacity=" + capacity2 + ", halfLife=" + halfLife);
+        }
+        this.capacity = capacity2;
+        this.decay = Math.pow(0.5d, 1.0d / halfLife);
+        this.ring = new int[capacity2];
+        this.penalties = new double[capacity2];
+        this.stamps = new long[capacity2];
+        this.occurrences = new int[capacity2];
+        this.freeSlots = new int[capacity2];
+        for (int i = 0; i < capacity2; i++) {
+            this.freeSlots[i] = (capacity2 - 1) - i;
+        }
+        this.freeCount = capacity2;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /** Returns the id decided {@code back} decisions ago, 0 being the latest. */
+    public int recent(int back) {
+        return at((this.size - 1) - back);
+    }
+
+    public void record(int id) {
+        this.clock++;
+        if (this.size == this.capacity) {
+            int oldest = this.ring[this.head];
+            this.head = (this.head + 1) % this.capacity;
+            this.size--;
+            int slot = this.idToSlot.get(oldest);
+            int left = this.occurrences[slot] - 1;
+            this.occurrences[slot] = left;
+            if (left == 0) {
+                this.idToSlot.remove(oldest);
+                this.freeSlots[this.freeCount] = slot;
+                this.freeCount++;
+            } else {
+                this.penalties[slot] = Math.max(0.0d, current(slot) - Math.pow(this.decay, (double) this.capacity));
+                this.stamps[slot] = this.clock;
+            }
+        }
+        this.ring[(this.head + this.size) % this.capacity] = id;
+        this.size++;
+        int slot2 = this.idToSlot.get(id);
+        if (slot2 < 0) {
+            this.freeCount--;
+            slot2 = this.freeSlots[this.freeCount];
+            this.idToSlot.put(id, slot2);
+            this.penalties[slot2] = 0.0d;
+            this.occurrences[slot2] = 0;
+        } else {
+            this.penalties[slot2] = current(slot2);
+        }
+        this.penalties[slot2] = this.penalties[slot2] + 1.0d;
+        this.stamps[slot2] = this.clock;
+        this.occurrences[slot2] = this.occurrences[slot2] + 1;
+    }
+
+    /** Whether {@code id} was decided within the window. */
+    public boolean contains(int id) {
+        return this.idToSlot.get(id) >= 0;
+    }
+
+    /** The decayed sum of {@code id}'s decisions in the window; 1 for a food decided just now. */
+    public double penalty(int id) {
+        int slot = this.idToSlot.get(id);
+        if (slot < 0) {
+            return 0.0d;
+        }
+        return current(slot);
+    }
+
+    /**
+     * The probability with which a proposal of {@code id} should be kept,
+     * {@code exp(-ln(10) * penalty)}. Repeated picks compound rather than saturate, so
+     * the staler of two recent foods stays the likelier one.
+     */
+    public double acceptance(int id) {
+        int slot = this.idToSlot.get(id);
+        if (slot < 0) {
+            return 1.0d;
+        }
+        return Math.exp((-STRENGTH) * current(slot));
+    }
+
+    /** Mirrors {@link FoodCatalog#removeSwap(int)}: forgets {@code id} and renames {@code last} to it. */
+    public void removeSwap(int id, int last) {
+        int size2 = this.size;
+        int[] ids = new int[size2];
+        int kept = 0;
+        for (int i = 0; i < size2; i++) {
+            int entry = at(i);
+            if (entry != id) {
+                ids[kept] = entry == last ? id : entry;
+                kept++;
+            }
+        }
+        replay(ids, kept, this.clock);
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeLong(this.clock);
+        out.writeInt(this.size);
+        for (int i = 0; i < this.size; i++) {
+            out.writeInt(at(i));
+        }
+    }
+
+    /** Restores history written by {@link #writeTo}, dropping ids outside {@code [0, catalogSize)}. */
+    public void readFrom(DataInputStream in, int catalogSize) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a decision history");
+        }
+        long clock2 = in.readLong();
+        int size = in.readInt();
+        if (size < 0) {
+            throw new IOException("Bad history size " + size);
+        }
+        int[] ids = new int[Math.min(size, this.capacity)];
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            int id = in.readInt();
+            if (i >= size - ids.length && id >= 0 && id < catalogSize) {
+                ids[kept] = id;
+                kept++;
+            }
+        }
+        replay(ids, kept, clock2);
+    }
+
+    /** Rebuilds the ring and penalties from {@code ids}, oldest first, ending at {@code clock2}. */
+    private void replay(int[] ids, int count, long clock2) {
+        this.head = 0;
+        this.size = 0;
+        this.idToSlot.clear();
+        this.freeCount = this.capacity;
+        for (int i = 0; i < this.capacity; i++) {
+            this.freeSlots[i] = (this.capacity - 1) - i;
+        }
+        this.clock = clock2 - ((long) count);
+        for (int i2 = 0; i2 < count; i2++) {
+            record(ids[i2]);
+        }
+    }
+
+    /** The id {@code index} places after the oldest one in the window. */
+    private int at(int index) {
+        return this.ring[(this.head + index) % this.capacity];
+    }
+
+    private double current(int slot) {
+        return this.penalties[slot] * Math.pow(this.decay, (double) (this.clock - this.stamps[slot]));
+    }
+}
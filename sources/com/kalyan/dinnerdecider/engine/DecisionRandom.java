@@ -0,0 +1,150 @@
+package com.kalyan.dinnerdecider.engine;
+
+import kotlin.random.Random;
+import kotlin.random.RandomKt;
+
+/**
+ * Random source for decisions. Unlike {@link java.util.Random} it is unsynchronized and
+ * meant to be created once and reused, and every generator can be rebuilt from an
+ * explicit seed so draws are reproducible in simulations and tests. {@link #split()}
+ * derives an independent generator for another thread without sharing state.
+ */
+public abstract class DecisionRandom {
+    private static final long GOLDEN_GAMMA = -7046029254386353131L;
+
+    public abstract int nextInt();
+
+    /** Returns a generator whose sequence is independent of this one. */
+    public abstract DecisionRandom split();
+
+    /** Generator backed by the Kotlin stdlib's XorWow, seeded from {@code seed}. */
+    public static DecisionRandom seeded(long seed) {
+        return new XorWow(seed);
+    }
+
+    /**
+     * Splittable SplitMix64 generator, for fanning work out across threads. For the same
+     * seed every draw matches {@link java.util.SplittableRandom}'s.
+     */
+    public static DecisionRandom splittable(long seed) {
+        return new SplitMix(seed, GOLDEN_GAMMA);
+    }
+
+    public static DecisionRandom create() {
+        return seeded(mix64(System.nanoTime() ^ (((long) System.identityHashCode(new Object())) << 32)));
+    }
+
+    /** Returns a uniform int in {@code [0, bound)} without modulo bias. */
+    public int nextInt(int bound) {
+        if (bound > 0) {
+            long m = (((long) nextInt()) & 4294967295L) * ((long) bound);
+            if ((m & 4294967295L) < ((long) bound)) {
+                long threshold = (4294967296L - ((long) bound)) % ((long) bound);
+                while ((m & 4294967295L) < threshold) {
+                    m = (((long) nextInt()) & 4294967295L) * ((long) bound);
+                }
+            }
+            return (int) (m >>> 32);
+        }
+        throw new IllegalArgumentException("bound must be positive: " + bound);
+    }
+
+    public long nextLong() {
+        return (((long) nextInt()) << 32) + ((long) nextInt());
+    }
+
+    /** Returns a uniform double in {@code [0, 1)} with 53 random bits. */
+    public double nextDouble() {
+        return ((double) (nextLong() >>> 11)) * 1.1102230246251565E-16d;
+    }
+
+    /** Fills {@code out[offset, offset + count)} with uniform ints in {@code [0, bound)}. */
+    public void nextInts(int[] out, int offset, int count, int bound) {
+        int end = offset + count;
+        for (int i = offset; i < end; i++) {
+            out[i] = nextInt(bound);
+        }
+    }
+
+    static long mix64(long z) {
+        long z2 = (z ^ (z >>> 30)) * -4658895280553007687L;
+        long z3 = (z2 ^ (z2 >>> 27)) * -7723592293110705685L;
+        return z3 ^ (z3 >>> 31);
+    }
+
+    private static final class XorWow extends DecisionRandom {
+        private final Random delegate;
+
+        XorWow(long seed) {
+            this.delegate = RandomKt.Random(seed);
+        }
+
+        public int nextInt() {
+            return this.delegate.nextInt();
+        }
+
+        public DecisionRandom split() {
+            return new XorWow(mix64(nextLong()));
+        }
+    }
+
+    private static final class SplitMix extends DecisionRandom {
+        private final long gamma;
+        private long seed;
+
+        SplitMix(long seed2, long gamma2) {
+            this.seed = seed2;
+            this.gamma = gamma2;
+        }
+
+        public int nextInt() {
+            return mix32(nextSeed());
+        }
+
+        /** SplittableRandom's bounded draw: a mask for powers of two, otherwise rejection on the top 31 bits. */
+        public int nextInt(int bound) {
+            if (bound > 0) {
+                int r = nextInt();
+                int m = bound - 1;
+                if ((bound & m) == 0) {
+                    return r & m;
+                }
+                int u = r >>> 1;
+                while (true) {
+                    r = u % bound;
+                    if ((u + m) - r >= 0) {
+                        return r;
+                    }
+                    u = nextInt() >>> 1;
+                }
+            }
+            throw new IllegalArgumentException("bound must be positive: " + bound);
+        }
+
+        public long nextLong() {
+            return mix64(nextSeed());
+        }
+
+        private long nextSeed() {
+            long j = this.seed + this.gamma;
+            this.seed = j;
+            return j;
+        }
+
+        public DecisionRandom split() {
+            return new SplitMix(nextLong(), mixGamma(nextSeed()));
+        }
+
+        private static int mix32(long z) {
+            long z2 = (z ^ (z >>> 33)) * 7109453100751455733L;
+            return (int) (((z2 ^ (z2 >>> 28)) * -3808689974395783757L) >>> 32);
+        }
+
+        private static long mixGamma(long z) {
+            long z2 = (z ^ (z >>> 33)) * -49064778989728563L;
+            long z3 = (z2 ^ (z2 >>> 33)) * -4265267296055464877L;
+            long z4 = (z3 ^ (z3 >>> 33)) | 1;
+            return Long.bitCount((z4 >>> 1) ^ z4) < 24 ? z4 ^ -6148914691236517206L : z4;
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package com.kalyan.dinnerdecider.engine;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Per-food decision counts with a running chi-square statistic against the weights the
+ * draws were made with. Pearson's statistic over {@code N} draws is
+ * {@code W * sum(count^2 / weight) / N - N} for total weight {@code W}, so keeping only
+ * the sum up to date makes each {@link #record} O(1) however many foods there are. A
+ * histogram of counts in power-of-two buckets is kept the same way.
+ *
+ * <p>Draws from the no-repeats bag ignore the weights, so {@link #recordShuffled} keeps
+ * them out of the weighted statistic and tests them against a uniform pick instead. Foods
+ * of weight zero cannot be drawn by weight and are left out of the weighted statistic.
+ */
+public final class DecisionStats {
+    private static final int MAGIC = 0x44444332;
+    private static final int MAGIC_V1 = 0x44444331;
+    private final IntLongMap counts = new IntLongMap();
+    private final long[] histogram = new long[64];
+    private final IntLongMap shuffled = new IntLongMap();
+    private long shuffledTotal;
+    private double sumSquaresOverWeight;
+    private double sumSquaresShuffled;
+    private long total;
+    private long weightedTotal;
+
+    public long total() {
+        return this.total;
+    }
+
+    public long count(int id) {
+        return this.counts.get(id);
+    }
+
+    /** How many foods were decided at least once. */
+    public int distinct() {
+        return this.counts.size();
+    }
+
+    /** Copies each decided food and its count into arrays of {@link #distinct()} items. */
+    public void copyCounts(int[] outIds, long[] outCounts) {
+        this.counts.copyTo(outIds, outCounts);
+    }
+
+    /** How many of the decisions came from the no-repeats bag. */
+    public long shuffledTotal() {
+        return this.shuffledTotal;
+    }
+
+    /** Counts a decision for {@code id}, drawn with the given weight. */
+    public void record(int id, double weight) {
+        long count = tally(this.counts.increment(id, 1));
+        if (weight > 0.0d) {
+            long weighted = count - this.shuffled.get(id);
+            this.sumSquaresOverWeight += ((double) ((2 * weighted) - 1)) / weight;
+            this.weightedTotal++;
+        }
+    }
+
+    /** Counts a decision for {@code id} drawn from the no-repeats bag, where every food is equally likely. */
+    public void recordShuffled(int id) {
+        tally(this.counts.increment(id, 1));
+        long count = this.shuffled.increment(id, 1);
+        this.shuffledTotal++;
+        this.sumSquaresShuffled += (double) ((2 * count) - 1);
+    }
+
+    /** Moves a food whose count just reached {@code count} into its histogram bucket. */
+    private long tally(long count) {
+        this.total++;
+        int bucket = bucket(count);
+        int previous = bucket(count - 1);
+        if (bucket != previous) {
+            if (previous > 0) {
+                this.histogram[previous]--;
+            }
+            this.histogram[bucket]++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns how many foods were decided between {@code 2^(bucket-1)} and
+     * {@code 2^bucket - 1} times; bucket 0 is left to the caller, who knows the catalog size.
+     */
+    public long histogram(int bucket) {
+        return this.histogram[bucket];
+    }
+
+    /**
+     * Pearson's chi-square of the weighted decisions against {@code totalWeight}, or NaN
+     * before the first one.
+     */
+    public double chiSquare(double totalWeight) {
+        if (this.weightedTotal == 0) {
+            return Double.NaN;
+        }
+        double n = (double) this.weightedTotal;
+        return ((totalWeight * this.sumSquaresOverWeight) / n) - n;
+    }
+
+    /**
+     * Pearson's chi-square of the no-repeats decisions against a uniform pick among
+     * {@code foods}, or NaN before the first one. A bag never repeats within a round, so
+     * it fits better than independent draws would and the statistic runs low.
+     */
+    public double shuffledChiSquare(int foods) {
+        if (this.shuffledTotal == 0) {
+            return Double.NaN;
+        }
+        double n = (double) this.shuffledTotal;
+        return ((((double) foods) * this.sumSquaresShuffled) / n) - n;
+    }
+
+    /** Recomputes the weighted sums after weights changed, in O(distinct). */
+    public void rebase(AliasTable weights) {
+        int[] ids = new int[this.counts.size()];
+        long[] values = new long[ids.length];
+        this.counts.copyTo(ids, values);
+        double sum = 0.0d;
+        long n = 0;
+        for (int i = 0; i < ids.length; i++) {
+            double weight = weights.getWeight(ids[i]);
+            long weighted = values[i] - this.shuffled.get(ids[i]);
+            if (weight > 0.0d && weighted > 0) {
+                sum += (((double) weighted) * ((double) weighted)) / weight;
+                n += weighted;
+            }
+        }
+        this.sumSquaresOverWeight = sum;
+        this.weightedTotal = n;
+    }
+
+    /** Mirrors {@link FoodCatalog#removeSwap(int)}; the caller rebases afterwards. */
+    public void removeSwap(int id, int last) {
+        long removed = this.counts.get(id);
+        if (removed > 0) {
+            this.counts.remove(id);
+            this.total -= removed;
+            this.histogram[bucket(removed)]--;
+        }
+        long removed2 = this.shuffled.get(id);
+        if (removed2 > 0) {
+            this.shuffled.remove(id);
+            this.shuffledTotal -= removed2;
+            this.sumSquaresShuffled -= ((double) removed2) * ((double) removed2);
+        }
+        if (id != last) {
+            move(this.counts, last, id);
+            move(this.shuffled, last, id);
+        }
+    }
+
+    private static void move(IntLongMap map, int from, int to) {
+        long moved = map.get(from);
+        if (moved > 0) {
+            map.remove(from);
+            map.increment(to, moved);
+        }
+    }
+
+    /**
+     * Upper tail probability of a chi-square statistic with {@code df} degrees of freedom,
+     * the regularized gamma function Q(df / 2, x / 2).
+     */
+    public static double pValue(double chiSquare, int df) {
+        if (df <= 0 || Double.isNaN(chiSquare)) {
+            return Double.NaN;
+        }
+        if (chiSquare <= 0.0d) {
+            return 1.0d;
+        }
+        double a = ((double) df) / 2.0d;
+        double x = chiSquare / 2.0d;
+        double front = Math.exp(((-x) + (Math.log(x) * a)) - logGamma(a));
+        if (x < a + 1.0d) {
+            double term = 1.0d / a;
+            double sum = term;
+            for (int n = 1; n < 10000; n++) {
+                term *= x / (a + ((double) n));
+                sum += term;
+                if (Math.abs(term) < Math.abs(sum) * 1.0E-15d) {
+                    break;
+                }
+            }
+            return Math.max(0.0d, 1.0d - (front * sum));
+        }
+        double b = (x + 1.0d) - a;
+        double c = 1.0E300d;
+        double d = 1.0d / b;
+        double h = d;
+        for (int i = 1; i < 10000; i++) {
+            double an = (-((double) i)) * (((double) i) - a);
+            b += 2.0d;
+            d = (an * d) + b;
+            if (Math.abs(d) < 1.0E-300d) {
+                d = 1.0E-300d;
+            }
+            c = b + (an / c);
+            if (Math.abs(c) < 1.0E-300d) {
+                c = 1.0E-300d;
+            }
+            d = 1.0d / d;
+            double delta = d * c;
+            h *= delta;
+            if (Math.abs(delta - 1.0d) < 1.0E-15d) {
+                break;
+            }
+        }
+        return front * h;
+    }
+
+    /**
+     * Writes a plain-text report in the event log's {@code key=value} style: totals, the
+     * goodness-of-fit test, the count histogram and the {@code top} most decided foods.
+     */
+    public void dump(PersistentVector<CatalogEntry> entries, AliasTable weights, int top, StringBuilder out) {
+        int foods = weights.size();
+        int drawable = 0;
+        for (int id = 0; id < foods; id++) {
+            if (weights.getWeight(id) > 0.0d) {
+                drawable++;
+            }
+        }
+        double chi = chiSquare(weights.getTotalWeight());
+        out.append("decisions=").append(this.total).append(" foods=").append(foods).append(" decided=").append(distinct()).append('\n');
+        out.append("weighted=").append(this.weightedTotal).append(" chi_square=").append(format(chi)).append(" df=").append(drawable - 1).append(" p=").append(format(pValue(chi, drawable - 1)));
+        out.append(" expected_mean=").append(format(foods > 0 ? ((double) this.total) / ((double) foods) : 0.0d)).append('\n');
+        if (this.shuffledTotal > 0) {
+            double chi2 = shuffledChiSquare(foods);
+            out.append("shuffled=").append(this.shuffledTotal).append(" chi_square=").append(format(chi2)).append(" df=").append(foods - 1).append(" p=").append(format(pValue(chi2, foods - 1))).append('\n');
+        }
+        out.append("histogram 0=").append(foods - distinct());
+        for (int bucket = 1; bucket < this.histogram.length; bucket++) {
+            if (this.histogram[bucket] > 0) {
+                long low = 1L << (bucket - 1);
+                out.append(' ').append(low).append('-').append((low * 2) - 1).append('=').append(this.histogram[bucket]);
+            }
+        }
+        out.append('\n');
+        int[] ids = new int[this.counts.size()];
+        long[] values = new long[ids.length];
+        this.counts.copyTo(ids, values);
+        int[] best = new int[Math.min(top, ids.length)];
+        int kept = 0;
+        for (int i = 0; i < ids.length; i++) {
+            int at = kept;
+            while (at > 0 && values[best[at - 1]] < values[i]) {
+                at--;
+            }
+            if (at < best.length) {
+                int end = Math.min(kept, best.length - 1);
+                System.arraycopy(best, at, best, at + 1, end - at);
+                best[at] = i;
+                kept = Math.min(kept + 1, best.length);
+            }
+        }
+        double totalWeight = weights.getTotalWeight();
+        for (int i2 = 0; i2 < kept; i2++) {
+            int id = ids[best[i2]];
+            out.append("top name=").append(entries.get(id).getName()).append(" count=").append(values[best[i2]]);
+            double expected = (((double) this.weightedTotal) * weights.getWeight(id)) / totalWeight;
+            out.append(" expected=").append(format(expected + (((double) this.shuffledTotal) / ((double) foods)))).append('\n');
+        }
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        int[] ids = new int[this.counts.size()];
+        long[] values = new long[ids.length];
+        this.counts.copyTo(ids, values);
+        out.writeInt(MAGIC);
+        out.writeInt(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            out.writeInt(ids[i]);
+            out.writeLong(values[i]);
+        }
+        int[] ids2 = new int[this.shuffled.size()];
+        long[] values2 = new long[ids2.length];
+        this.shuffled.copyTo(ids2, values2);
+        out.writeInt(ids2.length);
+        for (int i2 = 0; i2 < ids2.length; i2++) {
+            out.writeInt(ids2[i2]);
+            out.writeLong(values2[i2]);
+        }
+    }
+
+    /**
+     * Restores counts written by {@link #writeTo}, dropping ids outside the catalog, then
+     * rebases. Counts saved before no-repeats draws were told apart are all taken as weighted.
+     */
+    public void readFrom(DataInputStream in, AliasTable weights) throws IOException {
+        int magic = in.readInt();
+        if (magic != MAGIC && magic != MAGIC_V1) {
+            throw new IOException("Not decision stats");
+        }
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            int id = in.readInt();
+            long value = in.readLong();
+            if (id >= 0 && id < weights.size() && value > 0) {
+                this.counts.increment(id, value);
+                this.total += value;
+                this.histogram[bucket(value)]++;
+            }
+        }
+        if (magic == MAGIC) {
+            int count2 = in.readInt();
+            for (int i2 = 0; i2 < count2; i2++) {
+                int id2 = in.readInt();
+                long value2 = in.readLong();
+                long all = (id2 < 0 || id2 >= weights.size()) ? 0 : this.counts.get(id2);
+                if (value2 > 0 && value2 <= all) {
+                    long shuffled2 = this.shuffled.increment(id2, value2);
+                    this.shuffledTotal += value2;
+                    this.sumSquaresShuffled += ((double) shuffled2) * ((double) shuffled2);
+                }
+            }
+        }
+        rebase(weights);
+    }
+
+    private static int bucket(long count) {
+        return 64 - Long.numberOfLeadingZeros(count);
+    }
+
+    private static String format(double value) {
+        if (Double.isNaN(value)) {
+            return "n/a";
+        }
+        return String.format(Locale.ROOT, "%.4g", Double.valueOf(value));
+    }
+
+    /** Lanczos approximation of ln(Gamma(x)) for x > 0. */
+    private static double logGamma(double x) {
+        double[] c = {76.18009172947146d, -86.50531732342288d, 24.01409824083091d, -1.231739572450155d, 0.001208650973866179d, -5.395239384953E-6d};
+        double y = x;
+        double tmp = x + 5.5d;
+        double tmp2 = tmp - ((x + 0.5d) * Math.log(tmp));
+        double series = 1.000000000190015d;
+        for (double coefficient : c) {
+            y += 1.0d;
+            series += coefficient / y;
+        }
+        return (-tmp2) + Math.log((2.5066282746310007d * series) / x);
+    }
+}
@@ -0,0 +1,212 @@
+package com.kalyan.dinnerdecider.engine;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Structured event log with a constant-cost producer side. Events are three ints and a
+ * timestamp written into a fixed ring buffer after a single CAS; nothing is formatted or
+ * allocated by the caller and a full ring drops the event instead of blocking. A daemon
+ * thread drains the ring and keeps a uniform sample of at most {@code maxPerSecond} of each
+ * second's events (reservoir sampling), so a burst late in the second is as likely to be
+ * seen as one early in it. When the second is over it formats the sample into one line per
+ * event, in the order they were logged, and hands the batch to the {@link Sink} in one
+ * call, followed by an {@code event=sampled} line with how many events the sample stood
+ * for. Events dropped by a full ring are reported as a count.
+ *
+ * <p>Failures go through {@link #error} instead: they are rare, carry a message, and are
+ * written with the next batch, never sampled out.
+ */
+public final class EventLog {
+    public static final int CATALOG_CHANGED = 1;
+    public static final int DECISION_MADE = 2;
+    private static final long DRAIN_INTERVAL_NANOS = 250000000;
+    private static final int MAX_PENDING_ERRORS = 64;
+    private final int[] args1;
+    private final int[] args2;
+    private volatile boolean closed;
+    private final AtomicLong dropped = new AtomicLong();
+    private final ConcurrentLinkedQueue<String> errors = new ConcurrentLinkedQueue<>();
+    private final AtomicLong head = new AtomicLong();
+    private final int mask;
+    private final int maxPerSecond;
+    private final AtomicInteger pendingErrors = new AtomicInteger();
+    private final AtomicLongArray published;
+    private final Random random = new Random();
+    private final int[] sampleArgs1;
+    private final int[] sampleArgs2;
+    private final long[] sampleOrder;
+    private final long[] sampleTimes;
+    private final int[] sampleTypes;
+    private final Sink sink;
+    private final AtomicLong tail = new AtomicLong();
+    private final Thread thread;
+    private final long[] times;
+    private final int[] types;
+
+    public interface Sink {
+        void write(String batch);
+    }
+
+    public EventLog(int capacity, int maxPerSecond2, Sink sink2) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two >= 2");
+        }
+        this.mask = capacity - 1;
+        this.maxPerSecond = maxPerSecond2;
+        this.sink = sink2;
+        this.types = new int[capacity];
+        this.args1 = new int[capacity];
+        this.args2 = new int[capacity];
+        this.times = new long[capacity];
+        this.published = new AtomicLongArray(capacity);
+        this.sampleTypes = new int[maxPerSecond2];
+        this.sampleArgs1 = new int[maxPerSecond2];
+        this.sampleArgs2 = new int[maxPerSecond2];
+        this.sampleTimes = new long[maxPerSecond2];
+        this.sampleOrder = new long[maxPerSecond2];
+        for (int i = 0; i < capacity; i++) {
+            this.published.set(i, (long) (i - capacity));
+        }
+        Thread thread2 = new Thread(new Runnable() {
+            public void run() {
+                EventLog.this.drainLoop();
+            }
+        }, "event-log");
+        this.thread = thread2;
+        thread2.setDaemon(true);
+        thread2.start();
+    }
+
+    /** Records {@code type} with two int arguments. Safe to call from any thread. */
+    public void log(int type, int arg1, int arg2) {
+        long seq;
+        do {
+            seq = this.tail.get();
+            if (seq - this.head.get() > ((long) this.mask)) {
+                this.dropped.incrementAndGet();
+                return;
+            }
+        } while (!this.tail.compareAndSet(seq, 1 + seq));
+        int slot = ((int) seq) & this.mask;
+        this.types[slot] = type;
+        this.args1[slot] = arg1;
+        this.args2[slot] = arg2;
+        this.times[slot] = System.currentTimeMillis();
+        this.published.lazySet(slot, seq);
+    }
+
+    /**
+     * Records a failure as one {@code event=error} line. Unlike {@link #log} this formats
+     * on the caller's thread, so it is for rare paths such as I/O errors; past
+     * {@value #MAX_PENDING_ERRORS} unwritten errors further ones are counted as dropped.
+     */
+    public void error(String message, Throwable error) {
+        if (this.pendingErrors.incrementAndGet() > MAX_PENDING_ERRORS) {
+            this.pendingErrors.decrementAndGet();
+            this.dropped.incrementAndGet();
+            return;
+        }
+        StringBuilder line = new StringBuilder("event=error message=\"").append(message).append('"');
+        if (error != null) {
+            line.append(" cause=\"").append(error).append('"');
+        }
+        line.append(" time=").append(System.currentTimeMillis());
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) == '\n' || line.charAt(i) == '\r') {
+                line.setCharAt(i, ' ');
+            }
+        }
+        this.errors.add(line.toString());
+        LockSupport.unpark(this.thread);
+    }
+
+    /** Drains what is already queued and stops the drain thread. */
+    public void close() {
+        this.closed = true;
+        LockSupport.unpark(this.thread);
+    }
+
+    /* access modifiers changed from: private */
+    public void drainLoop() {
+        StringBuilder out = new StringBuilder(1024);
+        long windowStart = System.nanoTime();
+        int seen = 0;
+        while (true) {
+            boolean stop = this.closed;
+            long seq = this.head.get();
+            while (this.published.get(((int) seq) & this.mask) == seq) {
+                int slot = ((int) seq) & this.mask;
+                // Algorithm R: the n-th event of the window replaces a kept one with probability k/n.
+                int keep = seen < this.maxPerSecond ? seen : this.random.nextInt(seen + 1);
+                if (keep < this.maxPerSecond) {
+                    this.sampleTypes[keep] = this.types[slot];
+                    this.sampleArgs1[keep] = this.args1[slot];
+                    this.sampleArgs2[keep] = this.args2[slot];
+                    this.sampleTimes[keep] = this.times[slot];
+                    this.sampleOrder[keep] = (((long) seen) << 32) | ((long) keep);
+                }
+                seen++;
+                seq++;
+                this.head.lazySet(seq);
+            }
+            long now = System.nanoTime();
+            if (now - windowStart >= 1000000000 || stop) {
+                windowStart = now;
+                writeSample(out, seen);
+                seen = 0;
+            }
+            while (true) {
+                String error = this.errors.poll();
+                if (error == null) {
+                    break;
+                }
+                this.pendingErrors.decrementAndGet();
+                out.append(error).append('\n');
+            }
+            long lost = this.dropped.getAndSet(0);
+            if (lost > 0) {
+                out.append("event=dropped count=").append(lost).append('\n');
+            }
+            if (out.length() > 0) {
+                out.setLength(out.length() - 1);
+                this.sink.write(out.toString());
+                out.setLength(0);
+            }
+            if (!stop) {
+                LockSupport.parkNanos(this, DRAIN_INTERVAL_NANOS);
+            } else {
+                return;
+            }
+        }
+    }
+
+    /** Formats the window's sample in logging order, then how many events it stands for. */
+    private void writeSample(StringBuilder out, int seen) {
+        int kept = Math.min(seen, this.maxPerSecond);
+        Arrays.sort(this.sampleOrder, 0, kept);
+        for (int i = 0; i < kept; i++) {
+            int keep = (int) this.sampleOrder[i];
+            format(out, this.sampleTypes[keep], this.sampleArgs1[keep], this.sampleArgs2[keep], this.sampleTimes[keep]);
+        }
+        if (seen > kept) {
+            out.append("event=sampled kept=").append(kept).append(" seen=").append(seen).append('\n');
+        }
+    }
+
+    private static void format(StringBuilder out, int type, int arg1, int arg2, long time) {
+        if (type == CATALOG_CHANGED) {
+            out.append("event=catalog_changed size=").append(arg1).append(" delta=").append(arg2);
+        } else if (type == DECISION_MADE) {
+            out.append("event=decision_made id=").append(arg1).append(" size=").append(arg2);
+        } else {
+            out.append("event=").append(type).append(" a=").append(arg1).append(" b=").append(arg2);
+        }
+        out.append(" time=").append(time).append('\n');
+    }
+}
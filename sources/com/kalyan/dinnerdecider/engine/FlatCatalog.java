@@ -0,0 +1,377 @@
+package com.kalyan.dinnerdecider.engine;
+
+import androidx.emoji2.text.flatbuffer.FlatBufferBuilder;
+import androidx.emoji2.text.flatbuffer.Table;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * A catalog stored as a FlatBuffer and read in place, used for the journal's snapshots and
+ * for exported catalogs. The schema, with row {@code i} of each vector being food id
+ * {@code i}:
+ *
+ * <pre>
+ * file_identifier "DDCF";
+ * table Catalog {
+ *   generation:long; names:[string]; weights:[double]; tags:[string];
+ *   cumulative:[double];  // running weight total through each row
+ * }
+ * root_type Catalog;
+ * </pre>
+ *
+ * {@link #map} memory-maps a file and checks only its header and vector lengths, so
+ * opening takes the same time for ten foods as for a million, and a row's strings are
+ * decoded only when it is read. The running totals let {@link #sample} make a weighted
+ * pick with a binary search instead of a pass over every weight. Instances are immutable
+ * and safe to read from any thread.
+ */
+public final class FlatCatalog extends Table {
+    public static final String IDENTIFIER = "DDCF";
+    private static final int VT_CUMULATIVE = 12;
+    private static final int VT_GENERATION = 4;
+    private static final int VT_NAMES = 6;
+    private static final int VT_TAGS = 10;
+    private static final int VT_WEIGHTS = 8;
+    private int cumulative;
+    private int names;
+    private int size;
+    private int tags;
+    private int weights;
+
+    private FlatCatalog() {
+    }
+
+    /** Maps {@code file} read-only. The mapping outlives a later replacement of the file. */
+    public static FlatCatalog map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return wrap(raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length()));
+        } finally {
+            raf.close();
+        }
+    }
+
+    /** Reads a catalog from {@code buffer}, between its position and limit, without copying. */
+    public static FlatCatalog wrap(ByteBuffer buffer) throws IOException {
+        ByteBuffer bb2 = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        if (bb2.remaining() < 8 || !__has_identifier(bb2, IDENTIFIER)) {
+            throw new IOException("Not a catalog file");
+        }
+        try {
+            FlatCatalog catalog = new FlatCatalog();
+            catalog.__reset(bb2.getInt(0), bb2);
+            catalog.locate();
+            return catalog;
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Truncated catalog file", e);
+        }
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /** The journal generation the snapshot closes, or 0 for an export. */
+    public long generation() {
+        int o = __offset(VT_GENERATION);
+        if (o != 0) {
+            return this.bb.getLong(this.bb_pos + o);
+        }
+        return 0;
+    }
+
+    public String name(int id) {
+        checkId(id);
+        return __string(this.names + (id * 4));
+    }
+
+    public double weight(int id) {
+        checkId(id);
+        return this.bb.getDouble(this.weights + (id * 8));
+    }
+
+    public String tags(int id) {
+        checkId(id);
+        return __string(this.tags + (id * 4));
+    }
+
+    public CatalogEntry entry(int id) {
+        return new CatalogEntry(name(id), weight(id), tags(id));
+    }
+
+    /** The sum of all weights. */
+    public double totalWeight() {
+        if (this.size == 0) {
+            return 0.0d;
+        }
+        if (this.cumulative != 0) {
+            return this.bb.getDouble(this.cumulative + ((this.size - 1) * 8));
+        }
+        double total = 0.0d;
+        for (int i = 0; i < this.size; i++) {
+            total += this.bb.getDouble(this.weights + (i * 8));
+        }
+        return total;
+    }
+
+    /**
+     * Picks a row with probability proportional to its weight, given {@code u} uniform in
+     * [0, 1). Returns -1 if the catalog is empty or weighs nothing. Files without running
+     * totals fall back to a linear scan.
+     */
+    public int sample(double u) {
+        double total = totalWeight();
+        if (total <= 0.0d) {
+            return -1;
+        }
+        double target = u * total;
+        if (this.cumulative == 0) {
+            double sum = 0.0d;
+            for (int i = 0; i < this.size; i++) {
+                sum += this.bb.getDouble(this.weights + (i * 8));
+                if (target < sum) {
+                    return i;
+                }
+            }
+            return this.size - 1;
+        }
+        int low = 0;
+        int high = this.size - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (this.bb.getDouble(this.cumulative + (mid * 8)) > target) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    /** Decodes rows {@code start} to {@code start + n - 1} into {@code out[0..n-1]}, for paged lists. */
+    public void read(int start, int n, CatalogEntry[] out) {
+        if (start < 0 || n < 0 || start + n > this.size) {
+            throw new IndexOutOfBoundsException("start=" + start + ", n=" + n + ", size=" + this.size);
+        }
+        for (int i = 0; i < n; i++) {
+            out[i] = entry(start + i);
+        }
+    }
+
+    private void locate() throws IOException {
+        int n = __offset(VT_NAMES);
+        int w = __offset(VT_WEIGHTS);
+        int t = __offset(VT_TAGS);
+        if (n == 0 || w == 0 || t == 0) {
+            throw new IOException("Catalog file lacks a column");
+        }
+        this.names = __vector(n);
+        this.weights = __vector(w);
+        this.tags = __vector(t);
+        this.size = __vector_len(n);
+        int c = __offset(VT_CUMULATIVE);
+        if (c != 0) {
+            if (__vector_len(c) != this.size) {
+                throw new IOException("Catalog file columns disagree");
+            }
+            this.cumulative = __vector(c);
+        }
+        int end = this.bb.limit();
+        if (__vector_len(w) != this.size || __vector_len(t) != this.size || ((long) this.names) + (((long) this.size) * 4) > ((long) end) || ((long) this.weights) + (((long) this.size) * 8) > ((long) end) || ((long) this.tags) + (((long) this.size) * 4) > ((long) end)) {
+            throw new IOException("Catalog file columns disagree");
+        }
+    }
+
+    private void checkId(int id) {
+        if (id < 0 || id >= this.size) {
+            throw new IndexOutOfBoundsException("id=" + id + ", size=" + this.size);
+        }
+    }
+
+    /**
+     * Streams rows into a FlatBuffer, then writes it out with {@link #writeTo}. The buffer
+     * is built back to front in memory-mapped scratch files next to {@code scratch}
+     * rather than on the heap, so a million-food catalog costs the heap only the per-row
+     * offsets; the scratch files are deleted on {@link #close}. Scratch space is written
+     * out before it is mapped, so a full disk fails a call with an {@link IOException}
+     * instead of faulting on a mapped page.
+     */
+    public static final class Builder implements Closeable {
+        private final FlatBufferBuilder builder;
+        private final int emptyTags;
+        private final ScratchFactory factory;
+        private int[] nameOffsets = new int[1024];
+        private int size;
+        private int[] tagOffsets = new int[1024];
+        private double[] weights2 = new double[1024];
+
+        public Builder(File scratch) throws IOException {
+            this.factory = new ScratchFactory(scratch);
+            try {
+                this.builder = new FlatBufferBuilder(65536, this.factory);
+                this.emptyTags = this.builder.createString("");
+            } catch (ScratchException e) {
+                this.factory.delete();
+                throw e.getCause();
+            }
+        }
+
+        public void add(String name, double weight, String tags2) throws IOException {
+            try {
+                append(name, weight, tags2);
+            } catch (ScratchException e) {
+                throw e.getCause();
+            }
+        }
+
+        private void append(String name, double weight, String tags2) {
+            int i = this.size;
+            if (i == this.nameOffsets.length) {
+                int capacity = i << 1;
+                this.nameOffsets = Arrays.copyOf(this.nameOffsets, capacity);
+                this.tagOffsets = Arrays.copyOf(this.tagOffsets, capacity);
+                this.weights2 = Arrays.copyOf(this.weights2, capacity);
+            }
+            this.nameOffsets[i] = this.builder.createString(name);
+            this.tagOffsets[i] = (tags2 == null || tags2.length() == 0) ? this.emptyTags : this.builder.createString(tags2);
+            this.weights2[i] = weight;
+            this.size = i + 1;
+        }
+
+        public int size() {
+            return this.size;
+        }
+
+        /** Finishes the buffer and writes all of it to {@code out}; the builder is done afterwards. */
+        public void writeTo(WritableByteChannel out, long generation) throws IOException {
+            ByteBuffer data;
+            try {
+                data = finish(generation);
+            } catch (ScratchException e) {
+                throw e.getCause();
+            }
+            while (data.hasRemaining()) {
+                out.write(data);
+            }
+        }
+
+        private ByteBuffer finish(long generation) {
+            FlatBufferBuilder b = this.builder;
+            int n = this.size;
+            int namesVector = offsetVector(this.nameOffsets, n);
+            int tagsVector = offsetVector(this.tagOffsets, n);
+            b.startVector(8, n, 8);
+            for (int i = n - 1; i >= 0; i--) {
+                b.addDouble(this.weights2[i]);
+            }
+            int weightsVector = b.endVector();
+            double[] sums = new double[n];
+            double sum = 0.0d;
+            for (int i2 = 0; i2 < n; i2++) {
+                sum += this.weights2[i2];
+                sums[i2] = sum;
+            }
+            b.startVector(8, n, 8);
+            for (int i3 = n - 1; i3 >= 0; i3--) {
+                b.addDouble(sums[i3]);
+            }
+            int cumulativeVector = b.endVector();
+            b.startTable(5);
+            b.addLong(0, generation, 0);
+            b.addOffset(4, cumulativeVector, 0);
+            b.addOffset(3, tagsVector, 0);
+            b.addOffset(2, weightsVector, 0);
+            b.addOffset(1, namesVector, 0);
+            b.finish(b.endTable(), IDENTIFIER);
+            return b.dataBuffer().duplicate();
+        }
+
+        public void close() {
+            this.factory.delete();
+        }
+
+        private int offsetVector(int[] offsets, int n) {
+            this.builder.startVector(4, n, 4);
+            for (int i = n - 1; i >= 0; i--) {
+                this.builder.addOffset(offsets[i]);
+            }
+            return this.builder.endVector();
+        }
+    }
+
+    /** Carries a scratch file failure out of the FlatBuffers allocator, which cannot throw checked exceptions. */
+    private static final class ScratchException extends RuntimeException {
+        ScratchException(IOException cause) {
+            super(cause);
+        }
+
+        public IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+
+    /**
+     * Hands the builder mapped scratch files. Growing copies the old buffer into one twice
+     * the size, so the two are kept in alternate files that never alias. Each file is
+     * filled with zeros up to the new capacity before it is mapped, so the space is
+     * allocated and a full disk is an {@link IOException} here, never a fault on a sparse
+     * page later.
+     */
+    private static final class ScratchFactory extends FlatBufferBuilder.ByteBufferFactory {
+        private static final int ZERO_CHUNK = 65536;
+        private final File[] files;
+        private int next;
+
+        ScratchFactory(File scratch) {
+            this.files = new File[]{new File(scratch.getPath() + ".0"), new File(scratch.getPath() + ".1")};
+            // Files left by an interrupted build may be sparse.
+            delete();
+        }
+
+        public ByteBuffer newByteBuffer(int capacity) {
+            File file = this.files[this.next];
+            this.next ^= 1;
+            try {
+                RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                try {
+                    FileChannel channel = raf.getChannel();
+                    allocate(channel, file, (long) capacity);
+                    return channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) capacity).order(ByteOrder.LITTLE_ENDIAN);
+                } finally {
+                    raf.close();
+                }
+            } catch (IOException e) {
+                throw new ScratchException(new IOException("Cannot map scratch file " + file, e));
+            }
+        }
+
+        private static void allocate(FileChannel channel, File file, long capacity) throws IOException {
+            long position = channel.size();
+            if (position >= capacity) {
+                return;
+            }
+            if (file.getUsableSpace() < capacity - position) {
+                throw new IOException("Not enough free space for " + capacity + " bytes");
+            }
+            ByteBuffer zeros = ByteBuffer.allocate((int) Math.min((long) ZERO_CHUNK, capacity - position));
+            while (position < capacity) {
+                zeros.clear();
+                zeros.limit((int) Math.min((long) zeros.capacity(), capacity - position));
+                position += (long) channel.write(zeros, position);
+            }
+        }
+
+        void delete() {
+            for (File file : this.files) {
+                file.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.kalyan.dinnerdecider.engine;
+
+import java.util.Arrays;
+
+/**
+ * Food names interned into a single char arena. Each food is identified by a dense int id
+ * and described by an offset and a length into the arena, so the catalog costs two ints
+ * plus its characters per entry and holds no per-entry objects. A {@link String} is only
+ * created by {@link #name(int)}, when a name has to be shown.
+ *
+ * <p>Removal moves the last entry into the freed id; the orphaned characters are reclaimed
+ * once they make up half of the arena.
+ *
+ * <p>The engine keeps normalized keys here. Display names live in {@link CatalogEntry},
+ * which explains why.
+ */
+public final class FoodCatalog {
+    private static final int MIN_ARENA = 256;
+    private static final int MIN_CAPACITY = 16;
+    private char[] arena;
+    private int arenaLength;
+    private int garbage;
+    private int[] lengths;
+    private int[] offsets;
+    private int size;
+
+    public FoodCatalog() {
+        this(MIN_CAPACITY);
+    }
+
+    public FoodCatalog(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, MIN_CAPACITY);
+        this.offsets = new int[capacity];
+        this.lengths = new int[capacity];
+        this.arena = new char[Math.max(capacity * 8, MIN_ARENA)];
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public int add(CharSequence name) {
+        int length = name.length();
+        if (this.size == this.offsets.length) {
+            int capacity = this.size << 1;
+            this.offsets = Arrays.copyOf(this.offsets, capacity);
+            this.lengths = Arrays.copyOf(this.lengths, capacity);
+        }
+        ensureArena(length);
+        int offset = this.arenaLength;
+        char[] chars = this.arena;
+        for (int i = 0; i < length; i++) {
+            chars[offset + i] = name.charAt(i);
+        }
+        this.arenaLength = offset + length;
+        int id = this.size;
+        this.offsets[id] = offset;
+        this.lengths[id] = length;
+        this.size = id + 1;
+        return id;
+    }
+
+    /**
+     * Removes {@code id} by moving the last entry into its slot. Returns the previous id of
+     * the moved entry, or -1 if {@code id} was the last one.
+     */
+    public int removeSwap(int id) {
+        checkId(id);
+        this.garbage += this.lengths[id];
+        int last = this.size - 1;
+        this.size = last;
+        if (id != last) {
+            this.offsets[id] = this.offsets[last];
+            this.lengths[id] = this.lengths[last];
+        }
+        if (this.garbage > (this.arenaLength >> 1)) {
+            compactArena();
+        }
+        return id != last ? last : -1;
+    }
+
+    /** Replaces the name of {@code id}; its old characters become garbage like a removal's. */
+    public void set(int id, CharSequence name) {
+        checkId(id);
+        int length = name.length();
+        this.garbage += this.lengths[id];
+        ensureArena(length);
+        int offset = this.arenaLength;
+        char[] chars = this.arena;
+        for (int i = 0; i < length; i++) {
+            chars[offset + i] = name.charAt(i);
+        }
+        this.arenaLength = offset + length;
+        this.offsets[id] = offset;
+        this.lengths[id] = length;
+        if (this.garbage > (this.arenaLength >> 1)) {
+            compactArena();
+        }
+    }
+
+    /** A copy with the garbage left out, for handing the names to another thread. */
+    public FoodCatalog copy() {
+        FoodCatalog copy = new FoodCatalog(this.size);
+        copy.arena = new char[Math.max(this.arenaLength - this.garbage, MIN_ARENA)];
+        int offset = 0;
+        for (int id = 0; id < this.size; id++) {
+            int length = this.lengths[id];
+            System.arraycopy(this.arena, this.offsets[id], copy.arena, offset, length);
+            copy.offsets[id] = offset;
+            copy.lengths[id] = length;
+            offset += length;
+        }
+        copy.arenaLength = offset;
+        copy.size = this.size;
+        return copy;
+    }
+
+    public String name(int id) {
+        checkId(id);
+        return new String(this.arena, this.offsets[id], this.lengths[id]);
+    }
+
+    public int length(int id) {
+        checkId(id);
+        return this.lengths[id];
+    }
+
+    public char charAt(int id, int index) {
+        checkId(id);
+        if (index >= 0 && index < this.lengths[id]) {
+            return this.arena[this.offsets[id] + index];
+        }
+        throw new IndexOutOfBoundsException("index=" + index + ", length=" + this.lengths[id]);
+    }
+
+    public void appendTo(int id, StringBuilder out) {
+        checkId(id);
+        out.append(this.arena, this.offsets[id], this.lengths[id]);
+    }
+
+    public boolean contentEquals(int id, CharSequence text) {
+        checkId(id);
+        int length = this.lengths[id];
+        if (text.length() != length) {
+            return false;
+        }
+        int offset = this.offsets[id];
+        for (int i = 0; i < length; i++) {
+            if (this.arena[offset + i] != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String toString() {
+        StringBuilder out = new StringBuilder(this.arenaLength + (this.size * 2) + 2);
+        out.append('[');
+        for (int id = 0; id < this.size; id++) {
+            if (id > 0) {
+                out.append(", ");
+            }
+            out.append(this.arena, this.offsets[id], this.lengths[id]);
+        }
+        return out.append(']').toString();
+    }
+
+    private void ensureArena(int extra) {
+        int needed = this.arenaLength + extra;
+        if (needed > this.arena.length) {
+            int capacity = this.arena.length;
+            while (capacity < needed) {
+                capacity <<= 1;
+                if (capacity < 0) {
+                    throw new IllegalStateException("Max arena capacity exceeded");
+                }
+            }
+            this.arena = Arrays.copyOf(this.arena, capacity);
+        }
+    }
+
+    private void compactArena() {
+        char[] chars = new char[Math.max(this.arena.length, MIN_ARENA)];
+        int position = 0;
+        for (int id = 0; id < this.size; id++) {
+            int length = this.lengths[id];
+            System.arraycopy(this.arena, this.offsets[id], chars, position, length);
+            this.offsets[id] = position;
+            position += length;
+        }
+        this.arena = chars;
+        this.arenaLength = position;
+        this.garbage = 0;
+    }
+
+    private void checkId(int id) {
+        if (id < 0 || id >= this.size) {
+            throw new IndexOutOfBoundsException("id=" + id + ", size=" + this.size);
+        }
+    }
+}
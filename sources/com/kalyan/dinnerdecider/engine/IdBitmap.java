@@ -0,0 +1,466 @@
+package com.kalyan.dinnerdecider.engine;
+
+import java.util.Arrays;
+
+/**
+ * Compressed bitmap of non-negative ids in the style of Roaring bitmaps. Ids are split
+ * into 16-bit chunks by their high half; each chunk holds its low halves either as a
+ * sorted {@code char[]} while it has at most {@link #ARRAY_MAX} members, or as a 65536-bit
+ * {@code long[]} beyond that. Set algebra works chunk by chunk, and {@link #select} finds
+ * the n-th member by skipping whole chunks using their cardinalities.
+ */
+public final class IdBitmap {
+    private static final int ARRAY_MAX = 4096;
+    private static final int WORDS = 1024;
+    private int[] cards;
+    private Object[] chunks;
+    private char[] keys;
+    private int size;
+
+    public IdBitmap() {
+        this.keys = new char[4];
+        this.chunks = new Object[4];
+        this.cards = new int[4];
+    }
+
+    /** Returns a bitmap holding {@code [0, end)}. */
+    public static IdBitmap range(int end) {
+        IdBitmap bitmap = new IdBitmap();
+        int start = 0;
+        while (start < end) {
+            int key = start >>> 16;
+            int stop = Math.min(end, (key + 1) << 16);
+            int count = stop - start;
+            if (count <= ARRAY_MAX) {
+                char[] array = new char[count];
+                for (int i = 0; i < count; i++) {
+                    array[i] = (char) (start + i);
+                }
+                bitmap.append((char) key, array, count);
+            } else {
+                long[] words = new long[WORDS];
+                int low = start & 65535;
+                int high = low + count;
+                for (int bit = low; bit < high; bit++) {
+                    int i = bit >>> 6;
+                    words[i] = words[i] | (1L << bit);
+                }
+                bitmap.append((char) key, words, count);
+            }
+            start = stop;
+        }
+        return bitmap;
+    }
+
+    public int cardinality() {
+        int total = 0;
+        for (int i = 0; i < this.size; i++) {
+            total += this.cards[i];
+        }
+        return total;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public boolean contains(int id) {
+        int index = indexOf((char) (id >>> 16));
+        if (index < 0) {
+            return false;
+        }
+        Object chunk = this.chunks[index];
+        char low = (char) id;
+        if (chunk instanceof char[]) {
+            return Arrays.binarySearch((char[]) chunk, 0, this.cards[index], low) >= 0;
+        }
+        return (((long[]) chunk)[low >>> 6] & (1L << low)) != 0;
+    }
+
+    public void add(int id) {
+        char key = (char) (id >>> 16);
+        char low = (char) id;
+        int index = indexOf(key);
+        if (index < 0) {
+            index = (-index) - 1;
+            insertChunk(index, key, new char[4], 0);
+        }
+        Object chunk = this.chunks[index];
+        int card = this.cards[index];
+        if (chunk instanceof char[]) {
+            char[] array = (char[]) chunk;
+            int at = Arrays.binarySearch(array, 0, card, low);
+            if (at < 0) {
+                int at2 = (-at) - 1;
+                if (card == ARRAY_MAX) {
+                    long[] words = toWords(array, card);
+                    words[low >>> 6] = words[low >>> 6] | (1L << low);
+                    this.chunks[index] = words;
+                } else {
+                    if (card == array.length) {
+                        array = Arrays.copyOf(array, Math.min(card << 1, ARRAY_MAX));
+                        this.chunks[index] = array;
+                    }
+                    System.arraycopy(array, at2, array, at2 + 1, card - at2);
+                    array[at2] = low;
+                }
+                this.cards[index] = card + 1;
+                return;
+            }
+            return;
+        }
+        long[] words2 = (long[]) chunk;
+        long bit = 1L << low;
+        if ((words2[low >>> 6] & bit) == 0) {
+            words2[low >>> 6] = words2[low >>> 6] | bit;
+            this.cards[index] = card + 1;
+        }
+    }
+
+    public void remove(int id) {
+        int index = indexOf((char) (id >>> 16));
+        if (index >= 0) {
+            Object chunk = this.chunks[index];
+            int card = this.cards[index];
+            char low = (char) id;
+            if (chunk instanceof char[]) {
+                char[] array = (char[]) chunk;
+                int at = Arrays.binarySearch(array, 0, card, low);
+                if (at >= 0) {
+                    System.arraycopy(array, at + 1, array, at, (card - at) - 1);
+                    setCard(index, card - 1);
+                    return;
+                }
+                return;
+            }
+            long[] words = (long[]) chunk;
+            long bit = 1L << low;
+            if ((words[low >>> 6] & bit) != 0) {
+                words[low >>> 6] = words[low >>> 6] & (~bit);
+                int card2 = card - 1;
+                if (card2 <= ARRAY_MAX) {
+                    this.chunks[index] = toArray(words, card2);
+                }
+                setCard(index, card2);
+            }
+        }
+    }
+
+    /** Returns the member with {@code rank} members below it. */
+    public int select(int rank) {
+        if (rank >= 0) {
+            int remaining = rank;
+            for (int i = 0; i < this.size; i++) {
+                int card = this.cards[i];
+                if (remaining < card) {
+                    int base = this.keys[i] << 16;
+                    Object chunk = this.chunks[i];
+                    if (chunk instanceof char[]) {
+                        return ((char[]) chunk)[remaining] | base;
+                    }
+                    long[] words = (long[]) chunk;
+                    for (int w = 0; w < WORDS; w++) {
+                        int bits = Long.bitCount(words[w]);
+                        if (remaining < bits) {
+                            long word = words[w];
+                            for (int skip = 0; skip < remaining; skip++) {
+                                word &= word - 1;
+                            }
+                            return ((w << 6) + Long.numberOfTrailingZeros(word)) | base;
+                        }
+                        remaining -= bits;
+                    }
+                }
+                remaining -= card;
+            }
+        }
+        throw new IndexOutOfBoundsException("rank=" + rank + ", cardinality=" + cardinality());
+    }
+
+    /**
+     * Returns the non-negative id that is not a member and has {@code rank} non-members
+     * below it, skipping whole chunks and the gaps between them like {@link #select}.
+     */
+    public int selectAbsent(int rank) {
+        if (rank < 0) {
+            throw new IndexOutOfBoundsException("rank=" + rank);
+        }
+        long remaining = rank;
+        int next = 0;
+        for (int i = 0; i < this.size; i++) {
+            int key = this.keys[i];
+            long gap = ((long) (key - next)) << 16;
+            if (remaining < gap) {
+                return (int) ((((long) next) << 16) + remaining);
+            }
+            long remaining2 = remaining - gap;
+            int absent = 65536 - this.cards[i];
+            if (remaining2 < ((long) absent)) {
+                int base = key << 16;
+                int low = (int) remaining2;
+                Object chunk = this.chunks[i];
+                if (chunk instanceof char[]) {
+                    char[] array = (char[]) chunk;
+                    int card = this.cards[i];
+                    for (int j = 0; j < card && array[j] <= low; j++) {
+                        low++;
+                    }
+                    return low | base;
+                }
+                long[] words = (long[]) chunk;
+                for (int w = 0; w < WORDS; w++) {
+                    long word = ~words[w];
+                    int bits = Long.bitCount(word);
+                    if (low < bits) {
+                        for (int skip = 0; skip < low; skip++) {
+                            word &= word - 1;
+                        }
+                        return ((w << 6) + Long.numberOfTrailingZeros(word)) | base;
+                    }
+                    low -= bits;
+                }
+            }
+            remaining = remaining2 - ((long) absent);
+            next = key + 1;
+        }
+        return (int) ((((long) next) << 16) + remaining);
+    }
+
+    /** Calls {@code visitor} for every member in ascending order. */
+    public void forEach(IntVisitor visitor) {
+        for (int i = 0; i < this.size; i++) {
+            int base = this.keys[i] << 16;
+            Object chunk = this.chunks[i];
+            if (chunk instanceof char[]) {
+                char[] array = (char[]) chunk;
+                int card = this.cards[i];
+                for (int j = 0; j < card; j++) {
+                    visitor.visit(array[j] | base);
+                }
+            } else {
+                long[] words = (long[]) chunk;
+                for (int w = 0; w < WORDS; w++) {
+                    long word = words[w];
+                    while (word != 0) {
+                        visitor.visit(((w << 6) + Long.numberOfTrailingZeros(word)) | base);
+                        word &= word - 1;
+                    }
+                }
+            }
+        }
+    }
+
+    public interface IntVisitor {
+        void visit(int id);
+    }
+
+    public IdBitmap and(IdBitmap other) {
+        IdBitmap out = new IdBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < this.size && j < other.size) {
+            char a = this.keys[i];
+            char b = other.keys[j];
+            if (a < b) {
+                i++;
+            } else if (a > b) {
+                j++;
+            } else {
+                out.appendResult(a, combine(this.chunks[i], this.cards[i], other.chunks[j], other.cards[j], 0));
+                i++;
+                j++;
+            }
+        }
+        return out;
+    }
+
+    public IdBitmap or(IdBitmap other) {
+        IdBitmap out = new IdBitmap();
+        int i = 0;
+        int j = 0;
+        while (true) {
+            if (i >= this.size && j >= other.size) {
+                return out;
+            }
+            if (j >= other.size || (i < this.size && this.keys[i] < other.keys[j])) {
+                out.append(this.keys[i], copy(this.chunks[i]), this.cards[i]);
+                i++;
+            } else if (i >= this.size || other.keys[j] < this.keys[i]) {
+                out.append(other.keys[j], copy(other.chunks[j]), other.cards[j]);
+                j++;
+            } else {
+                out.appendResult(this.keys[i], combine(this.chunks[i], this.cards[i], other.chunks[j], other.cards[j], 1));
+                i++;
+                j++;
+            }
+        }
+    }
+
+    public IdBitmap andNot(IdBitmap other) {
+        IdBitmap out = new IdBitmap();
+        int j = 0;
+        for (int i = 0; i < this.size; i++) {
+            char key = this.keys[i];
+            while (j < other.size && other.keys[j] < key) {
+                j++;
+            }
+            if (j >= other.size || other.keys[j] != key) {
+                out.append(key, copy(this.chunks[i]), this.cards[i]);
+            } else {
+                out.appendResult(key, combine(this.chunks[i], this.cards[i], other.chunks[j], other.cards[j], 2));
+            }
+        }
+        return out;
+    }
+
+    /** Op 0 is AND, 1 is OR, 2 is AND NOT. Returns a chunk of either kind, or null if empty. */
+    private static Object combine(Object a, int cardA, Object b, int cardB, int op) {
+        if ((a instanceof long[]) || (b instanceof long[])) {
+            long[] left = a instanceof long[] ? (long[]) a : toWords((char[]) a, cardA);
+            long[] right = b instanceof long[] ? (long[]) b : toWords((char[]) b, cardB);
+            long[] words = a instanceof long[] ? (long[]) left.clone() : left;
+            for (int w = 0; w < WORDS; w++) {
+                if (op == 0) {
+                    words[w] = words[w] & right[w];
+                } else if (op == 1) {
+                    words[w] = words[w] | right[w];
+                } else {
+                    words[w] = words[w] & (~right[w]);
+                }
+            }
+            return words;
+        }
+        char[] left2 = (char[]) a;
+        char[] right2 = (char[]) b;
+        char[] out = new char[op == 1 ? cardA + cardB : cardA];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < cardA && j < cardB) {
+            char x = left2[i];
+            char y = right2[j];
+            if (x < y) {
+                if (op != 0) {
+                    out[n] = x;
+                    n++;
+                }
+                i++;
+            } else if (x > y) {
+                if (op == 1) {
+                    out[n] = y;
+                    n++;
+                }
+                j++;
+            } else {
+                if (op != 2) {
+                    out[n] = x;
+                    n++;
+                }
+                i++;
+                j++;
+            }
+        }
+        if (op != 0) {
+            while (i < cardA) {
+                out[n] = left2[i];
+                n++;
+                i++;
+            }
+        }
+        if (op == 1) {
+            while (j < cardB) {
+                out[n] = right2[j];
+                n++;
+                j++;
+            }
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    private void appendResult(char key, Object chunk) {
+        int card;
+        if (chunk instanceof char[]) {
+            card = ((char[]) chunk).length;
+            if (card > ARRAY_MAX) {
+                chunk = toWords((char[]) chunk, card);
+            }
+        } else {
+            card = 0;
+            for (long word : (long[]) chunk) {
+                card += Long.bitCount(word);
+            }
+            if (card <= ARRAY_MAX) {
+                chunk = toArray((long[]) chunk, card);
+            }
+        }
+        if (card > 0) {
+            append(key, chunk, card);
+        }
+    }
+
+    private void append(char key, Object chunk, int card) {
+        insertChunk(this.size, key, chunk, card);
+    }
+
+    private void insertChunk(int index, char key, Object chunk, int card) {
+        if (this.size == this.keys.length) {
+            int capacity = this.size << 1;
+            this.keys = Arrays.copyOf(this.keys, capacity);
+            this.chunks = Arrays.copyOf(this.chunks, capacity);
+            this.cards = Arrays.copyOf(this.cards, capacity);
+        }
+        int tail = this.size - index;
+        System.arraycopy(this.keys, index, this.keys, index + 1, tail);
+        System.arraycopy(this.chunks, index, this.chunks, index + 1, tail);
+        System.arraycopy(this.cards, index, this.cards, index + 1, tail);
+        this.keys[index] = key;
+        this.chunks[index] = chunk;
+        this.cards[index] = card;
+        this.size++;
+    }
+
+    private void setCard(int index, int card) {
+        if (card != 0) {
+            this.cards[index] = card;
+            return;
+        }
+        int tail = (this.size - index) - 1;
+        System.arraycopy(this.keys, index + 1, this.keys, index, tail);
+        System.arraycopy(this.chunks, index + 1, this.chunks, index, tail);
+        System.arraycopy(this.cards, index + 1, this.cards, index, tail);
+        this.size--;
+        this.chunks[this.size] = null;
+    }
+
+    private int indexOf(char key) {
+        return Arrays.binarySearch(this.keys, 0, this.size, key);
+    }
+
+    private static Object copy(Object chunk) {
+        return chunk instanceof char[] ? ((char[]) chunk).clone() : ((long[]) chunk).clone();
+    }
+
+    private static long[] toWords(char[] array, int card) {
+        long[] words = new long[WORDS];
+        for (int i = 0; i < card; i++) {
+            char low = array[i];
+            int i2 = low >>> 6;
+            words[i2] = words[i2] | (1L << low);
+        }
+        return words;
+    }
+
+    private static char[] toArray(long[] words, int card) {
+        char[] array = new char[card];
+        int n = 0;
+        for (int w = 0; w < WORDS; w++) {
+            long word = words[w];
+            while (word != 0) {
+                array[n] = (char) ((w << 6) + Long.numberOfTrailingZeros(word));
+                n++;
+                word &= word - 1;
+            }
+        }
+        return array;
+    }
+}
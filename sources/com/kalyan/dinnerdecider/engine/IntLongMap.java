@@ -0,0 +1,152 @@
+package com.kalyan.dinnerdecider.engine;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing int to long map laid out like {@link IntIntMap}, for per-food counters.
+ * Keys must be non-negative; absent keys read as 0.
+ */
+public final class IntLongMap {
+    private static final int EMPTY = -1;
+    private int[] keys;
+    private int mask;
+    private int size;
+    private long[] values;
+
+    public IntLongMap() {
+        this(16);
+    }
+
+    public IntLongMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(expected, 8) * 2 - 1) << 1;
+        this.keys = new int[capacity];
+        Arrays.fill(this.keys, EMPTY);
+        this.values = new long[capacity];
+        this.mask = capacity - 1;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public long get(int key) {
+        int slot = find(key);
+        if (slot >= 0) {
+            return this.values[slot];
+        }
+        return 0;
+    }
+
+    /** Adds {@code delta} to the value of {@code key} and returns the new value. */
+    public long increment(int key, long delta) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Negative key " + key);
+        }
+        int m = this.mask;
+        int slot = mix(key) & m;
+        while (true) {
+            int k = this.keys[slot];
+            if (k == EMPTY) {
+                this.keys[slot] = key;
+                this.values[slot] = delta;
+                int i = this.size + 1;
+                this.size = i;
+                if (i * 2 > this.keys.length) {
+                    rehash(this.keys.length << 1);
+                }
+                return delta;
+            } else if (k == key) {
+                long value = this.values[slot] + delta;
+                this.values[slot] = value;
+                return value;
+            } else {
+                slot = (slot + 1) & m;
+            }
+        }
+    }
+
+    public void remove(int key) {
+        int slot = find(key);
+        if (slot >= 0) {
+            int[] k = this.keys;
+            int m = this.mask;
+            int hole = slot;
+            int next = (hole + 1) & m;
+            while (true) {
+                int entry = k[next];
+                if (entry == EMPTY) {
+                    break;
+                }
+                int home = mix(entry) & m;
+                if (((next - home) & m) >= ((next - hole) & m)) {
+                    k[hole] = entry;
+                    this.values[hole] = this.values[next];
+                    hole = next;
+                }
+                next = (next + 1) & m;
+            }
+            k[hole] = EMPTY;
+            this.size--;
+        }
+    }
+
+    public void clear() {
+        if (this.size > 0) {
+            Arrays.fill(this.keys, EMPTY);
+            this.size = 0;
+        }
+    }
+
+    /** Copies the entries into {@code outKeys} and {@code outValues}, which must hold {@link #size()} items. */
+    public void copyTo(int[] outKeys, long[] outValues) {
+        int n = 0;
+        int[] k = this.keys;
+        for (int slot = 0; slot < k.length; slot++) {
+            if (k[slot] != EMPTY) {
+                outKeys[n] = k[slot];
+                outValues[n] = this.values[slot];
+                n++;
+            }
+        }
+    }
+
+    private int find(int key) {
+        int m = this.mask;
+        int slot = mix(key) & m;
+        while (true) {
+            int k = this.keys[slot];
+            if (k == key) {
+                return slot;
+            }
+            if (k == EMPTY) {
+                return -1;
+            }
+            slot = (slot + 1) & m;
+        }
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = this.keys;
+        long[] oldValues = this.values;
+        this.keys = new int[capacity];
+        Arrays.fill(this.keys, EMPTY);
+        this.values = new long[capacity];
+        this.mask = capacity - 1;
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            int key = oldKeys[slot];
+            if (key != EMPTY) {
+                int s = mix(key) & this.mask;
+                while (this.keys[s] != EMPTY) {
+                    s = (s + 1) & this.mask;
+                }
+                this.keys[s] = key;
+                this.values[s] = oldValues[slot];
+            }
+        }
+    }
+
+    private static int mix(int key) {
+        int h = key * -1640531527;
+        return h ^ (h >>> 16);
+    }
+}
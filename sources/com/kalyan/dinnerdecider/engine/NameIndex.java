@@ -0,0 +1,200 @@
+package com.kalyan.dinnerdecider.engine;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Hash index from normalized food names to catalog ids. Keys are NFKC-normalized,
+ * case-folded, trimmed and have inner whitespace collapsed, so "  pizza" and "PIZZA"
+ * land on the same entry. The normalized keys live in their own {@link FoodCatalog}
+ * arena under the same ids as the display names, which keeps lookups allocation-free
+ * and lets the index follow the catalog's swap-removals exactly.
+ */
+public final class NameIndex {
+    /** The longest display name kept; {@link #clean} cuts longer ones. */
+    public static final int MAX_NAME_LENGTH = 200;
+    private static final int MIN_SLOTS = 32;
+    private int[] hashes;
+    private final FoodCatalog keys = new FoodCatalog();
+    private int mask;
+    private int[] slots;
+
+    public NameIndex() {
+        this.slots = new int[MIN_SLOTS];
+        this.mask = MIN_SLOTS - 1;
+        this.hashes = new int[16];
+    }
+
+    public static String normalize(CharSequence name) {
+        String folded = Normalizer.normalize(name, Normalizer.Form.NFKC).toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT);
+        int length = folded.length();
+        StringBuilder out = new StringBuilder(length);
+        boolean space = false;
+        for (int i = 0; i < length; i++) {
+            char c = folded.charAt(i);
+            if (Character.isWhitespace(c) || Character.isSpaceChar(c)) {
+                space = out.length() > 0;
+            } else {
+                if (space) {
+                    out.append(' ');
+                    space = false;
+                }
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Trims and collapses whitespace without folding case, for storing display names, and
+     * cuts the result to {@link #MAX_NAME_LENGTH} characters.
+     */
+    public static String clean(CharSequence name) {
+        int length = name.length();
+        StringBuilder out = new StringBuilder(Math.min(length, MAX_NAME_LENGTH + 1));
+        boolean space = false;
+        for (int i = 0; i < length && out.length() < MAX_NAME_LENGTH; i++) {
+            char c = name.charAt(i);
+            if (Character.isWhitespace(c) || Character.isSpaceChar(c)) {
+                space = out.length() > 0;
+            } else {
+                if (space) {
+                    out.append(' ');
+                    space = false;
+                }
+                out.append(c);
+            }
+        }
+        if (out.length() == MAX_NAME_LENGTH && Character.isHighSurrogate(out.charAt(MAX_NAME_LENGTH - 1))) {
+            out.setLength(MAX_NAME_LENGTH - 1);
+        }
+        return out.toString();
+    }
+
+    public int size() {
+        return this.keys.size();
+    }
+
+    /** A copy of the normalized keys under their ids, for indexes built on other threads. */
+    public FoodCatalog copyKeys() {
+        return this.keys.copy();
+    }
+
+    /** Returns the id stored under the normalized {@code key}, or -1. */
+    public int find(CharSequence key) {
+        int hash = hash(key);
+        int[] table = this.slots;
+        int m = this.mask;
+        int slot = hash & m;
+        while (true) {
+            int entry = table[slot];
+            if (entry == 0) {
+                return -1;
+            }
+            int id = entry - 1;
+            if (this.hashes[id] == hash && this.keys.contentEquals(id, key)) {
+                return id;
+            }
+            slot = (slot + 1) & m;
+        }
+    }
+
+    /**
+     * Indexes the normalized {@code key} under the next catalog id. Callers check
+     * {@link #find} first; keys are not compared again here.
+     */
+    public int add(CharSequence key) {
+        int id = this.keys.add(key);
+        if (id == this.hashes.length) {
+            this.hashes = Arrays.copyOf(this.hashes, id << 1);
+        }
+        int hash = hash(key);
+        this.hashes[id] = hash;
+        if ((id + 1) * 2 > this.slots.length) {
+            resize(this.slots.length << 1);
+        } else {
+            insert(id, hash);
+        }
+        return id;
+    }
+
+    /** Mirrors {@link FoodCatalog#removeSwap(int)} for the same id. */
+    public void removeSwap(int id) {
+        int slot = slotOf(id);
+        deleteSlot(slot);
+        int last = this.keys.size() - 1;
+        if (id != last) {
+            this.slots[slotOf(last)] = id + 1;
+            this.hashes[id] = this.hashes[last];
+        }
+        this.keys.removeSwap(id);
+    }
+
+    /** Indexes {@code id} under the normalized {@code key} instead of its current one. */
+    public void rename(int id, CharSequence key) {
+        deleteSlot(slotOf(id));
+        this.keys.set(id, key);
+        int hash = hash(key);
+        this.hashes[id] = hash;
+        insert(id, hash);
+    }
+
+    private int slotOf(int id) {
+        int m = this.mask;
+        int slot = this.hashes[id] & m;
+        while (this.slots[slot] != id + 1) {
+            slot = (slot + 1) & m;
+        }
+        return slot;
+    }
+
+    private void deleteSlot(int slot) {
+        int[] table = this.slots;
+        int m = this.mask;
+        int hole = slot;
+        int next = (hole + 1) & m;
+        while (true) {
+            int entry = table[next];
+            if (entry == 0) {
+                table[hole] = 0;
+                return;
+            }
+            int home = this.hashes[entry - 1] & m;
+            if (((next - home) & m) >= ((next - hole) & m)) {
+                table[hole] = entry;
+                hole = next;
+            }
+            next = (next + 1) & m;
+        }
+    }
+
+    private void insert(int id, int hash) {
+        int[] table = this.slots;
+        int m = this.mask;
+        int slot = hash & m;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & m;
+        }
+        table[slot] = id + 1;
+    }
+
+    private void resize(int capacity) {
+        this.slots = new int[capacity];
+        this.mask = capacity - 1;
+        int size = this.keys.size();
+        for (int id = 0; id < size; id++) {
+            insert(id, this.hashes[id]);
+        }
+    }
+
+    private static int hash(CharSequence key) {
+        int h = 0;
+        int length = key.length();
+        for (int i = 0; i < length; i++) {
+            h = (h * 31) + key.charAt(i);
+        }
+        int h2 = h * -1640531527;
+        return h2 ^ (h2 >>> 16);
+    }
+}
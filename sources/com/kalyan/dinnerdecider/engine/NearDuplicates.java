@@ -0,0 +1,556 @@
+package com.kalyan.dinnerdecider.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Approximate name matching for catching typos and plurals such as "Taco" and "Tacos".
+ * A normalized key of length n is summarized by its two end regions of
+ * L = min(n / 2, {@link #REGION_CHARS}) characters: each region, and each variant of it
+ * with one character deleted, is hashed into a signature tagged with its end and L.
+ *
+ * <p>Take two keys within two insertions, deletions, substitutions or transpositions of
+ * each other, and the L of either one. Its regions do not overlap, so at most one of
+ * them holds both edits. The other region is then either equal in both keys or off by
+ * one edit, and one-edit strings always share a one-deletion variant. Edits between the
+ * regions touch neither, so the whole key is covered, however long. A key is indexed
+ * under its own L only, and a lookup probes the L of every length within two of its
+ * own; candidates are then confirmed with a bounded optimal-string-alignment distance.
+ * Signatures held by more than {@link #COMMON_SIGNATURE} foods, such as the "food" that
+ * starts every name in a catalog of "Food 1" to "Food 99999", say nothing and are
+ * skipped, so a pair that only shares one of those is missed.
+ *
+ * <p>An instance is the index for checks at add time. {@link #update} brings it to a new
+ * catalog version in time proportional to the edits between the two: a food added to a
+ * large catalog costs a few inserts into a small sorted buffer, which is merged into the
+ * main sorted array once it fills. It holds the keys and at most
+ * 2 * ({@link #REGION_CHARS} + 1) signatures per food, one long each. {@link #scan} finds
+ * every group of near duplicates in a catalog within a fixed signature budget by sorting
+ * one hash partition at a time.
+ */
+public final class NearDuplicates {
+    /** Foods sharing a signature beyond which it is not used to find candidates. */
+    private static final int COMMON_SIGNATURE = 256;
+    private static final int MIN_LENGTH = 4;
+    /** Postings buffered, sorted, before a merge into the main array. */
+    private static final int PENDING_CAPACITY = 16384;
+    /** Room for the probe signatures of one key: three region lengths, two ends each. */
+    private static final int PROBE_SIGNATURES = 3 * 2 * (NearDuplicates.REGION_CHARS + 1);
+    private static final int REGION_CHARS = 6;
+    private static final long REMOVED = 0xffffffffL;
+    private int deadPostings;
+    private PersistentVector<CatalogEntry> entries = PersistentVector.empty();
+    private final FoodCatalog keys = new FoodCatalog();
+    private final long[] pending = new long[PENDING_CAPACITY];
+    private int pendingCount;
+    private int postingCount;
+    private long[] postings = new long[0];
+    private final int[] scratch = new int[PROBE_SIGNATURES];
+
+    /**
+     * Brings the index from the version it holds to {@code target}: renamed rows are
+     * re-signed, trailing rows dropped and new ones appended. Call from one thread at a
+     * time; {@link #find} may run meanwhile. Appending more rows than the buffer holds, as
+     * on load or import, signs and merges them outside the lock and swaps the result in.
+     */
+    public void update(PersistentVector<CatalogEntry> target) {
+        int from;
+        synchronized (this) {
+            PersistentVector<CatalogEntry> previous = this.entries;
+            if (previous == target) {
+                return;
+            }
+            PersistentVector.diff(previous, target, (id, before, after) -> {
+                if (!before.getName().equals(after.getName())) {
+                    String key = NameIndex.normalize(after.getName());
+                    if (!this.keys.contentEquals(id, key)) {
+                        unindex(id);
+                        this.keys.set(id, key);
+                        index(id);
+                    }
+                }
+            });
+            while (this.keys.size() > target.size()) {
+                int last = this.keys.size() - 1;
+                unindex(last);
+                this.keys.removeSwap(last);
+            }
+            from = this.keys.size();
+            if ((target.size() - from) * 2 * (REGION_CHARS + 1) <= PENDING_CAPACITY) {
+                for (int id = from; id < target.size(); id++) {
+                    this.keys.add(NameIndex.normalize(target.get(id).getName()));
+                    index(id);
+                }
+                this.entries = target;
+                return;
+            }
+        }
+        int size = target.size();
+        String[] added = new String[size - from];
+        long[] signed = new long[16];
+        int count = 0;
+        int[] scratch2 = new int[PROBE_SIGNATURES];
+        for (int id2 = from; id2 < size; id2++) {
+            String key2 = NameIndex.normalize(target.get(id2).getName());
+            added[id2 - from] = key2;
+            int signatures = ownSignatures(key2, scratch2);
+            if (count + signatures > signed.length) {
+                signed = Arrays.copyOf(signed, Math.max(count + signatures, count * 2));
+            }
+            for (int i = 0; i < signatures; i++) {
+                signed[count] = (((long) scratch2[i]) << 32) | ((long) id2);
+                count++;
+            }
+        }
+        Arrays.sort(signed, 0, count);
+        // Only this thread changes the postings, so they can be read without the lock.
+        long[] merged = merge(this.postings, this.postingCount, this.pending, this.pendingCount, signed, count);
+        synchronized (this) {
+            for (String key3 : added) {
+                this.keys.add(key3);
+            }
+            this.postings = merged;
+            this.postingCount = merged.length;
+            this.deadPostings = 0;
+            this.pendingCount = 0;
+            this.entries = target;
+        }
+    }
+
+    /**
+     * Returns the display names within the typo threshold of {@code name}, closest first,
+     * excluding exact matches of its normalized form.
+     */
+    public synchronized String[] find(CharSequence name, int limit) {
+        String key = NameIndex.normalize(name);
+        int max = threshold(key.length());
+        if (max == 0) {
+            return new String[0];
+        }
+        int[] probes = this.scratch;
+        int signatures = probeSignatures(key, probes);
+        IntIntMap found = new IntIntMap(-1);
+        for (int i = 0; i < signatures; i++) {
+            int hash = probes[i];
+            int start = lowerBound(this.postings, this.postingCount, hash);
+            int end = upperBound(this.postings, this.postingCount, hash, start);
+            int start2 = lowerBound(this.pending, this.pendingCount, hash);
+            int end2 = upperBound(this.pending, this.pendingCount, hash, start2);
+            if ((end - start) + (end2 - start2) <= COMMON_SIGNATURE) {
+                collect(this.postings, start, end, key, max, found);
+                collect(this.pending, start2, end2, key, max, found);
+            }
+        }
+        int[] ids = new int[found.size()];
+        int[] distances = new int[found.size()];
+        found.copyTo(ids, distances);
+        long[] ranked = new long[ids.length];
+        int count = 0;
+        for (int i2 = 0; i2 < ids.length; i2++) {
+            int d = distances[i2];
+            if (d > 0) {
+                ranked[count] = (((long) d) << 32) | ((long) ids[i2]);
+                count++;
+            }
+        }
+        Arrays.sort(ranked, 0, count);
+        String[] out = new String[Math.min(count, limit)];
+        for (int i3 = 0; i3 < out.length; i3++) {
+            out[i3] = this.entries.get((int) ranked[i3]).getName();
+        }
+        return out;
+    }
+
+    /** Records in {@code found} the distance of each new candidate in {@code postings2[start, end)}, or 0 past its threshold. */
+    private void collect(long[] postings2, int start, int end, String key, int max, IntIntMap found) {
+        for (int i = start; i < end; i++) {
+            int id = (int) postings2[i];
+            if (id >= 0 && !found.containsKey(id)) {
+                int pairMax = Math.min(max, threshold(this.keys.length(id)));
+                int d = distance(this.keys, id, key, pairMax);
+                found.put(id, d <= pairMax ? d : 0);
+            }
+        }
+    }
+
+    /**
+     * Groups every set of near-duplicate names in a catalog version, working through at
+     * most {@code budget} signatures at a time. Each group lists ids in ascending order.
+     */
+    public static int[][] scan(PersistentVector<CatalogEntry> entries2, int budget) {
+        FoodCatalog keys2 = normalizeAll(entries2);
+        int n = keys2.size();
+        long total = 0;
+        for (int id = 0; id < n; id++) {
+            total += (long) probeCount(keys2.length(id));
+        }
+        int partitions = (int) Math.max(1, ((total + ((long) budget)) - 1) / ((long) budget));
+        int[] parent = new int[n];
+        for (int i = 0; i < n; i++) {
+            parent[i] = i;
+        }
+        int[] scratch2 = new int[PROBE_SIGNATURES];
+        long[] pairs = new long[(int) Math.min(total, (long) (budget + (budget >> 2)))];
+        for (int partition = 0; partition < partitions; partition++) {
+            int count = 0;
+            for (int id2 = 0; id2 < n; id2++) {
+                // Probe signatures include the key's own, so every pair meets under the L
+                // of one of its keys.
+                int signatures = probeSignatures(keys2.name(id2), scratch2);
+                for (int i2 = 0; i2 < signatures; i2++) {
+                    int hash = scratch2[i2];
+                    if (Integer.remainderUnsigned(hash, partitions) == partition) {
+                        if (count == pairs.length) {
+                            pairs = Arrays.copyOf(pairs, Math.max(16, count * 2));
+                        }
+                        pairs[count] = (((long) hash) << 32) | ((long) id2);
+                        count++;
+                    }
+                }
+            }
+            Arrays.sort(pairs, 0, count);
+            int start = 0;
+            while (start < count) {
+                int end = start + 1;
+                while (end < count && (pairs[end] >> 32) == (pairs[start] >> 32)) {
+                    end++;
+                }
+                if (end - start <= COMMON_SIGNATURE) {
+                    for (int a = start; a < end; a++) {
+                        for (int b = a + 1; b < end; b++) {
+                            union(parent, keys2, (int) pairs[a], (int) pairs[b]);
+                        }
+                    }
+                }
+                start = end;
+            }
+        }
+        return groups(parent);
+    }
+
+    /** The largest edit distance still treated as a typo for a key of {@code length}. */
+    static int threshold(int length) {
+        if (length < MIN_LENGTH) {
+            return 0;
+        }
+        return length <= 7 ? 1 : 2;
+    }
+
+    /**
+     * Optimal-string-alignment distance between key {@code id} and {@code text}, or
+     * {@code max + 1} once it is known to exceed {@code max}.
+     */
+    static int distance(FoodCatalog keys2, int id, CharSequence text, int max) {
+        int m = keys2.length(id);
+        int n = text.length();
+        if (Math.abs(m - n) > max) {
+            return max + 1;
+        }
+        int[] previous2 = new int[n + 1];
+        int[] previous = new int[n + 1];
+        int[] current = new int[n + 1];
+        for (int j = 0; j <= n; j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= m; i++) {
+            current[0] = i;
+            int rowMin = i;
+            char a = keys2.charAt(id, i - 1);
+            for (int j2 = 1; j2 <= n; j2++) {
+                char b = text.charAt(j2 - 1);
+                int cost = a == b ? 0 : 1;
+                int d = Math.min(Math.min(previous[j2] + 1, current[j2 - 1] + 1), previous[j2 - 1] + cost);
+                if (i > 1 && j2 > 1 && a == text.charAt(j2 - 2) && keys2.charAt(id, i - 2) == b) {
+                    d = Math.min(d, previous2[j2 - 2] + 1);
+                }
+                current[j2] = d;
+                rowMin = Math.min(rowMin, d);
+            }
+            if (rowMin > max) {
+                return max + 1;
+            }
+            int[] recycled = previous2;
+            previous2 = previous;
+            previous = current;
+            current = recycled;
+        }
+        return Math.min(previous[n], max + 1);
+    }
+
+    private void index(int id) {
+        int signatures = ownSignatures(this.keys.name(id), this.scratch);
+        for (int i = 0; i < signatures; i++) {
+            if (this.pendingCount == PENDING_CAPACITY) {
+                flushPending();
+            }
+            long posting = (((long) this.scratch[i]) << 32) | ((long) id);
+            int at = -1 - Arrays.binarySearch(this.pending, 0, this.pendingCount, posting);
+            System.arraycopy(this.pending, at, this.pending, at + 1, this.pendingCount - at);
+            this.pending[at] = posting;
+            this.pendingCount++;
+        }
+    }
+
+    /**
+     * Drops the postings of {@code id}: out of the buffer, or marked removed in the main
+     * array until the next merge, which keeps its signatures sorted.
+     */
+    private void unindex(int id) {
+        int signatures = ownSignatures(this.keys.name(id), this.scratch);
+        for (int i = 0; i < signatures; i++) {
+            int hash = this.scratch[i];
+            long posting = (((long) hash) << 32) | ((long) id);
+            int at = Arrays.binarySearch(this.pending, 0, this.pendingCount, posting);
+            if (at >= 0) {
+                System.arraycopy(this.pending, at + 1, this.pending, at, (this.pendingCount - at) - 1);
+                this.pendingCount--;
+            } else {
+                int start = lowerBound(this.postings, this.postingCount, hash);
+                int end = upperBound(this.postings, this.postingCount, hash, start);
+                for (int i2 = start; i2 < end; i2++) {
+                    if (this.postings[i2] == posting) {
+                        this.postings[i2] = posting | REMOVED;
+                        this.deadPostings++;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    private void flushPending() {
+        this.postings = merge(this.postings, this.postingCount, this.pending, this.pendingCount, new long[0], 0);
+        this.postingCount = this.postings.length;
+        this.deadPostings = 0;
+        this.pendingCount = 0;
+    }
+
+    /** Merges three sorted runs into a new array, leaving out removed postings. */
+    private static long[] merge(long[] a, int aCount, long[] b, int bCount, long[] c, int cCount) {
+        long[] out = new long[countLive(a, aCount) + bCount + cCount];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        int n = 0;
+        while (n < out.length) {
+            if (i < aCount && ((int) a[i]) == -1) {
+                i++;
+            } else {
+                long next = Long.MAX_VALUE;
+                int run = -1;
+                if (i < aCount) {
+                    next = a[i];
+                    run = 0;
+                }
+                if (j < bCount && (run < 0 || b[j] < next)) {
+                    next = b[j];
+                    run = 1;
+                }
+                if (k < cCount && (run < 0 || c[k] < next)) {
+                    next = c[k];
+                    run = 2;
+                }
+                if (run == 0) {
+                    i++;
+                } else if (run == 1) {
+                    j++;
+                } else {
+                    k++;
+                }
+                out[n] = next;
+                n++;
+            }
+        }
+        return out;
+    }
+
+    private static int countLive(long[] values, int count) {
+        int live = 0;
+        for (int i = 0; i < count; i++) {
+            if (((int) values[i]) != -1) {
+                live++;
+            }
+        }
+        return live;
+    }
+
+    /** The first index in {@code values[0, count)} whose signature is at least {@code hash}. */
+    private static int lowerBound(long[] values, int count, int hash) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (((int) (values[mid] >> 32)) < hash) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /** The first index from {@code start} whose signature is past {@code hash}. */
+    private static int upperBound(long[] values, int count, int hash, int start) {
+        int low = start;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (((int) (values[mid] >> 32)) <= hash) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static void union(int[] parent, FoodCatalog keys2, int a, int b) {
+        int rootA = root(parent, a);
+        int rootB = root(parent, b);
+        if (rootA != rootB) {
+            String key = keys2.name(b);
+            int max = Math.min(threshold(keys2.length(a)), threshold(key.length()));
+            if (distance(keys2, a, key, max) <= max) {
+                parent[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+            }
+        }
+    }
+
+    private static int root(int[] parent, int id) {
+        int root = id;
+        while (parent[root] != root) {
+            root = parent[root];
+        }
+        while (parent[id] != root) {
+            int next = parent[id];
+            parent[id] = root;
+            id = next;
+        }
+        return root;
+    }
+
+    private static int[][] groups(int[] parent) {
+        int n = parent.length;
+        int[] sizes = new int[n];
+        for (int id = 0; id < n; id++) {
+            int root = root(parent, id);
+            sizes[root] = sizes[root] + 1;
+        }
+        ArrayList<int[]> out = new ArrayList<>();
+        IntIntMap slots = new IntIntMap(-1);
+        int[] fill = new int[n];
+        for (int id2 = 0; id2 < n; id2++) {
+            int root2 = parent[id2];
+            if (sizes[root2] > 1) {
+                int slot = slots.get(root2);
+                if (slot < 0) {
+                    slot = out.size();
+                    slots.put(root2, slot);
+                    out.add(new int[sizes[root2]]);
+                }
+                int[] group = out.get(slot);
+                group[fill[slot]] = id2;
+                fill[slot] = fill[slot] + 1;
+            }
+        }
+        return (int[][]) out.toArray(new int[out.size()][]);
+    }
+
+    private static FoodCatalog normalizeAll(PersistentVector<CatalogEntry> entries2) {
+        int n = entries2.size();
+        FoodCatalog keys2 = new FoodCatalog(n);
+        for (int id = 0; id < n; id++) {
+            keys2.add(NameIndex.normalize(entries2.get(id).getName()));
+        }
+        return keys2;
+    }
+
+    /** The region length a key of {@code length} is indexed under, or 0 if it is too short to index. */
+    private static int regionChars(int length) {
+        if (length < MIN_LENGTH) {
+            return 0;
+        }
+        return Math.min(length / 2, REGION_CHARS);
+    }
+
+    /** An upper bound on {@link #probeSignatures} for a key of {@code length}. */
+    private static int probeCount(int length) {
+        if (length < MIN_LENGTH) {
+            return 0;
+        }
+        int count = 0;
+        int last = 0;
+        for (int other = length - 2; other <= length + 2; other++) {
+            int l = regionChars(other);
+            if (l > 0 && l != last) {
+                count += 2 * (l + 1);
+                last = l;
+            }
+        }
+        return count;
+    }
+
+    /** Writes the signatures {@code key} is indexed under, sorted and distinct, into {@code out}. */
+    private static int ownSignatures(CharSequence key, int[] out) {
+        return distinct(out, signatures(key, regionChars(key.length()), out, 0));
+    }
+
+    /**
+     * Writes the signatures a lookup for {@code key} probes, sorted and distinct, into
+     * {@code out}: those of every region length a key within two characters of its length
+     * is indexed under. Returns how many.
+     */
+    private static int probeSignatures(CharSequence key, int[] out) {
+        int length = key.length();
+        if (length < MIN_LENGTH) {
+            return 0;
+        }
+        int count = 0;
+        int last = 0;
+        for (int other = length - 2; other <= length + 2; other++) {
+            int l = regionChars(other);
+            if (l > 0 && l != last) {
+                count = signatures(key, l, out, count);
+                last = l;
+            }
+        }
+        return distinct(out, count);
+    }
+
+    /**
+     * Appends to {@code out} at {@code at} the signatures of {@code key} for end regions of
+     * {@code l} characters, and returns the new end. Each end yields its region's hash and
+     * one per single-character deletion.
+     */
+    private static int signatures(CharSequence key, int l, int[] out, int at) {
+        int length = key.length();
+        for (int end = 0; end < 2; end++) {
+            int offset = end == 0 ? 0 : length - l;
+            for (int skip = -1; skip < l; skip++) {
+                int hash = 0;
+                for (int i = 0; i < l; i++) {
+                    if (i != skip) {
+                        hash = (hash * 31) + key.charAt(offset + i);
+                    }
+                }
+                long tag = (((long) l) << 2) | ((long) (end << 1)) | (skip < 0 ? 0L : 1L);
+                out[at] = (int) DecisionRandom.mix64((((long) hash) << 32) ^ tag);
+                at++;
+            }
+        }
+        return at;
+    }
+
+    /** Sorts {@code values[0, count)} and drops repeats, returning the new count. */
+    private static int distinct(int[] values, int count) {
+        Arrays.sort(values, 0, count);
+        int out = 0;
+        for (int i = 0; i < count; i++) {
+            if (out == 0 || values[out - 1] != values[i]) {
+                values[out] = values[i];
+                out++;
+            }
+        }
+        return out;
+    }
+}
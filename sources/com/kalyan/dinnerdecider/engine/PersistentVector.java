@@ -0,0 +1,261 @@
+package com.kalyan.dinnerdecider.engine;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Immutable vector with structural sharing: a 32-way trie of full leaves plus a tail of
+ * up to 32 elements. {@link #append}, {@link #set} and {@link #pop} copy only the path to
+ * the slot they change, O(log32 n) arrays, and share everything else with the vector they
+ * were called on. Holding on to an old version therefore costs memory in proportion to
+ * what changed since, and {@link #diff} finds those changes without visiting the subtrees
+ * two versions share.
+ *
+ * <p>Instances are safe to read from any thread.
+ */
+public final class PersistentVector<E> {
+    private static final int BITS = 5;
+    private static final PersistentVector<Object> EMPTY = new PersistentVector<>(0, BITS, new Object[32], new Object[0]);
+    private static final int MASK = 31;
+    private static final int WIDTH = 32;
+    private final Object[] root;
+    private final int shift;
+    private final int size;
+    private final Object[] tail;
+
+    private PersistentVector(int size2, int shift2, Object[] root2, Object[] tail2) {
+        this.size = size2;
+        this.shift = shift2;
+        this.root = root2;
+        this.tail = tail2;
+    }
+
+    private static final class ListView<E> extends AbstractList<E> implements RandomAccess {
+        private final PersistentVector<E> vector;
+
+        ListView(PersistentVector<E> vector2) {
+            this.vector = vector2;
+        }
+
+        public E get(int index) {
+            return this.vector.get(index);
+        }
+
+        public int size() {
+            return this.vector.size();
+        }
+    }
+
+    /** Receives the indices at which two versions hold different elements. */
+    public interface DiffVisitor<E> {
+        void changed(int index, E from, E to);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentVector<E> empty() {
+        return (PersistentVector<E>) EMPTY;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        checkIndex(index);
+        return (E) leafFor(index)[index & MASK];
+    }
+
+    /** Returns a read-only {@link List} view of this version, for APIs that take lists; nothing is copied. */
+    public List<E> asList() {
+        return new ListView<>(this);
+    }
+
+    public PersistentVector<E> append(E element) {
+        int n = this.size;
+        if (n - tailOffset() < WIDTH) {
+            Object[] tail2 = Arrays.copyOf(this.tail, this.tail.length + 1);
+            tail2[this.tail.length] = element;
+            return new PersistentVector<>(n + 1, this.shift, this.root, tail2);
+        }
+        Object[] root2;
+        int shift2 = this.shift;
+        if ((n >>> BITS) > (1 << this.shift)) {
+            root2 = new Object[WIDTH];
+            root2[0] = this.root;
+            root2[1] = newPath(this.shift, this.tail);
+            shift2 += BITS;
+        } else {
+            root2 = pushTail(this.shift, this.root, this.tail);
+        }
+        return new PersistentVector<>(n + 1, shift2, root2, new Object[]{element});
+    }
+
+    public PersistentVector<E> set(int index, E element) {
+        checkIndex(index);
+        if (index >= tailOffset()) {
+            Object[] tail2 = (Object[]) this.tail.clone();
+            tail2[index & MASK] = element;
+            return new PersistentVector<>(this.size, this.shift, this.root, tail2);
+        }
+        return new PersistentVector<>(this.size, this.shift, setIn(this.shift, this.root, index, element), this.tail);
+    }
+
+    /** Returns this vector without its last element. */
+    public PersistentVector<E> pop() {
+        int n = this.size;
+        if (n == 0) {
+            throw new IllegalStateException("Cannot pop an empty vector.");
+        }
+        if (n == 1) {
+            return empty();
+        }
+        if (n - tailOffset() > 1) {
+            return new PersistentVector<>(n - 1, this.shift, this.root, Arrays.copyOf(this.tail, this.tail.length - 1));
+        }
+        Object[] tail2 = leafFor(n - 2);
+        Object[] root2 = popTail(this.shift, this.root);
+        int shift2 = this.shift;
+        if (root2 == null) {
+            root2 = new Object[WIDTH];
+        }
+        if (shift2 > BITS && root2[1] == null) {
+            root2 = (Object[]) root2[0];
+            shift2 -= BITS;
+        }
+        return new PersistentVector<>(n - 1, shift2, root2, tail2);
+    }
+
+    /**
+     * Reports every index below both sizes at which {@code from} and {@code to} hold
+     * different elements by identity, in ascending order. Subtrees the two versions share
+     * are skipped, so the cost follows the number of changes rather than the size.
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> void diff(PersistentVector<E> from, PersistentVector<E> to, DiffVisitor<? super E> visitor) {
+        if (from == to) {
+            return;
+        }
+        int end = Math.min(from.tailOffset(), to.tailOffset());
+        if (end > 0) {
+            Object[] a = from.root;
+            Object[] b = to.root;
+            int level = Math.min(from.shift, to.shift);
+            for (int s = from.shift; s > level; s -= BITS) {
+                a = (Object[]) a[0];
+            }
+            for (int s2 = to.shift; s2 > level; s2 -= BITS) {
+                b = (Object[]) b[0];
+            }
+            diffNodes(a, b, level, 0, end, visitor);
+        }
+        int limit = Math.min(from.size, to.size);
+        for (int i = end; i < limit; i++) {
+            Object x = from.leafFor(i)[i & MASK];
+            Object y = to.leafFor(i)[i & MASK];
+            if (x != y) {
+                visitor.changed(i, (E) x, (E) y);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> void diffNodes(Object[] a, Object[] b, int level, int base, int end, DiffVisitor<? super E> visitor) {
+        if (a == b) {
+            return;
+        }
+        if (level == 0) {
+            int stop = Math.min(WIDTH, end - base);
+            for (int j = 0; j < stop; j++) {
+                if (a[j] != b[j]) {
+                    visitor.changed(base + j, (E) a[j], (E) b[j]);
+                }
+            }
+            return;
+        }
+        for (int j2 = 0; j2 < WIDTH; j2++) {
+            int childBase = base + (j2 << level);
+            if (childBase >= end) {
+                return;
+            }
+            diffNodes((Object[]) a[j2], (Object[]) b[j2], level - BITS, childBase, end, visitor);
+        }
+    }
+
+    private int tailOffset() {
+        if (this.size < WIDTH) {
+            return 0;
+        }
+        return ((this.size - 1) >>> BITS) << BITS;
+    }
+
+    private Object[] leafFor(int index) {
+        if (index >= tailOffset()) {
+            return this.tail;
+        }
+        Object[] node = this.root;
+        for (int level = this.shift; level > 0; level -= BITS) {
+            node = (Object[]) node[(index >>> level) & MASK];
+        }
+        return node;
+    }
+
+    private Object[] pushTail(int level, Object[] parent, Object[] leaf) {
+        int slot = ((this.size - 1) >>> level) & MASK;
+        Object[] copy = (Object[]) parent.clone();
+        if (level == BITS) {
+            copy[slot] = leaf;
+        } else {
+            Object[] child = (Object[]) parent[slot];
+            copy[slot] = child != null ? pushTail(level - BITS, child, leaf) : newPath(level - BITS, leaf);
+        }
+        return copy;
+    }
+
+    private Object[] popTail(int level, Object[] node) {
+        int slot = ((this.size - 2) >>> level) & MASK;
+        if (level > BITS) {
+            Object[] child = popTail(level - BITS, (Object[]) node[slot]);
+            if (child == null && slot == 0) {
+                return null;
+            }
+            Object[] copy = (Object[]) node.clone();
+            copy[slot] = child;
+            return copy;
+        } else if (slot == 0) {
+            return null;
+        } else {
+            Object[] copy2 = (Object[]) node.clone();
+            copy2[slot] = null;
+            return copy2;
+        }
+    }
+
+    private static Object[] newPath(int level, Object[] leaf) {
+        if (level == 0) {
+            return leaf;
+        }
+        Object[] node = new Object[WIDTH];
+        node[0] = newPath(level - BITS, leaf);
+        return node;
+    }
+
+    private static Object[] setIn(int level, Object[] node, int index, Object element) {
+        Object[] copy = (Object[]) node.clone();
+        if (level == 0) {
+            copy[index & MASK] = element;
+        } else {
+            int slot = (index >>> level) & MASK;
+            copy[slot] = setIn(level - BITS, (Object[]) node[slot], index, element);
+        }
+        return copy;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= this.size) {
+            throw new IndexOutOfBoundsException("index=" + index + ", size=" + this.size);
+        }
+    }
+}
@@ -0,0 +1,576 @@
+package com.kalyan.dinnerdecider.engine;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * Prefix index over normalized food names for autocomplete. Most keys sit in a sorted
+ * run, front-coded in blocks of {@link #BLOCK}: each block starts with a full key and
+ * every following key stores only the length of the prefix it shares with its
+ * predecessor plus the differing suffix, all in one {@code char[]}. A prefix maps to a
+ * contiguous range of the run, found by binary search over block heads, and a max
+ * segment tree over the popularity of each position yields the top k of that range in
+ * O(k log n) without visiting the rest of it.
+ *
+ * <p>{@link #update} follows the catalog the way {@link NearDuplicates#update} does, in
+ * time proportional to the edits: a renamed or removed food leaves a dead position in the
+ * run, and new keys go into a small sorted buffer that queries scan next to the run.
+ * Once the buffer fills, or on a large append, it is merged with the live part of the
+ * run; only the new keys are sorted, as packed (char, id) longs one character at a time.
+ * Keys are normalized once, when a food is added or renamed, or taken from a copy of the
+ * engine's {@link NameIndex} when the index is first built.
+ *
+ * <p>Popularity is how often each food was decided, as counted by {@link DecisionStats}.
+ *
+ * <p>{@link #update} belongs on one thread at a time; {@link #top} may run on any other
+ * meanwhile.
+ */
+public final class PrefixIndex {
+    private static final int BLOCK = 16;
+    private static final int BLOCK_SHIFT = 4;
+    /** Keys buffered, sorted, before a merge into the run. */
+    private static final int PENDING_CAPACITY = 4096;
+    private int[] blockStarts = new int[0];
+    private char[] data = new char[0];
+    private int dead;
+    private PersistentVector<CatalogEntry> entries = PersistentVector.empty();
+    /** Run position to id, or -1 once the food at that position was removed or renamed. */
+    private int[] ids = new int[0];
+    private final FoodCatalog keys;
+    private final int[] pending = new int[PENDING_CAPACITY];
+    private int pendingCount;
+    private int[] popularity = new int[16];
+    /** Id to run position, or -1 for an id in the buffer. */
+    private int[] positions = new int[16];
+    private int[] scored = new int[0];
+    private int size;
+    private int[] tree = new int[2];
+
+    /** The sorted run and its tree, built off the lock before they replace the current ones. */
+    private static final class Run {
+        int[] blockStarts;
+        char[] data;
+        int[] ids;
+        int[] tree;
+    }
+
+    public PrefixIndex() {
+        this.keys = new FoodCatalog();
+    }
+
+    /**
+     * An index over {@code entries2} whose normalized keys are already in {@code keys2}
+     * under the same ids, as in {@link NameIndex#copyKeys}. The index keeps {@code keys2}.
+     */
+    public PrefixIndex(PersistentVector<CatalogEntry> entries2, FoodCatalog keys2) {
+        this.keys = keys2;
+        this.entries = entries2;
+        int n = keys2.size();
+        int[] order = new int[n];
+        for (int id = 0; id < n; id++) {
+            order[id] = id;
+        }
+        sortByKey(keys2, order, 0, n, 0, new long[n]);
+        ensureCapacity(n);
+        install(buildRun(order, n));
+    }
+
+    /** The number of foods indexed. */
+    public synchronized int size() {
+        return (this.size - this.dead) + this.pendingCount;
+    }
+
+    /**
+     * Brings the index to {@code target} and ranks each food {@code decided[i]} by its
+     * {@code counts[i]} decisions, for i below {@code count}; other foods rank as never
+     * decided.
+     */
+    public void update(PersistentVector<CatalogEntry> target, int[] decided, long[] counts, int count) {
+        int[] fresh = new int[16];
+        int freshCount = 0;
+        boolean merge;
+        synchronized (this) {
+            PersistentVector<CatalogEntry> previous = this.entries;
+            if (previous != target) {
+                int[][] renamed = {new int[16]};
+                int[] renamedCount = {0};
+                PersistentVector.diff(previous, target, (id, before, after) -> {
+                    if (!before.getName().equals(after.getName())) {
+                        String key = NameIndex.normalize(after.getName());
+                        if (!this.keys.contentEquals(id, key)) {
+                            unindex(id);
+                            this.keys.set(id, key);
+                            if (renamedCount[0] == renamed[0].length) {
+                                renamed[0] = Arrays.copyOf(renamed[0], renamedCount[0] << 1);
+                            }
+                            renamed[0][renamedCount[0]] = id;
+                            renamedCount[0]++;
+                        }
+                    }
+                });
+                fresh = renamed[0];
+                freshCount = renamedCount[0];
+                while (this.keys.size() > target.size()) {
+                    int last = this.keys.size() - 1;
+                    unindex(last);
+                    this.keys.removeSwap(last);
+                }
+                int size2 = target.size();
+                ensureCapacity(size2);
+                for (int id2 = this.keys.size(); id2 < size2; id2++) {
+                    this.keys.add(NameIndex.normalize(target.get(id2).getName()));
+                    this.positions[id2] = -1;
+                    this.popularity[id2] = 0;
+                    if (freshCount == fresh.length) {
+                        fresh = Arrays.copyOf(fresh, freshCount << 1);
+                    }
+                    fresh[freshCount] = id2;
+                    freshCount++;
+                }
+                this.entries = target;
+            }
+            rank(decided, counts, count);
+            merge = this.pendingCount + freshCount > PENDING_CAPACITY || this.dead > (this.size >> 1);
+            if (!merge) {
+                for (int i = 0; i < freshCount; i++) {
+                    insertPending(fresh[i]);
+                }
+                return;
+            }
+        }
+        // Only this thread changes the run, the buffer and the keys, so they can be read
+        // without the lock while queries keep using the current run.
+        sortByKey(this.keys, fresh, 0, freshCount, 0, new long[freshCount]);
+        int[] live = new int[this.size - this.dead];
+        int liveCount = 0;
+        for (int position = 0; position < this.size; position++) {
+            if (this.ids[position] >= 0) {
+                live[liveCount] = this.ids[position];
+                liveCount++;
+            }
+        }
+        int[] buffered = merge(live, liveCount, this.pending, this.pendingCount);
+        int[] order = merge(buffered, buffered.length, fresh, freshCount);
+        Run run = buildRun(order, order.length);
+        synchronized (this) {
+            install(run);
+        }
+    }
+
+    /**
+     * Returns up to {@code limit} display names whose normalized form starts with the
+     * already normalized {@code prefix}, most often decided first and alphabetical among
+     * equals.
+     */
+    public synchronized String[] top(String prefix, int limit) {
+        if (limit <= 0) {
+            return new String[0];
+        }
+        PriorityQueue<int[]> ranges = new PriorityQueue<>(limit * 2, (a, b) -> a[2] == b[2] ? 0 : better(this.ids, a[2], b[2]) == a[2] ? -1 : 1);
+        offer(ranges, search(prefix, false), search(prefix, true));
+        int from = pendingStart(prefix);
+        int to = from;
+        while (to < this.pendingCount && startsWith(this.pending[to], prefix)) {
+            to++;
+        }
+        int[] extra = Arrays.copyOfRange(this.pending, from, to);
+        int extraCount = extra.length;
+        String[] out = new String[limit];
+        int n = 0;
+        while (n < limit) {
+            int[] range = ranges.peek();
+            int pick = -1;
+            for (int i = 0; i < extraCount; i++) {
+                if (pick < 0 || this.popularity[extra[i]] > this.popularity[extra[pick]]) {
+                    pick = i;
+                }
+            }
+            int id;
+            if (range != null && (pick < 0 || beats(this.ids[range[2]], extra[pick]))) {
+                ranges.poll();
+                int best = range[2];
+                id = this.ids[best];
+                offer(ranges, range[0], best);
+                offer(ranges, best + 1, range[1]);
+            } else if (pick >= 0) {
+                id = extra[pick];
+                System.arraycopy(extra, pick + 1, extra, pick, (extraCount - pick) - 1);
+                extraCount--;
+            } else {
+                break;
+            }
+            out[n] = this.entries.get(id).getName();
+            n++;
+        }
+        return n == limit ? out : Arrays.copyOf(out, n);
+    }
+
+    /** Queues {@code [lo, hi)} of the run by its best live position, unless all of it is dead. */
+    private void offer(PriorityQueue<int[]> ranges, int lo, int hi) {
+        if (lo < hi) {
+            int best = rangeMax(lo, hi);
+            if (this.ids[best] >= 0) {
+                ranges.add(new int[]{lo, hi, best});
+            }
+        }
+    }
+
+    /** Whether food {@code a} ranks before food {@code b}. */
+    private boolean beats(int a, int b) {
+        int pa = this.popularity[a];
+        int pb = this.popularity[b];
+        if (pa != pb) {
+            return pa > pb;
+        }
+        return compareKeys(this.keys, a, b) < 0;
+    }
+
+    /** Replaces the previous ranking, touching only the foods decided before or now. */
+    private void rank(int[] decided, long[] counts, int count) {
+        int n = this.keys.size();
+        for (int id : this.scored) {
+            if (id < n && this.popularity[id] != 0) {
+                this.popularity[id] = 0;
+                rankChanged(id);
+            }
+        }
+        int[] scored2 = new int[count];
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            int id2 = decided[i];
+            // Counts follow the engine's live ids, which can run ahead of the version indexed.
+            if (id2 >= 0 && id2 < n) {
+                this.popularity[id2] = (int) Math.min(counts[i], (long) Integer.MAX_VALUE);
+                rankChanged(id2);
+                scored2[kept] = id2;
+                kept++;
+            }
+        }
+        this.scored = kept == count ? scored2 : Arrays.copyOf(scored2, kept);
+    }
+
+    private void rankChanged(int id) {
+        int position = this.positions[id];
+        if (position >= 0) {
+            updateTree(position);
+        }
+    }
+
+    private void unindex(int id) {
+        int position = this.positions[id];
+        if (position >= 0) {
+            this.positions[id] = -1;
+            this.ids[position] = -1;
+            this.dead++;
+            updateTree(position);
+            return;
+        }
+        for (int i = 0; i < this.pendingCount; i++) {
+            if (this.pending[i] == id) {
+                System.arraycopy(this.pending, i + 1, this.pending, i, (this.pendingCount - i) - 1);
+                this.pendingCount--;
+                return;
+            }
+        }
+    }
+
+    private void insertPending(int id) {
+        int lo = 0;
+        int hi = this.pendingCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareKeys(this.keys, this.pending[mid], id) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        System.arraycopy(this.pending, lo, this.pending, lo + 1, this.pendingCount - lo);
+        this.pending[lo] = id;
+        this.pendingCount++;
+    }
+
+    /** The first buffered key at or after {@code prefix}. */
+    private int pendingStart(String prefix) {
+        int lo = 0;
+        int hi = this.pendingCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareKey(this.pending[mid], prefix) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private void ensureCapacity(int count) {
+        if (count > this.positions.length) {
+            int capacity = Math.max(count, this.positions.length << 1);
+            this.positions = Arrays.copyOf(this.positions, capacity);
+            this.popularity = Arrays.copyOf(this.popularity, capacity);
+        }
+    }
+
+    /** Front-codes the keys of {@code order}, which is in key order, and builds the tree over them. */
+    private Run buildRun(int[] order, int n) {
+        FoodCatalog keys2 = this.keys;
+        int[] blockStarts2 = new int[((n + BLOCK) - 1) >> BLOCK_SHIFT];
+        StringBuilder out = new StringBuilder(n * 4);
+        int previous = -1;
+        for (int i = 0; i < n; i++) {
+            int id = order[i];
+            int length = keys2.length(id);
+            if ((i & (BLOCK - 1)) == 0) {
+                blockStarts2[i >> BLOCK_SHIFT] = out.length();
+                out.append((char) length);
+                keys2.appendTo(id, out);
+            } else {
+                int shared = 0;
+                int max = Math.min(keys2.length(previous), length);
+                while (shared < max && keys2.charAt(previous, shared) == keys2.charAt(id, shared)) {
+                    shared++;
+                }
+                out.append((char) shared).append((char) (length - shared));
+                for (int c = shared; c < length; c++) {
+                    out.append(keys2.charAt(id, c));
+                }
+            }
+            previous = id;
+        }
+        Run run = new Run();
+        run.ids = order;
+        run.blockStarts = blockStarts2;
+        run.data = new char[out.length()];
+        out.getChars(0, out.length(), run.data, 0);
+        int[] t = new int[Math.max(n * 2, 2)];
+        for (int i2 = 0; i2 < n; i2++) {
+            t[n + i2] = i2;
+        }
+        for (int i3 = n - 1; i3 > 0; i3--) {
+            t[i3] = better(order, t[i3 * 2], t[(i3 * 2) + 1]);
+        }
+        run.tree = t;
+        return run;
+    }
+
+    private void install(Run run) {
+        this.ids = run.ids;
+        this.data = run.data;
+        this.blockStarts = run.blockStarts;
+        this.tree = run.tree;
+        this.size = run.ids.length;
+        this.dead = 0;
+        this.pendingCount = 0;
+        Arrays.fill(this.positions, -1);
+        for (int position = 0; position < this.size; position++) {
+            this.positions[this.ids[position]] = position;
+        }
+    }
+
+    /** Merges two id arrays that are each in key order. */
+    private int[] merge(int[] a, int na, int[] b, int nb) {
+        int[] out = new int[na + nb];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < na && j < nb) {
+            if (compareKeys(this.keys, a[i], b[j]) <= 0) {
+                out[k] = a[i];
+                i++;
+            } else {
+                out[k] = b[j];
+                j++;
+            }
+            k++;
+        }
+        System.arraycopy(a, i, out, k, na - i);
+        System.arraycopy(b, j, out, (k + na) - i, nb - j);
+        return out;
+    }
+
+    /**
+     * Sorts {@code ids2[from, to)}, whose keys agree on their first {@code depth} chars, by
+     * key: one char per pass, packed above the id into a long so each pass is a primitive
+     * sort, then each run of equal chars is sorted on the next one.
+     */
+    private static void sortByKey(FoodCatalog keys2, int[] ids2, int from, int to, int depth, long[] packed) {
+        int n = to - from;
+        if (n < 2) {
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            int id = ids2[from + i];
+            packed[i] = (((long) charOrEnd(keys2, id, depth)) << 32) | ((long) id);
+        }
+        Arrays.sort(packed, 0, n);
+        for (int i2 = 0; i2 < n; i2++) {
+            ids2[from + i2] = (int) packed[i2];
+        }
+        int start = from;
+        while (start < to) {
+            int c = charOrEnd(keys2, ids2[start], depth);
+            int end = start + 1;
+            while (end < to && charOrEnd(keys2, ids2[end], depth) == c) {
+                end++;
+            }
+            if (c != 0) {
+                sortByKey(keys2, ids2, start, end, depth + 1, packed);
+            }
+            start = end;
+        }
+    }
+
+    /** The char at {@code index} plus one, or 0 past the end, so shorter keys sort first. */
+    private static int charOrEnd(FoodCatalog keys2, int id, int index) {
+        if (index < keys2.length(id)) {
+            return keys2.charAt(id, index) + 1;
+        }
+        return 0;
+    }
+
+    private static int compareKeys(FoodCatalog keys2, int a, int b) {
+        int la = keys2.length(a);
+        int lb = keys2.length(b);
+        int n = Math.min(la, lb);
+        for (int i = 0; i < n; i++) {
+            char ca = keys2.charAt(a, i);
+            char cb = keys2.charAt(b, i);
+            if (ca != cb) {
+                return ca - cb;
+            }
+        }
+        return la - lb;
+    }
+
+    private int compareKey(int id, String text) {
+        int length = this.keys.length(id);
+        int n = Math.min(length, text.length());
+        for (int i = 0; i < n; i++) {
+            char c = this.keys.charAt(id, i);
+            char t = text.charAt(i);
+            if (c != t) {
+                return c - t;
+            }
+        }
+        return length - text.length();
+    }
+
+    private boolean startsWith(int id, String prefix) {
+        int length = prefix.length();
+        if (this.keys.length(id) < length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (this.keys.charAt(id, i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void updateTree(int position) {
+        int i = position + this.size;
+        while (i > 1) {
+            i >>= 1;
+            this.tree[i] = better(this.ids, this.tree[i * 2], this.tree[(i * 2) + 1]);
+        }
+    }
+
+    /** Position of the better-ranked entry in {@code [lo, hi)}. */
+    private int rangeMax(int lo, int hi) {
+        int best = lo;
+        int l = lo + this.size;
+        int h = hi + this.size;
+        while (l < h) {
+            if ((l & 1) != 0) {
+                best = better(this.ids, best, this.tree[l]);
+                l++;
+            }
+            if ((h & 1) != 0) {
+                h--;
+                best = better(this.ids, best, this.tree[h]);
+            }
+            l >>= 1;
+            h >>= 1;
+        }
+        return best;
+    }
+
+    /** The better-ranked of two run positions; dead positions rank last. */
+    private int better(int[] ids2, int a, int b) {
+        int ia = ids2[a];
+        int ib = ids2[b];
+        int sa = ia >= 0 ? this.popularity[ia] : -1;
+        int sb = ib >= 0 ? this.popularity[ib] : -1;
+        if (sa != sb) {
+            return sa > sb ? a : b;
+        }
+        return a < b ? a : b;
+    }
+
+    /**
+     * Returns the first position whose key is past {@code prefix}: keys starting with the
+     * prefix count as equal to it, so the lower bound ({@code upper} false) is the first of
+     * them and the upper bound is the first key after them.
+     */
+    private int search(String prefix, boolean upper) {
+        int blocks = this.blockStarts.length;
+        char[] key = new char[64];
+        int lo = 0;
+        int hi = blocks;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int start = this.blockStarts[mid];
+            int length = this.data[start];
+            if (passed(this.data, start + 1, length, prefix, upper)) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        if (lo == 0) {
+            return 0;
+        }
+        int block = lo - 1;
+        int position = block << BLOCK_SHIFT;
+        int end = Math.min(position + BLOCK, this.size);
+        int cursor = this.blockStarts[block];
+        int length2 = this.data[cursor];
+        if (key.length < length2) {
+            key = new char[length2];
+        }
+        System.arraycopy(this.data, cursor + 1, key, 0, length2);
+        int cursor2 = cursor + 1 + length2;
+        for (int p = position + 1; p < end; p++) {
+            int shared = this.data[cursor2];
+            int suffix = this.data[cursor2 + 1];
+            length2 = shared + suffix;
+            if (key.length < length2) {
+                key = Arrays.copyOf(key, Math.max(length2, key.length << 1));
+            }
+            System.arraycopy(this.data, cursor2 + 2, key, shared, suffix);
+            cursor2 += suffix + 2;
+            if (passed(key, 0, length2, prefix, upper)) {
+                return p;
+            }
+        }
+        return end;
+    }
+
+    private static boolean passed(char[] chars, int offset, int length, String prefix, boolean upper) {
+        int n = Math.min(length, prefix.length());
+        for (int i = 0; i < n; i++) {
+            char c = chars[offset + i];
+            char p = prefix.charAt(i);
+            if (c != p) {
+                return c > p;
+            }
+        }
+        if (length < prefix.length()) {
+            return false;
+        }
+        return !upper;
+    }
+}
@@ -0,0 +1,145 @@
+package com.kalyan.dinnerdecider.engine;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Draws catalog ids without replacement: every food comes up once before any repeats.
+ * The bag is a virtual permutation of {@code [0, size)} where positions below
+ * {@code remaining} are still undrawn. Each draw is one Fisher-Yates swap step. Only
+ * positions that differ from the identity are stored, so memory and the persisted state
+ * grow with the draws made this cycle rather than with the catalog.
+ */
+public final class ShuffleBag {
+    private static final int MAGIC = 0x44444231;
+    private final IntIntMap idToPosition = new IntIntMap(-1);
+    private final IntIntMap positionToId = new IntIntMap(-1);
+    private int remaining;
+    private int size;
+
+    public ShuffleBag(int size2) {
+        this.size = size2;
+        this.remaining = size2;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public int remaining() {
+        return this.remaining;
+    }
+
+    public int draw(DecisionRandom random) {
+        if (this.size == 0) {
+            throw new IllegalStateException("Cannot draw from an empty bag.");
+        }
+        if (this.remaining == 0) {
+            this.positionToId.clear();
+            this.idToPosition.clear();
+            this.remaining = this.size;
+        }
+        int last = this.remaining - 1;
+        int position = random.nextInt(this.remaining);
+        int id = idAt(position);
+        swap(position, last);
+        this.remaining = last;
+        return id;
+    }
+
+    /** Adds the next catalog id as undrawn, even in the middle of a cycle. */
+    public void add() {
+        int id = this.size;
+        int position = this.remaining;
+        this.size = id + 1;
+        place(id, idAt(position));
+        place(position, id);
+        this.remaining = position + 1;
+    }
+
+    /** Mirrors {@link FoodCatalog#removeSwap(int)}: drops {@code id} and renames the last id to it. */
+    public void removeSwap(int id) {
+        int position = positionOf(id);
+        if (position < this.remaining) {
+            int lastUndrawn = this.remaining - 1;
+            swap(position, lastUndrawn);
+            this.remaining = lastUndrawn;
+            position = lastUndrawn;
+        }
+        int last = this.size - 1;
+        swap(position, last);
+        this.positionToId.remove(last);
+        this.idToPosition.remove(id);
+        this.size = last;
+        if (id != last) {
+            int moved = positionOf(last);
+            this.idToPosition.remove(last);
+            place(moved, id);
+        }
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        int count = this.positionToId.size();
+        int[] positions = new int[count];
+        int[] ids = new int[count];
+        this.positionToId.copyTo(positions, ids);
+        out.writeInt(MAGIC);
+        out.writeInt(this.size);
+        out.writeInt(this.remaining);
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            out.writeInt(positions[i]);
+            out.writeInt(ids[i]);
+        }
+    }
+
+    /** Restores a bag written by {@link #writeTo}, or returns a fresh bag if it no longer matches {@code expectedSize}. */
+    public static ShuffleBag readFrom(DataInputStream in, int expectedSize) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != expectedSize) {
+            return new ShuffleBag(expectedSize);
+        }
+        ShuffleBag bag = new ShuffleBag(expectedSize);
+        int remaining2 = in.readInt();
+        int count = in.readInt();
+        if (remaining2 < 0 || remaining2 > expectedSize) {
+            return bag;
+        }
+        for (int i = 0; i < count; i++) {
+            int position = in.readInt();
+            int id = in.readInt();
+            if (position < 0 || position >= expectedSize || id < 0 || id >= expectedSize) {
+                return new ShuffleBag(expectedSize);
+            }
+            bag.place(position, id);
+        }
+        bag.remaining = remaining2;
+        return bag;
+    }
+
+    private int idAt(int position) {
+        int id = this.positionToId.get(position);
+        return id >= 0 ? id : position;
+    }
+
+    private int positionOf(int id) {
+        int position = this.idToPosition.get(id);
+        return position >= 0 ? position : id;
+    }
+
+    private void swap(int a, int b) {
+        int first = idAt(a);
+        place(a, idAt(b));
+        place(b, first);
+    }
+
+    private void place(int position, int id) {
+        if (position == id) {
+            this.positionToId.remove(position);
+            this.idToPosition.remove(id);
+            return;
+        }
+        this.positionToId.put(position, id);
+        this.idToPosition.put(id, position);
+    }
+}
@@ -0,0 +1,131 @@
+package com.kalyan.dinnerdecider.engine;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * As-you-type suggestions from a {@link PrefixIndex}. Queries are debounced and run on a
+ * private thread; each one bumps a generation counter, so a query overtaken by a newer
+ * keystroke is dropped before it runs and its results are never delivered. The index is
+ * brought up to date on a second thread whenever the owner reports a newer catalog
+ * version or new decisions, in time proportional to the change, and queries keep running
+ * against it meanwhile.
+ *
+ * <p>{@link #query}, {@link #cancel}, {@link #update}, {@link #getVersion} and
+ * {@link #getDecisions} belong on the owner thread; callbacks are delivered through the
+ * owner executor.
+ */
+public final class Suggester {
+    private final ExecutorService builder = Executors.newSingleThreadExecutor(runnable -> daemon(runnable, "suggest-build"));
+    private final long debounceMillis;
+    private volatile long decisions = -1;
+    private final AtomicInteger generation = new AtomicInteger();
+    private volatile PrefixIndex index;
+    private final Executor ownerExecutor;
+    private Future<?> pending;
+    private volatile int version = -1;
+    private final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "suggest"));
+
+    public interface Callback {
+        void onSuggestions(CharSequence query, String[] names);
+    }
+
+    public Suggester(Executor ownerExecutor2, long debounceMillis2) {
+        this.ownerExecutor = ownerExecutor2;
+        this.debounceMillis = debounceMillis2;
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /** The catalog version of the last {@link #rebuild}, or -1 before the first one. */
+    public int getVersion() {
+        return this.version;
+    }
+
+    /** The decision total of the last {@link #update}, or -1 before the first one. */
+    public long getDecisions() {
+        return this.decisions;
+    }
+
+    /**
+     * Brings the index to a catalog version in the background, ranking food
+     * {@code decided[i]} by its {@code counts[i]} decisions out of {@code decisions2}.
+     * {@code keys}, if not null, holds the normalized keys of {@code entries} under the same
+     * ids and seeds the first index. Updates overtaken by a newer one are skipped; the
+     * newer one covers their changes.
+     */
+    public void update(PersistentVector<CatalogEntry> entries, int version2, FoodCatalog keys, int[] decided, long[] counts, long decisions2) {
+        this.version = version2;
+        this.decisions = decisions2;
+        this.builder.execute(() -> {
+            PrefixIndex index2 = this.index;
+            if (index2 == null && keys != null) {
+                index2 = new PrefixIndex(entries, keys);
+                this.index = index2;
+            }
+            if (this.version == version2 && this.decisions == decisions2) {
+                if (index2 == null) {
+                    index2 = new PrefixIndex();
+                }
+                index2.update(entries, decided, counts, decided.length);
+                this.index = index2;
+            }
+        });
+    }
+
+    /**
+     * Looks up {@code text} after the debounce delay and delivers up to {@code limit}
+     * suggestions, replacing any query still in flight. Blank text delivers nothing.
+     */
+    public void query(CharSequence text, int limit, Callback callback) {
+        int current = this.generation.incrementAndGet();
+        cancelPending();
+        String typed = text.toString();
+        String prefix = NameIndex.normalize(typed);
+        if (prefix.length() == 0) {
+            return;
+        }
+        this.pending = this.worker.schedule(() -> {
+            PrefixIndex index2 = this.index;
+            if (index2 != null && this.generation.get() == current) {
+                String[] names = index2.top(prefix, limit);
+                if (this.generation.get() == current) {
+                    this.ownerExecutor.execute(() -> {
+                        if (this.generation.get() == current) {
+                            callback.onSuggestions(typed, names);
+                        }
+                    });
+                }
+            }
+        }, this.debounceMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** Drops any query in flight. */
+    public void cancel() {
+        this.generation.incrementAndGet();
+        cancelPending();
+    }
+
+    public void close() {
+        cancel();
+        this.worker.shutdownNow();
+        this.builder.shutdownNow();
+    }
+
+    private void cancelPending() {
+        Future<?> future = this.pending;
+        if (future != null) {
+            future.cancel(false);
+            this.pending = null;
+        }
+    }
+}
@@ -0,0 +1,632 @@
+package com.kalyan.dinnerdecider.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * Tags and numeric attributes per food id, indexed for filtered decisions. A food's
+ * spec is written inline after its name, as in {@code "Pad Thai #vegetarian price=12"}:
+ * {@code #word} is a tag and {@code word=number} an attribute. Every tag and attribute
+ * owns an {@link IdBitmap} of the ids carrying it, so a compiled {@link Filter} such as
+ * {@code "vegetarian price<15 !spicy"} evaluates to a handful of bitmap operations.
+ *
+ * <p>Attribute values are also kept sorted, so a comparison reads only the ids in its
+ * range. Edits go to a short list of recent ids that comparisons check one by one, and
+ * the sorted run is rebuilt once they, plus entries the edits left stale, outgrow an
+ * eighth of it. Negations are never taken against every id: they become
+ * {@link IdBitmap#andNot} of their parent, and a negated whole filter is answered as the
+ * complement of its bitmap. A filter's result is cached until one of the tags or
+ * attributes it names changes.
+ */
+public final class TagIndex {
+    /** The longest spec kept; {@link #split} and {@link #clip} drop the tokens past it. */
+    public static final int MAX_SPEC_LENGTH = 1024;
+    private static final int MIN_RECENT = 64;
+    private final HashMap<String, Attribute> attributes = new HashMap<>();
+    private int size;
+    private String[] specs = new String[16];
+    /** The {@link #version} at which each tag ({@code #name}) or attribute ({@code name=}) last changed. */
+    private final HashMap<String, Integer> stamps = new HashMap<>();
+    private final HashMap<String, IdBitmap> tags = new HashMap<>();
+    private int version;
+
+    /**
+     * One attribute's values by id, and the ids sorted by value as of the last rebuild.
+     * A sorted entry counts only while its id still holds that value.
+     */
+    private static final class Attribute {
+        final IdBitmap present = new IdBitmap();
+        int[] recent = new int[MIN_RECENT];
+        int recentCount;
+        int sortedCount;
+        int[] sortedIds = new int[0];
+        double[] sortedValues = new double[0];
+        int stale;
+        double[] values = new double[16];
+
+        Attribute() {
+        }
+
+        void put(int id, double value) {
+            if (this.values.length <= id) {
+                this.values = Arrays.copyOf(this.values, Math.max(id + 1, this.values.length << 1));
+            }
+            this.values[id] = value;
+            this.present.add(id);
+            if (this.recentCount == this.recent.length) {
+                this.recent = Arrays.copyOf(this.recent, this.recentCount << 1);
+            }
+            this.recent[this.recentCount] = id;
+            this.recentCount++;
+            if (this.recentCount + this.stale > Math.max(MIN_RECENT, this.sortedCount >> 3)) {
+                rebuild();
+            }
+        }
+
+        void remove(int id) {
+            this.present.remove(id);
+            this.stale++;
+        }
+
+        /** Sorts the present ids by value: values first, then ids by the rank of their value. */
+        private void rebuild() {
+            int n = this.present.cardinality();
+            double[] sorted = new double[n];
+            int[] ids = new int[n];
+            int[] fill = new int[1];
+            this.present.forEach(id -> {
+                ids[fill[0]] = id;
+                sorted[fill[0]] = this.values[id];
+                fill[0]++;
+            });
+            Arrays.sort(sorted);
+            long[] order = new long[n];
+            for (int i = 0; i < n; i++) {
+                order[i] = (((long) lowerBound(sorted, n, this.values[ids[i]])) << 32) | ((long) ids[i]);
+            }
+            Arrays.sort(order);
+            for (int i2 = 0; i2 < n; i2++) {
+                ids[i2] = (int) order[i2];
+            }
+            this.sortedIds = ids;
+            this.sortedValues = sorted;
+            this.sortedCount = n;
+            this.recentCount = 0;
+            this.stale = 0;
+        }
+
+        /** Appends to {@code out} from {@code at} the ids whose value passes {@code op value}, and returns the new end. */
+        int collect(int op, double value, int[] out, int at) {
+            int n = this.sortedCount;
+            double[] sorted = this.sortedValues;
+            int start = (op == '<' || op == 'l') ? 0 : op == '>' ? upperBound(sorted, n, value) : lowerBound(sorted, n, value);
+            int end = (op == '>' || op == 'g') ? n : op == '<' ? lowerBound(sorted, n, value) : upperBound(sorted, n, value);
+            for (int i = start; i < end; i++) {
+                int id = this.sortedIds[i];
+                if (this.values[id] == sorted[i] && this.present.contains(id)) {
+                    out[at] = id;
+                    at++;
+                }
+            }
+            for (int i2 = 0; i2 < this.recentCount; i2++) {
+                int id2 = this.recent[i2];
+                double v = this.values[id2];
+                if (this.present.contains(id2) && (op == '<' ? v < value : op == 'l' ? v <= value : op == '>' ? v > value : op == 'g' ? v >= value : v == value)) {
+                    out[at] = id2;
+                    at++;
+                }
+            }
+            return at;
+        }
+
+        /** An upper bound on what {@link #collect} appends. */
+        int capacity() {
+            return this.sortedCount + this.recentCount;
+        }
+    }
+
+    /** Splits raw input into {@code {name, spec}}; the spec is empty if no tokens matched. */
+    public static String[] split(CharSequence raw) {
+        StringBuilder name = new StringBuilder(raw.length());
+        StringBuilder spec = new StringBuilder();
+        for (String token : raw.toString().trim().split("\\s+")) {
+            if (isSpecToken(token)) {
+                if (spec.length() + token.length() < MAX_SPEC_LENGTH) {
+                    if (spec.length() > 0) {
+                        spec.append(' ');
+                    }
+                    spec.append(token.toLowerCase(Locale.ROOT));
+                }
+            } else if (token.length() > 0) {
+                if (name.length() > 0) {
+                    name.append(' ');
+                }
+                name.append(token);
+            }
+        }
+        return new String[]{name.toString(), spec.toString()};
+    }
+
+    /** Cuts {@code spec} after its last whole token that fits in {@link #MAX_SPEC_LENGTH}. */
+    public static String clip(String spec) {
+        if (spec.length() <= MAX_SPEC_LENGTH) {
+            return spec;
+        }
+        int end = spec.lastIndexOf(' ', MAX_SPEC_LENGTH);
+        return end > 0 ? spec.substring(0, end) : "";
+    }
+
+    private static boolean isSpecToken(String token) {
+        if (token.length() > 1 && token.charAt(0) == '#') {
+            return true;
+        }
+        int eq = token.indexOf('=');
+        return eq > 0 && parseNumber(token.substring(eq + 1)) != null;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /** Returns the spec of {@code id}, or an empty string. */
+    public String spec(int id) {
+        checkId(id);
+        String spec = this.specs[id];
+        return spec != null ? spec : "";
+    }
+
+    /** Appends an untagged id and returns it. */
+    public int add() {
+        if (this.size == this.specs.length) {
+            this.specs = (String[]) Arrays.copyOf(this.specs, this.size << 1);
+        }
+        int id = this.size;
+        this.size = id + 1;
+        return id;
+    }
+
+    /** Replaces the tags and attributes of {@code id} with those in {@code spec}. */
+    public void set(int id, String spec) {
+        checkId(id);
+        unindex(id);
+        this.specs[id] = spec.length() > 0 ? spec : null;
+        index(id);
+    }
+
+    /** Removes {@code id} by moving the last id into its place, like {@link FoodCatalog#removeSwap}. */
+    public void removeSwap(int id) {
+        checkId(id);
+        int last = this.size - 1;
+        unindex(id);
+        if (id != last) {
+            unindex(last);
+            this.specs[id] = this.specs[last];
+            index(id);
+        }
+        this.specs[last] = null;
+        this.size = last;
+    }
+
+    /** Parses a filter expression, throwing {@link IllegalArgumentException} if malformed. */
+    public static Filter compile(String expression) {
+        Parser parser = new Parser(expression);
+        Node root = parser.parseOr();
+        if (parser.peek() != null) {
+            throw new IllegalArgumentException("Unexpected '" + parser.peek() + "' in filter");
+        }
+        ArrayList<String> keys = new ArrayList<>();
+        root.collectKeys(keys);
+        return new Filter(expression, root, (String[]) keys.toArray(new String[keys.size()]));
+    }
+
+    /**
+     * A compiled filter over the ids of an index. Its bitmap is reused until a tag or
+     * attribute it names changes, so repeated decisions under one filter cost a single
+     * rank/select; a negated filter keeps the bitmap of what it excludes.
+     */
+    public static final class Filter {
+        private IdBitmap cached;
+        private int cachedCount;
+        private TagIndex cachedIndex;
+        private int cachedVersion;
+        private final String expression;
+        private final String[] keys;
+        private final Node root;
+
+        Filter(String expression2, Node root2, String[] keys2) {
+            this.expression = expression2;
+            this.root = root2;
+            this.keys = keys2;
+        }
+
+        public String getExpression() {
+            return this.expression;
+        }
+
+        private IdBitmap bitmap(TagIndex index) {
+            if (this.cached == null || this.cachedIndex != index || index.changedSince(this.keys, this.cachedVersion)) {
+                this.cached = this.root.eval(index);
+                this.cachedCount = this.cached.cardinality();
+                this.cachedIndex = index;
+                this.cachedVersion = index.version;
+            }
+            return this.cached;
+        }
+
+        public int count(TagIndex index) {
+            bitmap(index);
+            return this.root.negated ? index.size - this.cachedCount : this.cachedCount;
+        }
+
+        public boolean contains(TagIndex index, int id) {
+            return bitmap(index).contains(id) != this.root.negated;
+        }
+
+        /** Returns the matching id with {@code rank} matches below it. */
+        public int select(TagIndex index, int rank) {
+            IdBitmap bitmap = bitmap(index);
+            return this.root.negated ? bitmap.selectAbsent(rank) : bitmap.select(rank);
+        }
+
+        /** Calls {@code visitor} for every matching id in ascending order. */
+        public void forEach(TagIndex index, IdBitmap.IntVisitor visitor) {
+            IdBitmap bitmap = bitmap(index);
+            if (!this.root.negated) {
+                bitmap.forEach(visitor);
+                return;
+            }
+            int size2 = index.size;
+            int[] next = new int[1];
+            bitmap.forEach(excluded -> {
+                int stop = Math.min(excluded, size2);
+                for (int id = next[0]; id < stop; id++) {
+                    visitor.visit(id);
+                }
+                next[0] = excluded + 1;
+            });
+            for (int id2 = next[0]; id2 < size2; id2++) {
+                visitor.visit(id2);
+            }
+        }
+
+        public String toString() {
+            return this.expression;
+        }
+    }
+
+    private IdBitmap tag(String name) {
+        IdBitmap bitmap = this.tags.get(name);
+        return bitmap != null ? bitmap : new IdBitmap();
+    }
+
+    private IdBitmap compare(String name, int op, double value) {
+        IdBitmap out = new IdBitmap();
+        Attribute attribute = this.attributes.get(name);
+        if (attribute != null) {
+            int[] ids = new int[attribute.capacity()];
+            int count = attribute.collect(op, value, ids, 0);
+            Arrays.sort(ids, 0, count);
+            for (int i = 0; i < count; i++) {
+                out.add(ids[i]);
+            }
+        }
+        return out;
+    }
+
+    /** Whether a tag or attribute among {@code keys} changed after {@code version2}. */
+    private boolean changedSince(String[] keys, int version2) {
+        for (String key : keys) {
+            Integer stamp = this.stamps.get(key);
+            if (stamp != null && stamp.intValue() > version2) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void touch(String key) {
+        int i = this.version + 1;
+        this.version = i;
+        this.stamps.put(key, Integer.valueOf(i));
+    }
+
+    private void index(int id) {
+        String spec = this.specs[id];
+        if (spec != null) {
+            for (String token : spec.split(" ")) {
+                if (token.charAt(0) == '#') {
+                    IdBitmap bitmap = this.tags.get(token.substring(1));
+                    if (bitmap == null) {
+                        bitmap = new IdBitmap();
+                        this.tags.put(token.substring(1), bitmap);
+                    }
+                    bitmap.add(id);
+                    touch(token);
+                } else {
+                    int eq = token.indexOf('=');
+                    String name = token.substring(0, eq);
+                    Attribute attribute = this.attributes.get(name);
+                    if (attribute == null) {
+                        attribute = new Attribute();
+                        this.attributes.put(name, attribute);
+                    }
+                    attribute.put(id, parseNumber(token.substring(eq + 1)).doubleValue());
+                    touch(token.substring(0, eq + 1));
+                }
+            }
+        }
+    }
+
+    private void unindex(int id) {
+        String spec = this.specs[id];
+        if (spec != null) {
+            for (String token : spec.split(" ")) {
+                if (token.charAt(0) == '#') {
+                    IdBitmap bitmap = this.tags.get(token.substring(1));
+                    if (bitmap != null) {
+                        bitmap.remove(id);
+                        touch(token);
+                    }
+                } else {
+                    int eq = token.indexOf('=');
+                    Attribute attribute = this.attributes.get(token.substring(0, eq));
+                    if (attribute != null) {
+                        attribute.remove(id);
+                        touch(token.substring(0, eq + 1));
+                    }
+                }
+            }
+        }
+    }
+
+    private void checkId(int id) {
+        if (id < 0 || id >= this.size) {
+            throw new IndexOutOfBoundsException("id=" + id + ", size=" + this.size);
+        }
+    }
+
+    /** The first index in {@code sorted[0, count)} whose value is not below {@code value}. */
+    private static int lowerBound(double[] sorted, int count, double value) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /** The first index in {@code sorted[0, count)} whose value is above {@code value}. */
+    private static int upperBound(double[] sorted, int count, double value) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] <= value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /** Parses {@code "12"}, {@code "$12.50"} and the like; returns null otherwise. */
+    static Double parseNumber(String text) {
+        String digits = text.startsWith("$") ? text.substring(1) : text;
+        if (digits.length() == 0 || !(Character.isDigit(digits.charAt(0)) || digits.charAt(0) == '-' || digits.charAt(0) == '.')) {
+            return null;
+        }
+        try {
+            double value = Double.parseDouble(digits);
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                return null;
+            }
+            return Double.valueOf(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Filter syntax tree. Kinds: tag, comparison, not, and, or; comparison ops are
+     * {@code < l > g =} with {@code l} and {@code g} for {@code <=} and {@code >=}. A node
+     * whose {@link #negated} is set evaluates to the ids it excludes, so a NOT costs
+     * nothing and its parent applies it with AND NOT or De Morgan's laws.
+     */
+    static final class Node {
+        static final int AND = 3;
+        static final int COMPARE = 1;
+        static final int NOT = 2;
+        static final int OR = 4;
+        static final int TAG = 0;
+        final int kind;
+        final Node left;
+        final String name;
+        final boolean negated;
+        final int op;
+        final Node right;
+        final double value;
+
+        Node(int kind2, Node left2, Node right2, String name2, int op2, double value2) {
+            this.kind = kind2;
+            this.left = left2;
+            this.right = right2;
+            this.name = name2;
+            this.op = op2;
+            this.value = value2;
+            if (kind2 == NOT) {
+                this.negated = !left2.negated;
+            } else if (kind2 == AND) {
+                this.negated = left2.negated && right2.negated;
+            } else if (kind2 == OR) {
+                this.negated = left2.negated || right2.negated;
+            } else {
+                this.negated = false;
+            }
+        }
+
+        /** The ids this node matches, or those it excludes if it is {@link #negated}. */
+        IdBitmap eval(TagIndex index) {
+            switch (this.kind) {
+                case TAG:
+                    return index.tag(this.name);
+                case COMPARE:
+                    return index.compare(this.name, this.op, this.value);
+                case NOT:
+                    return this.left.eval(index);
+                case AND:
+                    return combine(this.left.eval(index), this.left.negated, this.right.eval(index), this.right.negated, true);
+                default:
+                    return combine(this.left.eval(index), this.left.negated, this.right.eval(index), this.right.negated, false);
+            }
+        }
+
+        private static IdBitmap combine(IdBitmap a, boolean notA, IdBitmap b, boolean notB, boolean and) {
+            if (notA == notB) {
+                // Both excluded: !a & !b is !(a | b) and !a | !b is !(a & b).
+                return and != notA ? a.and(b) : a.or(b);
+            }
+            // One side excluded: a & !b and !(b & !a) both come down to a AND NOT b.
+            IdBitmap kept = notA ? b : a;
+            IdBitmap excluded = notA ? a : b;
+            return and ? kept.andNot(excluded) : excluded.andNot(kept);
+        }
+
+        void collectKeys(ArrayList<String> out) {
+            if (this.kind == TAG) {
+                out.add("#" + this.name);
+            } else if (this.kind == COMPARE) {
+                out.add(this.name + "=");
+            }
+            if (this.left != null) {
+                this.left.collectKeys(out);
+            }
+            if (this.right != null) {
+                this.right.collectKeys(out);
+            }
+        }
+    }
+
+    /**
+     * Recursive descent over {@code or := and ('|' and)*}, {@code and := unary ([&,] unary)*}
+     * with juxtaposition meaning AND, and {@code unary := ('!' | '-') unary | '(' or ')' | atom}.
+     * The words {@code and}, {@code or} and {@code not} work as operators too.
+     */
+    private static final class Parser {
+        private int position;
+        private final ArrayList<String> tokens = new ArrayList<>();
+
+        Parser(String expression) {
+            String text = expression.toLowerCase(Locale.ROOT);
+            int length = text.length();
+            int i = 0;
+            while (i < length) {
+                char c = text.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                } else if ("()|&,!".indexOf(c) >= 0 || (c == '-' && i + 1 < length && !Character.isDigit(text.charAt(i + 1)))) {
+                    this.tokens.add(String.valueOf(c));
+                    i++;
+                } else {
+                    int start = i;
+                    while (i < length && !Character.isWhitespace(text.charAt(i)) && "()|&,!".indexOf(text.charAt(i)) < 0) {
+                        i++;
+                    }
+                    this.tokens.add(text.substring(start, i));
+                }
+            }
+        }
+
+        String peek() {
+            if (this.position < this.tokens.size()) {
+                return this.tokens.get(this.position);
+            }
+            return null;
+        }
+
+        Node parseOr() {
+            Node node = parseAnd();
+            while (true) {
+                String token = peek();
+                if (!"|".equals(token) && !"or".equals(token)) {
+                    return node;
+                }
+                this.position++;
+                node = new Node(Node.OR, node, parseAnd(), null, 0, 0.0d);
+            }
+        }
+
+        Node parseAnd() {
+            Node node = parseUnary();
+            while (true) {
+                String token = peek();
+                if (token == null || token.equals(")") || token.equals("|") || token.equals("or")) {
+                    return node;
+                }
+                if (token.equals("&") || token.equals(",") || token.equals("and")) {
+                    this.position++;
+                }
+                node = new Node(Node.AND, node, parseUnary(), null, 0, 0.0d);
+            }
+        }
+
+        Node parseUnary() {
+            String token = peek();
+            if (token == null) {
+                throw new IllegalArgumentException("Filter ends too early");
+            }
+            this.position++;
+            if (token.equals("!") || token.equals("-") || token.equals("not")) {
+                return new Node(Node.NOT, parseUnary(), null, null, 0, 0.0d);
+            }
+            if (token.equals("(")) {
+                Node node = parseOr();
+                if (!")".equals(peek())) {
+                    throw new IllegalArgumentException("Missing ')' in filter");
+                }
+                this.position++;
+                return node;
+            }
+            if (token.length() == 1 && "()|&,".indexOf(token.charAt(0)) >= 0) {
+                throw new IllegalArgumentException("Unexpected '" + token + "' in filter");
+            }
+            return parseAtom(token);
+        }
+
+        private static Node parseAtom(String token) {
+            int at = -1;
+            for (int i = 1; i < token.length(); i++) {
+                char c = token.charAt(i);
+                if (c == '<' || c == '>' || c == '=') {
+                    at = i;
+                    break;
+                }
+            }
+            if (at < 0) {
+                String tag = token.charAt(0) == '#' ? token.substring(1) : token;
+                if (tag.length() == 0) {
+                    throw new IllegalArgumentException("Empty tag in filter");
+                }
+                return new Node(Node.TAG, null, null, tag, 0, 0.0d);
+            }
+            int op = token.charAt(at);
+            int valueStart = at + 1;
+            if (op != '=' && valueStart < token.length() && token.charAt(valueStart) == '=') {
+                op = op == '<' ? 'l' : 'g';
+                valueStart++;
+            }
+            Double value = parseNumber(token.substring(valueStart));
+            if (value == null) {
+                throw new IllegalArgumentException("Expected a number in '" + token + "'");
+            }
+            return new Node(Node.COMPARE, null, null, token.substring(0, at), op, value.doubleValue());
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.kalyan.dinnerdecider.engine;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link Tracing.Backend} that keeps the most recent events of every thread in memory and
+ * writes them out as Chrome trace-event JSON, which Perfetto and chrome://tracing both
+ * open. Each thread records into its own ring, so recording takes no lock and no CAS: the
+ * owner fills a slot and then publishes it with an ordered store of its count. Rings start
+ * small and double up to {@code capacity}, after which a thread's oldest events are
+ * overwritten. {@link #writeJson} may run on any thread while others keep recording; a
+ * slot that could have been overwritten while it was being copied is left out.
+ *
+ * <p>Rings hold their thread weakly. The ring of a thread that has ended is dropped once
+ * {@link #writeJson} has written it, and when a new thread registers, only the
+ * {@link #MAX_ENDED_RINGS} most recently registered ended rings are kept, so short-lived threads
+ * do not pile up between exports.
+ */
+public final class TraceRecorder implements Tracing.Backend {
+    private static final byte ASYNC_BEGIN = 'b';
+    private static final byte ASYNC_END = 'e';
+    private static final byte BEGIN = 'B';
+    private static final byte COUNTER = 'C';
+    private static final byte END = 'E';
+    private static final int INITIAL_SLOTS = 64;
+    private static final int MAX_ENDED_RINGS = 8;
+    private final int capacity;
+    private final ThreadLocal<Ring> local = new ThreadLocal<Ring>() {
+        /* access modifiers changed from: protected */
+        public Ring initialValue() {
+            Ring ring = new Ring(Thread.currentThread(), Math.min(INITIAL_SLOTS, TraceRecorder.this.capacity));
+            TraceRecorder.this.evictEnded(MAX_ENDED_RINGS);
+            TraceRecorder.this.rings.add(ring);
+            return ring;
+        }
+    };
+    private final long origin = System.nanoTime();
+    private final CopyOnWriteArrayList<Ring> rings = new CopyOnWriteArrayList<>();
+
+    /** {@code capacity} is the most events kept per thread, a power of two. */
+    public TraceRecorder(int capacity2) {
+        if (capacity2 < 2 || Integer.bitCount(capacity2) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two >= 2");
+        }
+        this.capacity = capacity2;
+    }
+
+    public void beginSection(String label) {
+        this.local.get().write(BEGIN, label, 0);
+    }
+
+    public void endSection() {
+        this.local.get().write(END, null, 0);
+    }
+
+    public void beginAsyncSection(String label, int cookie) {
+        this.local.get().write(ASYNC_BEGIN, label, (long) cookie);
+    }
+
+    public void endAsyncSection(String label, int cookie) {
+        this.local.get().write(ASYNC_END, label, (long) cookie);
+    }
+
+    public void setCounter(String name, long value) {
+        this.local.get().write(COUNTER, name, value);
+    }
+
+    /**
+     * Writes the recorded events as a JSON trace, timestamps in microseconds since this
+     * recorder was created, and returns how many events it wrote. Ends whose begin was
+     * already overwritten are dropped; sections still open are left open.
+     */
+    public int writeJson(Writer out, int pid) throws IOException {
+        int events = 0;
+        out.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+        boolean first = true;
+        for (Ring ring : this.rings) {
+            // Checked first: once its thread has ended, a ring is complete and written in full.
+            boolean ended = ring.hasEnded();
+            long end = ring.count.get();
+            Slots slots = ring.slots;
+            int length = slots.types.length;
+            long start = Math.max(0, end - ((long) length));
+            int n = (int) (end - start);
+            byte[] types = new byte[n];
+            long[] times = new long[n];
+            long[] values = new long[n];
+            String[] labels = new String[n];
+            for (int i = 0; i < n; i++) {
+                int slot = (int) ((start + ((long) i)) & ((long) (length - 1)));
+                types[i] = slots.types[slot];
+                times[i] = slots.times[slot];
+                values[i] = slots.values[slot];
+                labels[i] = slots.labels[slot];
+            }
+            // Slots the owner has reused since, or may be filling with its next event, are
+            // suspect. A ring that grew meanwhile left the copied slots untouched.
+            int skip = 0;
+            if (ring.slots == slots) {
+                skip = (int) Math.min((long) n, Math.max(0, ((ring.count.get() + 1) - ((long) length)) - start));
+            }
+            String prefix = ",\"pid\":" + pid + ",\"tid\":" + ring.tid;
+            if (!first) {
+                out.write(',');
+            }
+            first = false;
+            out.write("{\"ph\":\"M\",\"name\":\"thread_name\"" + prefix + ",\"args\":{\"name\":");
+            writeString(out, ring.name);
+            out.write("}}");
+            int depth = 0;
+            for (int i2 = skip; i2 < n; i2++) {
+                byte type = types[i2];
+                if (type == END) {
+                    if (depth == 0) {
+                        continue;
+                    }
+                    depth--;
+                } else if (type == BEGIN) {
+                    depth++;
+                }
+                out.write(",{\"ph\":\"");
+                out.write(type);
+                out.write('"');
+                if (type != END) {
+                    out.write(",\"name\":");
+                    writeString(out, labels[i2]);
+                }
+                if (type == ASYNC_BEGIN || type == ASYNC_END) {
+                    out.write(",\"cat\":\"async\",\"id\":" + values[i2]);
+                }
+                out.write(prefix);
+                out.write(",\"ts\":");
+                writeMicros(out, times[i2] - this.origin);
+                if (type == COUNTER) {
+                    out.write(",\"args\":{\"value\":" + values[i2] + "}");
+                }
+                out.write('}');
+                events++;
+            }
+            if (ended) {
+                this.rings.remove(ring);
+            }
+        }
+        out.write("]}");
+        out.flush();
+        return events;
+    }
+
+    /** Drops the oldest rings of ended threads until at most {@code keep} are left. */
+    private void evictEnded(int keep) {
+        int ended = 0;
+        for (Ring ring : this.rings) {
+            if (ring.hasEnded()) {
+                ended++;
+            }
+        }
+        for (Ring ring2 : this.rings) {
+            if (ended <= keep) {
+                return;
+            }
+            if (ring2.hasEnded()) {
+                this.rings.remove(ring2);
+                ended--;
+            }
+        }
+    }
+
+    private static void writeMicros(Writer out, long nanos) throws IOException {
+        if (nanos < 0) {
+            out.write('-');
+            nanos = -nanos;
+        }
+        out.write(Long.toString(nanos / 1000));
+        int fraction = (int) (nanos % 1000);
+        out.write('.');
+        out.write((fraction / 100) + '0');
+        out.write(((fraction / 10) % 10) + '0');
+        out.write((fraction % 10) + '0');
+    }
+
+    private static void writeString(Writer out, String s) throws IOException {
+        out.write('"');
+        if (s != null) {
+            int length = s.length();
+            for (int i = 0; i < length; i++) {
+                char c = s.charAt(i);
+                if (c == '"' || c == '\\') {
+                    out.write('\\');
+                    out.write(c);
+                } else if (c < ' ') {
+                    out.write("\\u00");
+                    out.write(Character.forDigit(c >> 4, 16));
+                    out.write(Character.forDigit(c & 15, 16));
+                } else {
+                    out.write(c);
+                }
+            }
+        }
+        out.write('"');
+    }
+
+    /** One thread's events. Only the owner writes; {@link #count} publishes each slot. */
+    final class Ring {
+        final AtomicLong count = new AtomicLong();
+        final String name;
+        volatile Slots slots;
+        private final WeakReference<Thread> thread;
+        final long tid;
+
+        Ring(Thread thread2, int size) {
+            this.tid = thread2.getId();
+            this.name = thread2.getName();
+            this.slots = new Slots(size);
+            this.thread = new WeakReference<>(thread2);
+        }
+
+        /* access modifiers changed from: package-private */
+        public boolean hasEnded() {
+            Thread owner = this.thread.get();
+            return owner == null || !owner.isAlive();
+        }
+
+        /* access modifiers changed from: package-private */
+        public void write(byte type, String label, long value) {
+            long n = this.count.get();
+            Slots s = this.slots;
+            int length = s.types.length;
+            if (n == ((long) length) && length < TraceRecorder.this.capacity) {
+                // Not wrapped yet, so every slot is live; copy, then publish before using it.
+                s = s.grow();
+                this.slots = s;
+                length = s.types.length;
+            }
+            int i = (int) (((long) (length - 1)) & n);
+            s.types[i] = type;
+            s.labels[i] = label;
+            s.values[i] = value;
+            s.times[i] = System.nanoTime();
+            this.count.lazySet(1 + n);
+        }
+    }
+
+    static final class Slots {
+        final String[] labels;
+        final long[] times;
+        final byte[] types;
+        final long[] values;
+
+        Slots(int size) {
+            this.types = new byte[size];
+            this.labels = new String[size];
+            this.values = new long[size];
+            this.times = new long[size];
+        }
+
+        /* access modifiers changed from: package-private */
+        public Slots grow() {
+            int size = this.types.length;
+            Slots next = new Slots(size * 2);
+            System.arraycopy(this.types, 0, next.types, 0, size);
+            System.arraycopy(this.labels, 0, next.labels, 0, size);
+            System.arraycopy(this.values, 0, next.values, 0, size);
+            System.arraycopy(this.times, 0, next.times, 0, size);
+            return next;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.kalyan.dinnerdecider.engine;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Trace sections and counters with pluggable backends. It mirrors the calls of
+ * {@code androidx.tracing.Trace}, but the engine cannot use that class off-device, so
+ * the app installs a backend forwarding to it next to a {@link TraceRecorder}, and JVM
+ * tests can install only a recorder. With no backend installed every call is an empty
+ * loop.
+ */
+public final class Tracing {
+    private static final Backend[] NONE = new Backend[0];
+    private static volatile Backend[] backends = NONE;
+    private static final AtomicInteger cookies = new AtomicInteger();
+
+    public interface Backend {
+        void beginSection(String label);
+
+        void endSection();
+
+        void beginAsyncSection(String label, int cookie);
+
+        void endAsyncSection(String label, int cookie);
+
+        void setCounter(String name, long value);
+    }
+
+    private Tracing() {
+    }
+
+    /** Adds {@code backend}; sections already open stay unmatched in it. */
+    public static synchronized void install(Backend backend) {
+        Backend[] current = backends;
+        Backend[] next = (Backend[]) Arrays.copyOf(current, current.length + 1);
+        next[current.length] = backend;
+        backends = next;
+    }
+
+    public static synchronized void uninstall(Backend backend) {
+        Backend[] current = backends;
+        int i = Arrays.asList(current).indexOf(backend);
+        if (i >= 0) {
+            Backend[] next = new Backend[(current.length - 1)];
+            System.arraycopy(current, 0, next, 0, i);
+            System.arraycopy(current, i + 1, next, i, (current.length - i) - 1);
+            backends = next;
+        }
+    }
+
+    /** A cookie for an async section, distinct from the others in use. */
+    public static int newCookie() {
+        return cookies.incrementAndGet();
+    }
+
+    /** Opens a section on this thread; close it with {@link #endSection} on the same thread. */
+    public static void beginSection(String label) {
+        for (Backend backend : backends) {
+            backend.beginSection(label);
+        }
+    }
+
+    public static void endSection() {
+        for (Backend backend : backends) {
+            backend.endSection();
+        }
+    }
+
+    /** Opens a section that may end on another thread, matched by {@code label} and {@code cookie}. */
+    public static void beginAsyncSection(String label, int cookie) {
+        for (Backend backend : backends) {
+            backend.beginAsyncSection(label, cookie);
+        }
+    }
+
+    public static void endAsyncSection(String label, int cookie) {
+        for (Backend backend : backends) {
+            backend.endAsyncSection(label, cookie);
+        }
+    }
+
+    public static void setCounter(String name, long value) {
+        for (Backend backend : backends) {
+            backend.setCounter(name, value);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.kalyan.dinnerdecider.engine;
+
+import java.util.ArrayDeque;
+
+/**
+ * Bounded undo and redo stacks of catalog versions. A revision holds the vectors from
+ * before and after one edit, which share everything the edit did not touch, so the
+ * stacks cost memory in proportion to the edits they remember rather than to the
+ * catalog. Recording a new revision forgets everything that could be redone.
+ */
+public final class UndoHistory {
+    private final int capacity;
+    private final ArrayDeque<Revision> redo = new ArrayDeque<>();
+    private final ArrayDeque<Revision> undo = new ArrayDeque<>();
+
+    public UndoHistory(int capacity2) {
+        if (capacity2 <= 0) {
+            throw new IllegalArgumentException("capacity=" + capacity2);
+        }
+        this.capacity = capacity2;
+    }
+
+    /** One edit: a label for menus and the catalog versions on either side of it. */
+    public static final class Revision {
+        final PersistentVector<CatalogEntry> after;
+        final PersistentVector<CatalogEntry> before;
+        final String label;
+
+        Revision(String label2, PersistentVector<CatalogEntry> before2, PersistentVector<CatalogEntry> after2) {
+            this.label = label2;
+            this.before = before2;
+            this.after = after2;
+        }
+
+        public String getLabel() {
+            return this.label;
+        }
+    }
+
+    public void record(String label, PersistentVector<CatalogEntry> before, PersistentVector<CatalogEntry> after) {
+        this.redo.clear();
+        this.undo.push(new Revision(label, before, after));
+        if (this.undo.size() > this.capacity) {
+            this.undo.removeLast();
+        }
+    }
+
+    /** The label of the edit {@link #undo} would revert, or null. */
+    public String undoLabel() {
+        Revision revision = this.undo.peek();
+        if (revision != null) {
+            return revision.label;
+        }
+        return null;
+    }
+
+    /** The label of the edit {@link #redo} would reapply, or null. */
+    public String redoLabel() {
+        Revision revision = this.redo.peek();
+        if (revision != null) {
+            return revision.label;
+        }
+        return null;
+    }
+
+    /** Moves the latest edit to the redo stack and returns it, or null if there is none. */
+    public Revision undo() {
+        Revision revision = this.undo.poll();
+        if (revision != null) {
+            this.redo.push(revision);
+        }
+        return revision;
+    }
+
+    /** Moves the latest undone edit back to the undo stack and returns it, or null. */
+    public Revision redo() {
+        Revision revision = this.redo.poll();
+        if (revision != null) {
+            this.undo.push(revision);
+        }
+        return revision;
+    }
+
+    public void clear() {
+        this.undo.clear();
+        this.redo.clear();
+    }
+}